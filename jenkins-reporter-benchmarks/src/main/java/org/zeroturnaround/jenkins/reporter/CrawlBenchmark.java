@@ -0,0 +1,94 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+
+/**
+ * Crawls a view of the {@link FakeJenkins} of the tests, the wall-clock time of a whole crawl.
+ * Requests and bytes per crawl are printed after every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlBenchmark {
+  @Param({ "per-job", "bulk" })
+  private String strategy;
+
+  @Param({ "1", "8" })
+  private int threads;
+
+  @Param({ "pool", "virtual-threads" })
+  private String engine;
+
+  @Param({ "5" })
+  private long latencyMillis;
+
+  @Param({ "50" })
+  private int jobs;
+
+  @Param({ "5" })
+  private int matrixChildren;
+
+  @Param({ "200" })
+  private int testsPerReport;
+
+  private FakeJenkins jenkins;
+  private URI viewUrl;
+  private int crawls;
+
+  @Setup
+  public void startJenkins() throws Exception {
+    jenkins = new FakeJenkins()
+        .jobs(jobs)
+        .matrixJobs(jobs / 5, matrixChildren)
+        .testReports(testsPerReport, testsPerReport / 20, 30)
+        .latency(latencyMillis)
+        .notFoundPercentage(5)
+        .start();
+    viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+  }
+
+  @TearDown
+  public void stopJenkins() {
+    jenkins.stop();
+  }
+
+  @TearDown(Level.Iteration)
+  public void printRequests() {
+    if (crawls > 0) {
+      System.out.println();
+      System.out.println(String.format("%d requests, %d KB per crawl", jenkins.getRequestCount() / crawls, jenkins.getBytesSent() / crawls / 1024));
+    }
+    jenkins.resetCounters();
+    crawls = 0;
+  }
+
+  @Benchmark
+  public JenkinsView crawl() {
+    crawls++;
+    return new JenkinsHelperBuilder()
+        .fetchThreads(threads)
+        .fetchEngine(FetchEngine.fromString(engine))
+        .fetchStrategy(FetchStrategy.fromString(strategy))
+        .createDefault(viewUrl, null, null, false)
+        .getViewData(viewUrl);
+  }
+}
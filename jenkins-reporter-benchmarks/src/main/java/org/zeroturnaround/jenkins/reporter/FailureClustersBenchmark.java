@@ -0,0 +1,46 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zeroturnaround.jenkins.reporter.model.FailureClusters;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+
+/**
+ * Grouping the failed tests of a view by error and by test for the report.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FailureClustersBenchmark {
+  @Param({ "10000", "100000" })
+  private int failedTests;
+
+  private JenkinsView view;
+
+  @Setup
+  public void setUp() {
+    view = SyntheticViews.view(200, 10, failedTests);
+  }
+
+  @Benchmark
+  public void clusters(Blackhole blackhole) {
+    final FailureClusters clusters = new FailureClusters(view);
+    blackhole.consume(clusters.getTopErrors());
+    blackhole.consume(clusters.getTopTests());
+  }
+}
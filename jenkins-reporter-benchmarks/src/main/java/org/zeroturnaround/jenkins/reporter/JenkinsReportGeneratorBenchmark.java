@@ -0,0 +1,69 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Renders the report of views with many failed tests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JenkinsReportGeneratorBenchmark {
+  @Param({ "1000", "10000" })
+  private int failedTests;
+
+  @Param({ "200" })
+  private int jobs;
+
+  private JenkinsView view;
+  private JenkinsReportGenerator generator;
+  private final Date startTime = new Date();
+  private File file;
+
+  @Setup
+  public void setUp() throws IOException {
+    view = SyntheticViews.view(jobs, 10, failedTests);
+    generator = new JenkinsReportGeneratorBuilder().buildDefaultGenerator();
+    file = File.createTempFile("jenkins-report-benchmark", ".html");
+  }
+
+  @TearDown
+  public void deleteFile() {
+    file.delete();
+  }
+
+  @Benchmark
+  public void generateReport() {
+    generator.generateReport(view, new PrintWriter(new OutputStreamWriter(new NullOutputStream(), Charsets.UTF_8)), startTime);
+  }
+
+  @Benchmark
+  public long generateReportToFile() throws IOException {
+    return generator.generateReport(view, file, startTime);
+  }
+}
@@ -0,0 +1,71 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.ViewStatistics;
+
+/**
+ * The aggregate getters of {@link JenkinsView} that the report template calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JenkinsViewBenchmark {
+  @Param({ "100", "1000", "10000" })
+  private int jobs;
+
+  @Param({ "10" })
+  private int matrixChildren;
+
+  private JenkinsView view;
+
+  @Setup
+  public void setUp() {
+    view = SyntheticViews.view(jobs, matrixChildren, jobs * 2);
+  }
+
+  @Benchmark
+  public int failCount() {
+    return view.getFailCount();
+  }
+
+  @Benchmark
+  public int testsTotal() {
+    return view.getTestsTotal();
+  }
+
+  @Benchmark
+  public float failureRate() {
+    return view.getFailureRate();
+  }
+
+  @Benchmark
+  public void failedAndPassedJobs(Blackhole blackhole) {
+    blackhole.consume(view.getFailedJobs());
+    blackhole.consume(view.getPassedJobs());
+  }
+
+  /**
+   * Builds the snapshot that the report is rendered from instead of the getters above.
+   */
+  @Benchmark
+  public ViewStatistics statistics() {
+    return new ViewStatistics(view);
+  }
+}
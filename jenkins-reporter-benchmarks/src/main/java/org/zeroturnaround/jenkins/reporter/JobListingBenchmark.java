@@ -0,0 +1,56 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+/**
+ * Reads the job listing of a view with the DOM and the StAX reader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JobListingBenchmark {
+  @Param({ "100", "1000", "10000" })
+  private int jobs;
+
+  private byte[] listing;
+  private JenkinsXmlReader dom;
+  private JenkinsXmlReader stax;
+
+  @Setup
+  public void setUp() {
+    listing = SyntheticViews.jobListing(jobs);
+    dom = new DomJenkinsXmlReader(DocumentBuilderFactory.newInstance());
+    stax = new StaxJenkinsXmlReader(XMLInputFactory.newInstance());
+  }
+
+  @Benchmark
+  public Collection<Job> dom() throws Exception {
+    return dom.readJobs(new ByteArrayInputStream(listing), "job", true);
+  }
+
+  @Benchmark
+  public Collection<Job> stax() throws Exception {
+    return stax.readJobs(new ByteArrayInputStream(listing), "job", true);
+  }
+}
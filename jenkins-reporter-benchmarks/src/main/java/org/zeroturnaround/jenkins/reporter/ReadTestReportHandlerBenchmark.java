@@ -0,0 +1,61 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+/**
+ * Parses a synthetic test report with the current and the previous handler. Run with
+ * <code>-prof gc</code> to compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadTestReportHandlerBenchmark {
+  @Param({ "1", "10", "50" })
+  private int megabytes;
+
+  @Param({ "5" })
+  private int failurePercentage;
+
+  private byte[] report;
+  private SAXParser parser;
+
+  @Setup
+  public void setUp() throws Exception {
+    report = SyntheticTestReports.plainReport(megabytes * 1024 * 1024, failurePercentage);
+    parser = SAXParserFactory.newInstance().newSAXParser();
+  }
+
+  @Benchmark
+  public TestReport handler() throws Exception {
+    final TestReport testReport = new TestReport();
+    parser.parse(new ByteArrayInputStream(report), new ReadTestReportHandler(testReport));
+    return testReport;
+  }
+
+  @Benchmark
+  public TestReport legacyHandler() throws Exception {
+    final TestReport testReport = new TestReport();
+    parser.parse(new ByteArrayInputStream(report), new LegacyReadTestReportHandler(testReport));
+    return testReport;
+  }
+}
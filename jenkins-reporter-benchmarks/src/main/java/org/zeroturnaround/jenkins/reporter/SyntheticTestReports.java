@@ -0,0 +1,99 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Builds test reports that look like the ones Jenkins serves: suites of cases of which a few fail
+ * with a stack trace.
+ */
+public final class SyntheticTestReports {
+  private static final int CASES_PER_SUITE = 40;
+
+  private SyntheticTestReports() {
+  }
+
+  /**
+   * @param bytes approximate size of the report
+   * @param failurePercentage share of the cases that fail
+   */
+  public static byte[] plainReport(int bytes, int failurePercentage) {
+    // the same report for every fork
+    final Random random = new Random(bytes);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes + 64 * 1024);
+    try {
+      final Writer w = new OutputStreamWriter(out, Charsets.UTF_8);
+      final StringBuilder body = new StringBuilder();
+      int failCount = 0;
+      int passCount = 0;
+      int skipCount = 0;
+
+      for (int suite = 0; out.size() + body.length() < bytes; suite++) {
+        final String className = "org.example.module" + (suite % 50) + ".Generated" + suite + "Test";
+        body.append("<suite>");
+        for (int i = 0; i < CASES_PER_SUITE; i++) {
+          final boolean failed = random.nextInt(100) < failurePercentage;
+          final boolean skipped = !failed && random.nextInt(100) < 2;
+          body.append("<case><age>").append(failed ? random.nextInt(20) : 0).append("</age>");
+          body.append("<className>").append(className).append("</className>");
+          body.append("<duration>0.").append(random.nextInt(1000)).append("</duration>");
+          if (failed) {
+            body.append("<errorDetails>expected:&lt;").append(i).append("&gt; but was:&lt;").append(i + 1).append("&gt;</errorDetails>");
+            body.append("<errorStackTrace>java.lang.AssertionError: expected:&lt;").append(i).append("&gt; but was:&lt;").append(i + 1).append("&gt;\n");
+            for (int frame = 0; frame < 30; frame++) {
+              body.append("\tat org.example.framework.Layer").append(frame).append(".invoke(Layer").append(frame).append(".java:").append(10 + frame).append(")\n");
+            }
+            body.append("</errorStackTrace>");
+          }
+          body.append("<failedSince>").append(failed ? 1 : 0).append("</failedSince>");
+          body.append("<name>test").append(i).append("</name>");
+          body.append("<skipped>").append(skipped).append("</skipped>");
+          body.append("<status>").append(failed ? (i % 3 == 0 ? "REGRESSION" : "FAILED") : skipped ? "SKIPPED" : "PASSED").append("</status></case>");
+
+          if (failed) {
+            failCount++;
+          }
+          else if (skipped) {
+            skipCount++;
+          }
+          else {
+            passCount++;
+          }
+        }
+        body.append("<duration>1.5</duration><id/><name>").append(className).append("</name><stderr/><stdout>");
+        // suites print a lot, which is read past
+        for (int line = 0; line < 20; line++) {
+          body.append("INFO ").append(className).append(" - line ").append(line).append(" of the output\n");
+        }
+        body.append("</stdout><timestamp>2013-09-24T10:00:00</timestamp></suite>");
+
+        if (body.length() > 64 * 1024) {
+          w.write(body.toString());
+          w.flush();
+          body.setLength(0);
+        }
+      }
+
+      final String header = "<testResult><duration>1234.5</duration><empty>false</empty><failCount>" + failCount + "</failCount><passCount>" + passCount
+          + "</passCount><skipCount>" + skipCount + "</skipCount>";
+      w.write(body.toString());
+      w.write("</testResult>");
+      w.flush();
+
+      final byte[] suites = out.toByteArray();
+      final byte[] headerBytes = header.getBytes(Charsets.UTF_8);
+      final byte[] report = new byte[headerBytes.length + suites.length];
+      System.arraycopy(headerBytes, 0, report, 0, headerBytes.length);
+      System.arraycopy(suites, 0, report, headerBytes.length, suites.length);
+      return report;
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
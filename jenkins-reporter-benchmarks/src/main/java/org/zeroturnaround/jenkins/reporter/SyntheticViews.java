@@ -0,0 +1,127 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Builds views and job listings that look like the ones Jenkins serves. Every fifth job is a
+ * matrix job.
+ */
+public final class SyntheticViews {
+  private static final String BASE_URL = "http://jenkins.example.com/";
+  private static final String[] COLORS = { "blue", "blue", "blue", "red", "yellow", "aborted", "disabled", "blue_anime" };
+  private static final int TESTS_PER_JOB = 500;
+  private static final String[] ERRORS = { "java.lang.AssertionError", "java.lang.NullPointerException", "java.lang.IllegalStateException",
+      "java.net.SocketTimeoutException", "org.junit.ComparisonFailure" };
+
+  private SyntheticViews() {
+  }
+
+  /**
+   * @param jobCount top level jobs of the view
+   * @param matrixChildren configurations of each matrix job
+   * @param failedTests failed test cases, spread over the jobs
+   */
+  public static JenkinsView view(int jobCount, int matrixChildren, int failedTests) {
+    final Random random = new Random(jobCount);
+    final List<Job> leaves = newArrayList();
+    final List<Job> jobs = newArrayList();
+    for (int i = 0; i < jobCount; i++) {
+      final Job job = job("job-" + i, BASE_URL + "job/job-" + i + "/", random);
+      if (i % 5 == 4) {
+        final Collection<Job> children = newArrayList();
+        for (int c = 0; c < matrixChildren; c++) {
+          final Job child = job("jdk=" + c, job.getUrl() + "jdk=" + c + "/", random);
+          children.add(child);
+          leaves.add(child);
+        }
+        job.setChildren(children);
+      }
+      else {
+        leaves.add(job);
+      }
+      jobs.add(job);
+    }
+
+    for (int i = 0; i < failedTests; i++) {
+      final TestReport report = leaves.get(random.nextInt(leaves.size())).getLastCompletedBuild().getTestReport();
+      report.getTestCases().add(testCase(i, random));
+      report.setFailCount(report.getFailCount() + 1);
+      report.setPassCount(report.getPassCount() - 1);
+    }
+
+    final JenkinsView view = new JenkinsView();
+    view.setName("Synthetic");
+    view.setUrl(URI.create(BASE_URL + "view/Synthetic/"));
+    view.setJobs(jobs);
+    view.setJobsTotal(jobs.size());
+    return view;
+  }
+
+  /**
+   * @return the <code>api/xml</code> listing of a view with the given number of jobs
+   */
+  public static byte[] jobListing(int jobCount) {
+    final StringBuilder xml = new StringBuilder("<listView><description>Synthetic</description>");
+    for (int i = 0; i < jobCount; i++) {
+      xml.append("<job><name>job-").append(i).append("</name><url>").append(BASE_URL).append("job/job-").append(i).append("/</url><color>")
+          .append(COLORS[i % COLORS.length]).append("</color></job>");
+    }
+    xml.append("<name>Synthetic</name><property/><url>").append(BASE_URL).append("view/Synthetic/</url></listView>");
+    return xml.toString().getBytes(Charsets.UTF_8);
+  }
+
+  private static Job job(String name, String url, Random random) {
+    final Job job = new Job();
+    job.setName(name);
+    job.setUrl(URI.create(url));
+    job.setColor(COLORS[random.nextInt(COLORS.length)]);
+
+    final TestReport report = new TestReport();
+    report.setPassCount(TESTS_PER_JOB);
+    report.setTotalCount(TESTS_PER_JOB);
+
+    final Build build = new Build();
+    build.setId(1 + random.nextInt(1000));
+    build.setResult("UNSTABLE");
+    build.setUrl(URI.create(url + build.getId() + "/"));
+    build.setTimestamp(new Date(1380000000000L - random.nextInt(7 * 24 * 3600) * 1000L));
+    build.setDayOfYear(267);
+    build.setDuration("0:12:34");
+    build.setBuiltOn("slave-" + random.nextInt(10));
+    build.setTestReport(report);
+    job.setLastCompletedBuild(build);
+    return job;
+  }
+
+  private static TestCase testCase(int i, Random random) {
+    final TestCase testCase = new TestCase();
+    testCase.setStatus(i % 3 == 0 ? "REGRESSION" : "FAILED");
+    testCase.setAge(1 + random.nextInt(10));
+    testCase.setClassName("org.example.module" + (i % 50) + ".Generated" + (i / 40) + "Test");
+    testCase.setMethodName("test" + i);
+    testCase.setErrorDetails("expected:<" + i + "> but was:<" + (i + 1) + ">");
+
+    final StringBuilder trace = new StringBuilder(ERRORS[i % ERRORS.length] + ": expected:<" + i + "> but was:<" + (i + 1) + ">\n");
+    // a few dozen distinct errors, as in a view where most failures share a handful of causes
+    trace.append("\tat org.example.service.Service").append(i % 13).append(".call(Service").append(i % 13).append(".java:42)\n");
+    for (int frame = 0; frame < 30; frame++) {
+      trace.append("\tat org.example.framework.Layer").append(frame).append(".invoke(Layer").append(frame).append(".java:").append(10 + frame).append(")\n");
+    }
+    testCase.setErrorStackTrace(trace.toString());
+    return testCase;
+  }
+}
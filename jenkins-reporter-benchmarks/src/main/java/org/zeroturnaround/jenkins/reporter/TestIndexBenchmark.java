@@ -0,0 +1,72 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestIndex;
+
+/**
+ * Indexing the failed tests of a view and counting the failures of a package with the index and by
+ * scanning all cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TestIndexBenchmark {
+  private static final String PACKAGE = "org.example.module7";
+
+  @Param({ "10000", "100000" })
+  private int failedTests;
+
+  private JenkinsView view;
+  private TestIndex index;
+
+  @Setup
+  public void setUp() {
+    view = SyntheticViews.view(200, 10, failedTests);
+    index = view.createTestIndex();
+  }
+
+  @Benchmark
+  public TestIndex build() {
+    return view.createTestIndex();
+  }
+
+  @Benchmark
+  public int packageFailuresIndexed() {
+    return index.getFailureCount(PACKAGE);
+  }
+
+  @Benchmark
+  public int packageFailuresScanned() {
+    int failures = 0;
+    for (Job job : view.getJobs()) {
+      for (Job leaf : job.isMatrix() ? job.getChildren() : Collections.singletonList(job)) {
+        for (TestCase testCase : leaf.getLastCompletedBuild().getTestReport().getTestCases()) {
+          final String className = testCase.getClassName();
+          if (className.startsWith(PACKAGE) && className.lastIndexOf('.') == PACKAGE.length()) {
+            failures++;
+          }
+        }
+      }
+    }
+    return failures;
+  }
+}
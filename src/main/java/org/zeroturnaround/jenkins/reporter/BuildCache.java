@@ -0,0 +1,161 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Keeps the last completed build of every job, test report included, in a directory so that it
+ * survives between runs. A completed build never changes so an entry is valid as long as the build
+ * number of the job stays the same.
+ * <p>
+ * The earlier builds read to tell flaky tests are kept in a second file per job, so that a job
+ * never has more than two files however many builds it goes through.
+ */
+public class BuildCache {
+  private static final Logger log = LoggerFactory.getLogger(BuildCache.class); // NOSONAR
+
+  private static final String BUILD_SUFFIX = ".build";
+  private static final String EARLIER_BUILDS_SUFFIX = ".earlier";
+
+  private final File directory;
+
+  public BuildCache(File directory) {
+    try {
+      FileUtils.forceMkdir(directory);
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Could not create directory " + directory, e);
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * @return the cached build or <code>null</code> if the job has no cached build with the given
+   *         number
+   */
+  public Build get(URI jobUrl, int buildNumber) {
+    final File file = getFile(jobUrl, BUILD_SUFFIX);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (in.readInt() != buildNumber) {
+        return null;
+      }
+      log.debug("Using cached build #{} of {}", buildNumber, jobUrl);
+      return (Build) in.readObject();
+    }
+    catch (IOException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return null;
+    }
+    catch (ClassNotFoundException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return null;
+    }
+    finally {
+      IOUtils.closeQuietly((InputStream) in);
+    }
+  }
+
+  /**
+   * Replaces the cached build of the job.
+   */
+  public void put(URI jobUrl, Build build) {
+    write(getFile(jobUrl, BUILD_SUFFIX), build.getId(), build, "build #" + build.getId() + " of " + jobUrl);
+  }
+
+  /**
+   * @return the earlier builds of the job by build number, empty if none are cached
+   */
+  @SuppressWarnings("unchecked")
+  public Map<Integer, Build> getEarlierBuilds(URI jobUrl) {
+    final File file = getFile(jobUrl, EARLIER_BUILDS_SUFFIX);
+    if (!file.isFile()) {
+      return new TreeMap<Integer, Build>();
+    }
+
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      in.readInt();
+      return (Map<Integer, Build>) in.readObject();
+    }
+    catch (IOException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return new TreeMap<Integer, Build>();
+    }
+    catch (ClassNotFoundException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return new TreeMap<Integer, Build>();
+    }
+    finally {
+      IOUtils.closeQuietly((InputStream) in);
+    }
+  }
+
+  /**
+   * Replaces the cached earlier builds of the job, those that are not given are dropped.
+   */
+  public void putEarlierBuilds(URI jobUrl, Map<Integer, Build> builds) {
+    write(getFile(jobUrl, EARLIER_BUILDS_SUFFIX), builds.size(), new TreeMap<Integer, Build>(builds), "earlier builds of " + jobUrl);
+  }
+
+  /**
+   * @param header read before the value, so that it can be checked without reading the value
+   */
+  private void write(File file, int header, Object value, String description) {
+    // written next to the entry and renamed so that concurrent readers never see half of it
+    final File tmpFile = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      out.writeInt(header);
+      out.writeObject(value);
+      out.close();
+
+      if (!tmpFile.renameTo(file)) {
+        FileUtils.deleteQuietly(file);
+        if (!tmpFile.renameTo(file)) {
+          throw new IOException("Could not rename " + tmpFile + " to " + file);
+        }
+      }
+    }
+    catch (IOException e) {
+      // the cache is an optimization, the report can do without it
+      log.warn("Could not cache " + description, e);
+    }
+    finally {
+      IOUtils.closeQuietly((OutputStream) out);
+      FileUtils.deleteQuietly(tmpFile);
+    }
+  }
+
+  private File getFile(URI jobUrl, String suffix) {
+    return new File(directory, Hashing.sha1().hashString(jobUrl.toASCIIString(), Charsets.UTF_8).toString() + suffix);
+  }
+}
@@ -0,0 +1,482 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.Job.BadJobPredicate;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+/**
+ * Remembers which jobs and tests failed in the builds of earlier runs, so that the report can tell
+ * how often a test failed lately without asking Jenkins for old builds.
+ * <p>
+ * Every build is recorded once, however often it is reported. Jobs and tests are numbered in two
+ * dictionaries, <code>jobs.txt</code> and <code>tests.txt</code> with a key per line, and every
+ * run that reported new builds appends a record to <code>runs.bin</code>:
+ *
+ * <pre>
+ * int    length of the rest of the record
+ * long   time of the run
+ * int    n, the number of new builds
+ * int[n] job numbers, ascending
+ * int[n] build numbers
+ * long[] bits of the failed builds, by position
+ * byte   0 for a bitset of the failed tests, int words and long[words]
+ *        1 for their numbers, int count and int[count] ascending, when that is smaller
+ * </pre>
+ *
+ * The records are memory-mapped for queries. Records older than the retention are dropped when the
+ * history is opened.
+ */
+public class BuildHistory {
+  private static final Logger log = LoggerFactory.getLogger(BuildHistory.class); // NOSONAR
+
+  private static final byte BITSET = 0;
+  private static final byte IDS = 1;
+
+  private final File runsFile;
+  private final int maxBuilds;
+  private final Dictionary jobs;
+  private final Dictionary tests;
+  private final BadJobPredicate bad = new BadJobPredicate();
+
+  private MappedByteBuffer runs;
+  private long[] offsets = new long[16];
+  private int runCount;
+  // the last recorded build of every job, by job number
+  private int[] lastBuilds = new int[16];
+  // the runs that recorded the last builds of a job, newest first
+  private final Map<Integer, int[]> buildRuns = new HashMap<Integer, int[]>();
+
+  /**
+   * @param maxBuilds how many of the last builds of a job the counts cover
+   * @param retentionDays runs older than this are forgotten
+   */
+  public BuildHistory(File directory, int maxBuilds, int retentionDays) {
+    this.maxBuilds = maxBuilds;
+    this.runsFile = new File(directory, "runs.bin");
+    try {
+      FileUtils.forceMkdir(directory);
+      jobs = new Dictionary(new File(directory, "jobs.txt"));
+      tests = new Dictionary(new File(directory, "tests.txt"));
+      open(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Could not read the build history in " + directory, e);
+    }
+  }
+
+  /**
+   * Records the last completed builds of the jobs and their configurations that are not recorded
+   * yet.
+   */
+  public synchronized void record(Iterable<Job> reportedJobs, Date time) {
+    final Map<Integer, Job> newBuilds = new HashMap<Integer, Job>();
+    collectNewBuilds(reportedJobs, newBuilds);
+    if (newBuilds.isEmpty()) {
+      return;
+    }
+
+    final int[] jobIds = Ints.toArray(newBuilds.keySet());
+    Arrays.sort(jobIds);
+    final int[] buildNumbers = new int[jobIds.length];
+    final long[] failedJobs = new long[words(jobIds.length)];
+    final List<Integer> failedTests = Lists.newArrayList();
+    for (int i = 0; i < jobIds.length; i++) {
+      final Job job = newBuilds.get(jobIds[i]);
+      buildNumbers[i] = job.getLastCompletedBuild().getId();
+      if (bad.apply(job)) {
+        failedJobs[i >>> 6] |= 1L << i;
+      }
+
+      final TestReport report = job.getLastCompletedBuild().getTestReport();
+      if (report != null) {
+        for (TestCase testCase : report.getTestCases()) {
+          failedTests.add(tests.add(testKey(job, testCase)));
+        }
+      }
+    }
+
+    try {
+      // the dictionaries first, so that the record never refers to an unknown job or test
+      jobs.flush();
+      tests.flush();
+      append(encode(time.getTime(), jobIds, buildNumbers, failedJobs, Ints.toArray(failedTests)));
+    }
+    catch (IOException e) {
+      // the report can do without the history of this run
+      log.warn("Could not record the builds of this run in " + runsFile, e);
+      return;
+    }
+
+    for (int i = 0; i < jobIds.length; i++) {
+      lastBuilds = ensureCapacity(lastBuilds, jobIds[i] + 1);
+      lastBuilds[jobIds[i]] = buildNumbers[i];
+    }
+    buildRuns.clear();
+    log.debug("Recorded {} new builds in the build history", jobIds.length);
+  }
+
+  /**
+   * @return how many of the last builds of the job are recorded, at most the maximum the history
+   *         was opened with
+   */
+  public synchronized int getBuildCount(Job job) {
+    return getBuildRuns(job).length;
+  }
+
+  /**
+   * @return in how many of the recorded builds of {@link #getBuildCount(Job)} the job failed
+   */
+  public synchronized int getFailureCount(Job job) {
+    final int jobId = jobs.get(job.getUrl().toString());
+    int failures = 0;
+    for (int run : getBuildRuns(job)) {
+      final long offset = offsets[run];
+      final int n = runs.getInt((int) offset + 12);
+      final int position = search(offset + 16, n, jobId);
+      if ((runs.getLong((int) (offset + 16 + 8L * n) + (position >>> 6) * 8) & (1L << position)) != 0) {
+        failures++;
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * @return in how many of the recorded builds of {@link #getBuildCount(Job)} the test failed
+   */
+  public synchronized int getFailureCount(Job job, TestCase testCase) {
+    final int testId = tests.get(testKey(job, testCase));
+    if (testId < 0) {
+      return 0;
+    }
+
+    int failures = 0;
+    for (int run : getBuildRuns(job)) {
+      if (hasFailedTest(offsets[run], testId)) {
+        failures++;
+      }
+    }
+    return failures;
+  }
+
+  private int[] getBuildRuns(Job job) {
+    final int jobId = jobs.get(job.getUrl().toString());
+    if (jobId < 0) {
+      return new int[0];
+    }
+
+    int[] result = buildRuns.get(jobId);
+    if (result == null) {
+      final List<Integer> found = Lists.newArrayList();
+      for (int run = runCount - 1; run >= 0 && found.size() < maxBuilds; run--) {
+        final long offset = offsets[run];
+        if (search(offset + 16, runs.getInt((int) offset + 12), jobId) >= 0) {
+          found.add(run);
+        }
+      }
+      result = Ints.toArray(found);
+      buildRuns.put(jobId, result);
+    }
+    return result;
+  }
+
+  private void collectNewBuilds(Iterable<Job> reportedJobs, Map<Integer, Job> newBuilds) {
+    for (Job job : reportedJobs) {
+      if (job.isMatrix()) {
+        collectNewBuilds(job.getChildren(), newBuilds);
+      }
+      if (job.isUnavailable() || job.getLastCompletedBuild() == null) {
+        continue;
+      }
+
+      final int jobId = jobs.add(job.getUrl().toString());
+      if (jobId >= lastBuilds.length || lastBuilds[jobId] != job.getLastCompletedBuild().getId()) {
+        newBuilds.put(jobId, job);
+      }
+    }
+  }
+
+  /**
+   * @return the position of the job among the <code>n</code> ascending job numbers at
+   *         <code>offset</code>, negative if it is not one of them
+   */
+  private int search(long offset, int n, int jobId) {
+    int low = 0;
+    int high = n - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int value = runs.getInt((int) offset + middle * 4);
+      if (value < jobId) {
+        low = middle + 1;
+      }
+      else if (value > jobId) {
+        high = middle - 1;
+      }
+      else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  private boolean hasFailedTest(long offset, int testId) {
+    final int n = runs.getInt((int) offset + 12);
+    final int testsAt = (int) (offset + 16 + 8L * n + 8L * words(n));
+    if (runs.get(testsAt) == BITSET) {
+      final int word = testId >>> 6;
+      return word < runs.getInt(testsAt + 1) && (runs.getLong(testsAt + 5 + word * 8) & (1L << testId)) != 0;
+    }
+
+    int low = 0;
+    int high = runs.getInt(testsAt + 1) - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int value = runs.getInt(testsAt + 5 + middle * 4);
+      if (value < testId) {
+        low = middle + 1;
+      }
+      else if (value > testId) {
+        high = middle - 1;
+      }
+      else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static byte[] encode(long time, int[] jobIds, int[] buildNumbers, long[] failedJobs, int[] failedTests) {
+    Arrays.sort(failedTests);
+    int count = 0;
+    for (int i = 0; i < failedTests.length; i++) {
+      // the same test twice in a report
+      if (count == 0 || failedTests[i] != failedTests[count - 1]) {
+        failedTests[count++] = failedTests[i];
+      }
+    }
+
+    final int bitsetWords = count == 0 ? 0 : words(failedTests[count - 1] + 1);
+    final boolean bitset = bitsetWords * 8 < count * 4;
+    final int length = 8 + 4 + 8 * jobIds.length + 8 * failedJobs.length + 1 + 4 + (bitset ? bitsetWords * 8 : count * 4);
+
+    final ByteBuffer record = ByteBuffer.allocate(4 + length);
+    record.putInt(length);
+    record.putLong(time);
+    record.putInt(jobIds.length);
+    for (int jobId : jobIds) {
+      record.putInt(jobId);
+    }
+    for (int buildNumber : buildNumbers) {
+      record.putInt(buildNumber);
+    }
+    for (long word : failedJobs) {
+      record.putLong(word);
+    }
+    if (bitset) {
+      final long[] words = new long[bitsetWords];
+      for (int i = 0; i < count; i++) {
+        words[failedTests[i] >>> 6] |= 1L << failedTests[i];
+      }
+      record.put(BITSET).putInt(bitsetWords);
+      for (long word : words) {
+        record.putLong(word);
+      }
+    }
+    else {
+      record.put(IDS).putInt(count);
+      for (int i = 0; i < count; i++) {
+        record.putInt(failedTests[i]);
+      }
+    }
+    return record.array();
+  }
+
+  /**
+   * Reads the offsets of the records, drops the ones older than <code>oldest</code> and those that
+   * were only partly written, and maps the rest.
+   */
+  private void open(long oldest) throws IOException {
+    if (!runsFile.exists()) {
+      FileUtils.touch(runsFile);
+    }
+
+    final RandomAccessFile file = new RandomAccessFile(runsFile, "rw");
+    try {
+      final long size = file.length();
+      long offset = 0;
+      long firstKept = -1;
+      while (offset + 12 <= size) {
+        file.seek(offset);
+        final int length = file.readInt();
+        if (length < 12 || offset + 4 + length > size) {
+          break;
+        }
+        if (firstKept < 0 && file.readLong() >= oldest) {
+          firstKept = offset;
+        }
+        offset += 4 + length;
+      }
+      if (offset < size) {
+        log.warn("Dropping the last run of " + runsFile + ", it was only partly written");
+        file.setLength(offset);
+      }
+      if (firstKept < 0) {
+        firstKept = offset;
+      }
+
+      if (firstKept > 0) {
+        // the records are in the order of time so the old ones are the first
+        final byte[] kept = new byte[(int) (offset - firstKept)];
+        file.seek(firstKept);
+        file.readFully(kept);
+        file.seek(0);
+        file.write(kept);
+        file.setLength(kept.length);
+        log.debug("Dropped {} bytes of runs older than the retention from {}", firstKept, runsFile);
+      }
+    }
+    finally {
+      file.close();
+    }
+
+    map();
+    long offset = 0;
+    while (offset < runs.capacity()) {
+      addRun(offset);
+      offset += 4 + runs.getInt((int) offset);
+    }
+  }
+
+  private void append(byte[] record) throws IOException {
+    final FileOutputStream out = new FileOutputStream(runsFile, true);
+    try {
+      out.write(record);
+      out.getFD().sync();
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    final long offset = runs.capacity();
+    map();
+    addRun(offset);
+  }
+
+  private void map() throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(runsFile, "r");
+    try {
+      runs = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  private void addRun(long offset) {
+    if (runCount == offsets.length) {
+      offsets = Arrays.copyOf(offsets, runCount * 2);
+    }
+    offsets[runCount++] = offset;
+
+    final int n = runs.getInt((int) offset + 12);
+    for (int i = 0; i < n; i++) {
+      final int jobId = runs.getInt((int) offset + 16 + i * 4);
+      lastBuilds = ensureCapacity(lastBuilds, jobId + 1);
+      lastBuilds[jobId] = runs.getInt((int) offset + 16 + (n + i) * 4);
+    }
+  }
+
+  private static int[] ensureCapacity(int[] array, int length) {
+    return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  private static String testKey(Job job, TestCase testCase) {
+    return job.getUrl() + "\t" + testCase.getClassName() + "." + testCase.getMethodName();
+  }
+
+  /**
+   * Numbers keys in the order they are added, the number of a key is its line in the file.
+   */
+  private static final class Dictionary {
+    private final File file;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final StringBuilder added = new StringBuilder();
+
+    Dictionary(File file) throws IOException {
+      this.file = file;
+      if (!file.exists()) {
+        return;
+      }
+
+      byte[] bytes = FileUtils.readFileToByteArray(file);
+      int end = bytes.length;
+      while (end > 0 && bytes[end - 1] != '\n') {
+        end--;
+      }
+      if (end < bytes.length) {
+        // a key that was only partly written, its number was never used
+        bytes = Arrays.copyOf(bytes, end);
+        FileUtils.writeByteArrayToFile(file, bytes);
+      }
+
+      int start = 0;
+      for (int i = 0; i < bytes.length; i++) {
+        if (bytes[i] == '\n') {
+          ids.put(new String(bytes, start, i - start, Charsets.UTF_8), ids.size());
+          start = i + 1;
+        }
+      }
+    }
+
+    /**
+     * @return -1 if the key has no number
+     */
+    int get(String key) {
+      final Integer id = ids.get(key);
+      return id == null ? -1 : id;
+    }
+
+    int add(String key) {
+      Integer id = ids.get(key);
+      if (id == null) {
+        id = ids.size();
+        ids.put(key, id);
+        added.append(key).append('\n');
+      }
+      return id;
+    }
+
+    void flush() throws IOException {
+      if (added.length() > 0) {
+        FileUtils.writeStringToFile(file, added.toString(), Charsets.UTF_8, true);
+        added.setLength(0);
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.util.List;
+
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+/**
+ * Follows a crawl of {@link JenkinsViewAnalyser#getViewData(List, CrawlListener)} while it runs,
+ * e.g. to render the failed jobs before the slowest ones are read. Called from the thread that
+ * started the crawl.
+ */
+public interface CrawlListener {
+  /**
+   * Ignores the crawl.
+   */
+  CrawlListener NONE = new CrawlListener() {
+    @Override
+    public void viewsListed(List<JenkinsView> views) {
+    }
+
+    @Override
+    public void jobCrawled(Job job) {
+    }
+  };
+
+  /**
+   * The views and the names and URLs of their jobs are known, nothing of the jobs is read yet.
+   */
+  void viewsListed(List<JenkinsView> views);
+
+  /**
+   * The job and its matrix configurations are read, or marked unavailable. Called once per job
+   * however many of the views it is part of. Jobs without a completed build are not passed, unless
+   * they could not be read.
+   */
+  void jobCrawled(Job job);
+}
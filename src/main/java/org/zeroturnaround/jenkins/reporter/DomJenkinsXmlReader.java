@@ -0,0 +1,162 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads the whole response into a DOM document before turning it into model objects.
+ */
+public class DomJenkinsXmlReader extends JenkinsXmlReader {
+  // DocumentBuilder instances are not thread safe
+  private final ThreadLocal<DocumentBuilder> builders;
+
+  public DomJenkinsXmlReader(final DocumentBuilderFactory factory) {
+    this.builders = new ThreadLocal<DocumentBuilder>() {
+      @Override
+      protected DocumentBuilder initialValue() {
+        try {
+          return factory.newDocumentBuilder();
+        }
+        catch (ParserConfigurationException e) {
+          throw new ProcessingException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public Collection<Job> readJobs(InputStream is, String jobNodeName, boolean filterByPrefix) throws IOException {
+    return parseJobs(parse(is), jobNodeName, filterByPrefix);
+  }
+
+  @Override
+  public Build readBuild(InputStream is) throws IOException {
+    return parseBuild(parse(is).getDocumentElement());
+  }
+
+  @Override
+  public JenkinsView readView(InputStream is) throws IOException {
+    final Element root = parse(is).getDocumentElement();
+
+    JenkinsView viewData = new JenkinsView();
+    viewData.setName(childText(root, "name"));
+    viewData.setUrl(toURI(childText(root, "url")));
+
+    final List<Element> jobElements = childElements(root, "job");
+    viewData.setJobsTotal(jobElements.size());
+
+    final Collection<Job> jobs = new ArrayList<Job>();
+    for (Element jobElement : jobElements) {
+      final Job job = parseHarvestedJob(jobElement, true);
+      if (job == null) {
+        continue;
+      }
+
+      final Collection<Job> children = new ArrayList<Job>();
+      for (Element childElement : childElements(jobElement, "activeConfiguration")) {
+        final Job child = parseHarvestedJob(childElement, false);
+        if (child != null) {
+          children.add(child);
+        }
+      }
+      job.setChildren(children);
+
+      if (keepHarvestedJob(job)) {
+        jobs.add(job);
+      }
+    }
+
+    viewData.setJobs(jobs);
+    return viewData;
+  }
+
+  Collection<Job> parseJobs(final Document doc, final String jobNodeName, final boolean filterByPrefix) {
+    // same as the "//" + jobNodeName XPath expression, all the matching elements in document order
+    final NodeList nodes = doc.getElementsByTagName(jobNodeName);
+
+    final Collection<Job> jobs = new ArrayList<Job>();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      final Job job = parseJob((Element) nodes.item(i), filterByPrefix);
+      if (job != null) {
+        jobs.add(job);
+      }
+    }
+    return jobs;
+  }
+
+  private Job parseHarvestedJob(Element el, boolean filterByPrefix) {
+    final Job job = parseJob(el, filterByPrefix);
+    if (job != null) {
+      final Element buildElement = childElement(el, "lastCompletedBuild");
+      if (buildElement != null) {
+        job.setLastCompletedBuild(parseBuild(buildElement));
+      }
+    }
+    return job;
+  }
+
+  private Job parseJob(Element el, boolean filterByPrefix) {
+    return createJob(childText(el, "name"), childText(el, "url"), childText(el, "color"), filterByPrefix);
+  }
+
+  private Build parseBuild(Element el) {
+    final Map<String, String> fields = Maps.newHashMap();
+    for (String field : BUILD_FIELDS) {
+      fields.put(field, childText(el, field));
+    }
+    return createBuild(fields);
+  }
+
+  private Document parse(InputStream is) throws IOException {
+    try {
+      return builders.get().parse(is);
+    }
+    catch (SAXException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static Element childElement(Element parent, String name) {
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName())) {
+        return (Element) node;
+      }
+    }
+    return null;
+  }
+
+  private static List<Element> childElements(Element parent, String name) {
+    final List<Element> result = Lists.newArrayList();
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getNodeName())) {
+        result.add((Element) node);
+      }
+    }
+    return result;
+  }
+
+  private static String childText(Element parent, String name) {
+    final Element child = childElement(parent, name);
+    return child == null ? null : child.getTextContent();
+  }
+}
@@ -0,0 +1,49 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+
+/**
+ * The jobs of a single crawl that could not be read. They are marked unavailable and reported as
+ * such, but once more of them fail than the budget allows Jenkins is most likely down and the crawl
+ * is given up.
+ */
+class ErrorBudget {
+  private static final Logger log = LoggerFactory.getLogger(ErrorBudget.class); // NOSONAR
+
+  private final int budget;
+  private final MetricsRegistry metrics;
+  private final AtomicInteger spent = new AtomicInteger();
+
+  /**
+   * @param budget number of jobs and configurations that may fail, negative for no limit
+   */
+  ErrorBudget(int budget, MetricsRegistry metrics) {
+    this.budget = budget;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Marks the job unavailable.
+   *
+   * @throws ProcessingException once the budget is spent
+   */
+  void spend(Job job, ProcessingException e) {
+    job.setUnavailableReason(e.getMessage());
+    metrics.count("crawl.jobs.unavailable", 1);
+
+    final int failed = spent.incrementAndGet();
+    if (budget >= 0 && failed > budget) {
+      throw new ProcessingException("Giving up after " + failed + " jobs could not be read, the error budget is " + budget, e);
+    }
+    log.warn("Could not read " + job.getUrl() + ", reporting it as unavailable: " + e.getMessage());
+  }
+
+  int getSpent() {
+    return spent.get();
+  }
+}
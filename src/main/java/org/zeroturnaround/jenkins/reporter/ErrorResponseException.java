@@ -0,0 +1,36 @@
+package org.zeroturnaround.jenkins.reporter;
+
+/**
+ * Jenkins answered with an error status that is not worth retrying, see
+ * {@link JenkinsHttpClient#fetch(String, org.apache.http.client.ResponseHandler)}.
+ */
+public class ErrorResponseException extends ProcessingException {
+
+  private final int statusCode;
+  private final String body;
+
+  public ErrorResponseException(String uri, int statusCode, String body) {
+    super("Jenkins responded with " + statusCode + " to " + uri, null);
+    this.statusCode = statusCode;
+    this.body = body;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return the start of the error page, empty if there was none
+   */
+  public String getBody() {
+    return body;
+  }
+
+  /**
+   * @return whether Jenkins refused the request itself rather than failed to answer it
+   */
+  public boolean isClientError() {
+    return statusCode >= 400 && statusCode < 500;
+  }
+
+}
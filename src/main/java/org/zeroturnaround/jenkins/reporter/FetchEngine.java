@@ -0,0 +1,23 @@
+package org.zeroturnaround.jenkins.reporter;
+
+/**
+ * What runs the requests made while crawling a view. Either way, no more than the configured number
+ * of fetch threads' requests are in flight at once, see
+ * {@link JenkinsHttpClient#setMaxConcurrentRequests(int, boolean)}.
+ */
+public enum FetchEngine {
+  /**
+   * A pool with as many platform threads as requests may be in flight.
+   */
+  POOL,
+
+  /**
+   * A virtual thread for every job, configuration and test report, so that hundreds of fetches
+   * waiting on a slow Jenkins cost next to nothing. Before Java 21 the pool is used instead.
+   */
+  VIRTUAL_THREADS;
+
+  public static FetchEngine fromString(String value) {
+    return valueOf(value.trim().toUpperCase().replace('-', '_'));
+  }
+}
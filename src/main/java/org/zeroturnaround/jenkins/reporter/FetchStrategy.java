@@ -0,0 +1,22 @@
+package org.zeroturnaround.jenkins.reporter;
+
+/**
+ * How the jobs of a view are read from Jenkins.
+ */
+public enum FetchStrategy {
+  /**
+   * One listing request for the view and then separate requests for the last completed build and
+   * matrix configurations of every job.
+   */
+  PER_JOB,
+
+  /**
+   * The whole view with jobs, matrix configurations and their last completed builds is read with a
+   * single nested tree query. Falls back to {@link #PER_JOB} when Jenkins rejects the query.
+   */
+  BULK;
+
+  public static FetchStrategy fromString(String value) {
+    return valueOf(value.trim().toUpperCase().replace('-', '_'));
+  }
+}
@@ -1,33 +1,167 @@
 package org.zeroturnaround.jenkins.reporter;
 
+import java.io.File;
 import java.net.URI;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLInputFactory;
 
-import org.xml.sax.SAXException;
+import org.zeroturnaround.jenkins.reporter.model.StackTraceStore;
+import org.zeroturnaround.jenkins.reporter.util.HttpResponseCache;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
 
 public class JenkinsHelperBuilder {
+  private int fetchThreads = 1;
+  private FetchEngine fetchEngine = FetchEngine.POOL;
+  private boolean adaptiveConcurrency = true;
+  private FetchStrategy fetchStrategy = FetchStrategy.PER_JOB;
+  private boolean domParser = false;
+  private File cacheDirectory;
+  private HttpResponseCache responseCache;
+  private boolean filterTestReports = false;
+  private MetricsRegistry metrics = MetricsRegistry.NONE;
+  private int connectTimeoutMillis = JenkinsHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+  private int readTimeoutMillis = JenkinsHttpClient.DEFAULT_READ_TIMEOUT_MILLIS;
+  private long totalTimeoutMillis = JenkinsHttpClient.DEFAULT_TOTAL_TIMEOUT_MILLIS;
+  private int retries = JenkinsHttpClient.DEFAULT_RETRIES;
+  private long retryBackoffMillis = JenkinsHttpClient.DEFAULT_RETRY_BACKOFF_MILLIS;
+  private int errorBudget = 25;
+  private boolean compressStackTraces = false;
+  private int flakyBuilds = 0;
+
+  /**
+   * Maximum number of concurrent requests made to Jenkins by the analyser, whatever runs them.
+   */
+  public JenkinsHelperBuilder fetchThreads(int fetchThreads) {
+    this.fetchThreads = fetchThreads;
+    return this;
+  }
+
+  /**
+   * Platform thread pool of {@link #fetchThreads(int)} threads by default.
+   */
+  public JenkinsHelperBuilder fetchEngine(FetchEngine fetchEngine) {
+    this.fetchEngine = fetchEngine;
+    return this;
+  }
+
+  /**
+   * Start with fewer concurrent requests and find out how many of the {@link #fetchThreads(int)}
+   * Jenkins handles without slowing down, on by default. Otherwise all of them are made from the
+   * start. Either way a Jenkins that answers 429 or 503 is given the time it asks for.
+   */
+  public JenkinsHelperBuilder adaptiveConcurrency(boolean adaptiveConcurrency) {
+    this.adaptiveConcurrency = adaptiveConcurrency;
+    return this;
+  }
+
+  public JenkinsHelperBuilder fetchStrategy(FetchStrategy fetchStrategy) {
+    this.fetchStrategy = fetchStrategy;
+    return this;
+  }
+
+  /**
+   * Read job listings and builds through a DOM document instead of streaming them.
+   */
+  public JenkinsHelperBuilder domParser(boolean domParser) {
+    this.domParser = domParser;
+    return this;
+  }
+
+  /**
+   * Keep completed builds and their test reports in the given directory between runs.
+   */
+  public JenkinsHelperBuilder cacheDirectory(File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+    return this;
+  }
+
+  /**
+   * Cache for responses that Jenkins sends with an ETag or Last-Modified header.
+   */
+  public JenkinsHelperBuilder responseCache(HttpResponseCache responseCache) {
+    this.responseCache = responseCache;
+    return this;
+  }
+
+  /**
+   * Ask Jenkins for the counters and failing cases of test reports only. Falls back to full test
+   * reports if Jenkins rejects the query.
+   */
+  public JenkinsHelperBuilder filterTestReports(boolean filterTestReports) {
+    this.filterTestReports = filterTestReports;
+    return this;
+  }
+
+  /**
+   * Where the requests, crawl times and parsed test cases are counted. Nothing is kept by default.
+   */
+  public JenkinsHelperBuilder metrics(MetricsRegistry metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * See {@link JenkinsHttpClient#setTimeouts(int, int, long)}, by default 10 seconds to connect, a
+   * minute without data and 10 minutes per request.
+   */
+  public JenkinsHelperBuilder timeouts(int connectMillis, int readMillis, long totalMillis) {
+    this.connectTimeoutMillis = connectMillis;
+    this.readTimeoutMillis = readMillis;
+    this.totalTimeoutMillis = totalMillis;
+    return this;
+  }
+
+  /**
+   * See {@link JenkinsHttpClient#setRetries(int, long)}, by default 3 retries starting after half a
+   * second.
+   */
+  public JenkinsHelperBuilder retries(int retries, long backoffMillis) {
+    this.retries = retries;
+    this.retryBackoffMillis = backoffMillis;
+    return this;
+  }
+
+  /**
+   * Number of jobs and configurations that may fail to be read in a crawl before it is given up,
+   * 25 by default. The ones that failed are reported as unavailable.
+   */
+  public JenkinsHelperBuilder errorBudget(int errorBudget) {
+    this.errorBudget = errorBudget;
+    return this;
+  }
+
+  /**
+   * Keep long stack traces of failed tests compressed in memory. Every distinct trace is kept once
+   * either way.
+   */
+  public JenkinsHelperBuilder compressStackTraces(boolean compressStackTraces) {
+    this.compressStackTraces = compressStackTraces;
+    return this;
+  }
+
+  /**
+   * Read this many of the last builds of the jobs with failed tests to mark the flaky ones, at most
+   * {@link org.zeroturnaround.jenkins.reporter.model.TestFlips#MAX_BUILDS}. Only the last completed
+   * build is read by default.
+   */
+  public JenkinsHelperBuilder flakyBuilds(int flakyBuilds) {
+    this.flakyBuilds = flakyBuilds;
+    return this;
+  }
 
   public JenkinsViewAnalyser createDefault(URI viewUrl, final String userName, final String apiToken, final boolean ignoreSslCertificate) {
     final SAXParserFactory saxFactory = SAXParserFactory.newInstance();
-    SAXParser saxParser;
-    try {
-      saxParser = saxFactory.newSAXParser();
-    }
-    catch (ParserConfigurationException e) {
-      throw new ProcessingException(e);
+
+    final JenkinsXmlReader xmlReader;
+    if (domParser) {
+      xmlReader = new DomJenkinsXmlReader(DocumentBuilderFactory.newInstance());
     }
-    catch (SAXException e) {
-      throw new ProcessingException(e);
+    else {
+      xmlReader = new StaxJenkinsXmlReader(XMLInputFactory.newInstance());
     }
 
-    final XPathFactory xPathfactory = XPathFactory.newInstance();
-    XPath xpath = xPathfactory.newXPath();
-
     JenkinsHttpClient httpClient;
 
     if (ignoreSslCertificate && "https".equalsIgnoreCase(viewUrl.getScheme())) {
@@ -42,7 +176,16 @@ public class JenkinsHelperBuilder {
     else {
       httpClient = new JenkinsHttpClient(userName, apiToken);
     }
+    httpClient.setResponseCache(responseCache);
+    httpClient.setMetrics(metrics);
+    httpClient.setMaxConcurrentRequests(fetchThreads, adaptiveConcurrency);
+    httpClient.setTimeouts(connectTimeoutMillis, readTimeoutMillis, totalTimeoutMillis);
+    httpClient.setRetries(retries, retryBackoffMillis);
+
+    final BuildCache buildCache = cacheDirectory == null ? null : new BuildCache(cacheDirectory);
+    final StackTraceStore stackTraces = new StackTraceStore(compressStackTraces, metrics);
 
-    return new JenkinsViewAnalyser(xpath, saxParser, httpClient);
+    return new JenkinsViewAnalyser(saxFactory, xmlReader, httpClient, fetchThreads, fetchEngine, fetchStrategy, buildCache, stackTraces, filterTestReports, metrics,
+        errorBudget, flakyBuilds);
   }
 }
@@ -2,15 +2,23 @@ package org.zeroturnaround.jenkins.reporter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.AuthState;
 import org.apache.http.auth.Credentials;
@@ -18,23 +26,63 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
 import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.protocol.ExecutionContext;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.zeroturnaround.jenkins.reporter.util.ConcurrencyLimit;
+import org.zeroturnaround.jenkins.reporter.util.HttpResponseCache;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+import org.zeroturnaround.jenkins.reporter.util.TransferStatistics;
 import org.zeroturnaround.jenkins.reporter.util.XMLResponseHandler;
 
+import com.google.common.base.Charsets;
+
 public class JenkinsHttpClient {
   private static final Logger log = LoggerFactory.getLogger(JenkinsHttpClient.class); // NOSONAR
 
+  private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+  public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+  public static final int DEFAULT_READ_TIMEOUT_MILLIS = 60 * 1000;
+  public static final long DEFAULT_TOTAL_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  public static final int DEFAULT_RETRIES = 3;
+  public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+  private static final long MAX_RETRY_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  // the deadline of a request without a total timeout, far enough away to never come
+  private static final long NO_DEADLINE_NANOS = TimeUnit.DAYS.toNanos(365);
+
+  // an overloaded Jenkins (429 or 503) is asked this many times before giving up on a request
+  private static final int MAX_OVERLOADED_ATTEMPTS = 5;
+  // how long to pause if an overloaded Jenkins does not say with Retry-After
+  private static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+  private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  // how much of an error page is kept to tell why a request was refused
+  private static final int ERROR_BODY_BYTES = 4 * 1024;
+
   protected final DefaultHttpClient httpClient;
-  private XMLResponseHandler handler;
+  private final XMLResponseHandler handler;
+  private HttpResponseCache responseCache;
+  private final TransferStatistics transferStatistics = new TransferStatistics();
+  private MetricsRegistry metrics = MetricsRegistry.NONE;
+  private volatile ConcurrencyLimit concurrencyLimit = ConcurrencyLimit.fixed(Integer.MAX_VALUE);
+  private long totalTimeoutMillis;
+  private int retries;
+  private long retryBackoffMillis;
 
   HttpRequestInterceptor preemptiveAuth = new HttpRequestInterceptor() {
     public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
@@ -53,53 +101,420 @@ public class JenkinsHttpClient {
   };
 
   public JenkinsHttpClient(String username, String authToken) {
-    DocumentBuilder builder;
-    try {
-      builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-    }
-    catch (ParserConfigurationException e) {
-      throw new ProcessingException(e);
-    }
-    handler = new XMLResponseHandler(builder);
+    handler = new XMLResponseHandler(DocumentBuilderFactory.newInstance());
 
     PoolingClientConnectionManager manager = new PoolingClientConnectionManager();
-    manager.setDefaultMaxPerRoute(20);
+    manager.setDefaultMaxPerRoute(DEFAULT_MAX_CONNECTIONS);
     httpClient = new DefaultHttpClient(manager);
     if (username != null) {
       Credentials credentials = new UsernamePasswordCredentials(username, authToken);
       httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY, credentials);
       httpClient.addRequestInterceptor(preemptiveAuth, 0);
     }
+
+    // test reports with stack traces compress very well, decode them while they are streamed
+    httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+    httpClient.addResponseInterceptor(transferStatistics.wireCounter());
+    httpClient.addResponseInterceptor(new ResponseContentEncoding());
+    httpClient.addResponseInterceptor(transferStatistics.decodedCounter());
+
+    setTimeouts(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_TOTAL_TIMEOUT_MILLIS);
+    setRetries(DEFAULT_RETRIES, DEFAULT_RETRY_BACKOFF_MILLIS);
+  }
+
+  public TransferStatistics getTransferStatistics() {
+    return transferStatistics;
+  }
+
+  /**
+   * Responses with an ETag or Last-Modified header are kept in the given cache and requested
+   * conditionally later on.
+   */
+  public void setResponseCache(HttpResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * Limits the requests in flight made with {@link #fetch(String, ResponseHandler)}, however many
+   * threads are fetching. A request holds its permit until its response has been handled, so the
+   * limit is shared by everything that uses this client, e.g. all the views of a server.
+   *
+   * @param adaptive start lower and find the highest limit up to the given one at which Jenkins
+   *          still responds as fast as without load, see {@link ConcurrencyLimit}
+   */
+  public void setMaxConcurrentRequests(int maxConcurrentRequests, boolean adaptive) {
+    final PoolingClientConnectionManager manager = (PoolingClientConnectionManager) httpClient.getConnectionManager();
+    manager.setDefaultMaxPerRoute(Math.max(DEFAULT_MAX_CONNECTIONS, maxConcurrentRequests));
+    manager.setMaxTotal(Math.max(manager.getMaxTotal(), maxConcurrentRequests));
+    concurrencyLimit = adaptive ? ConcurrencyLimit.adaptive(maxConcurrentRequests) : ConcurrencyLimit.fixed(maxConcurrentRequests);
+  }
+
+  /**
+   * @param connectMillis to open a connection to Jenkins
+   * @param readMillis without any data arriving, while waiting for the response or reading its body
+   * @param totalMillis for a whole request made with {@link #fetch(String, ResponseHandler)}, all
+   *          its attempts and the waits before them included. It is checked before every attempt
+   *          and whenever more of the body is read, so a request may take the read timeout longer.
+   *          0 for none
+   */
+  public void setTimeouts(int connectMillis, int readMillis, long totalMillis) {
+    HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectMillis);
+    HttpConnectionParams.setSoTimeout(httpClient.getParams(), readMillis);
+    this.totalTimeoutMillis = totalMillis;
+  }
+
+  /**
+   * Requests made with {@link #fetch(String, ResponseHandler)} that fail with a network error, a
+   * timeout, 502 or 504 are repeated, waiting about twice as long before every retry. The waits
+   * are jittered so that requests failing together are not all repeated at the same time.
+   *
+   * @param retries how many times a request is repeated, 0 to fail at the first error
+   * @param backoffMillis the wait before the first retry is between half of this and this
+   */
+  public void setRetries(int retries, long backoffMillis) {
+    this.retries = retries;
+    this.retryBackoffMillis = backoffMillis;
+  }
+
+  /**
+   * @return the number of requests currently allowed in flight
+   */
+  public int getConcurrencyLimit() {
+    return concurrencyLimit.getLimit();
+  }
+
+  /**
+   * Requests are counted and timed per endpoint type, see {@link #endpointOf(String)}.
+   */
+  public void setMetrics(MetricsRegistry metrics) {
+    this.metrics = metrics;
   }
 
   public Document fetchAsXMLDocument(String uri) {
-    log.trace("Requesting url {} ...", uri);
-    HttpGet get = new HttpGet(uri);
+    return fetch(uri, handler);
+  }
+
+  /**
+   * Requests that Jenkins answers with 429 or 503 are repeated after the time it asks for with
+   * Retry-After, those that fail for a reason that may go away are retried, see
+   * {@link #setRetries(int, long)}. Neither is done past the total timeout of the request, see
+   * {@link #setTimeouts(int, int, long)}.
+   *
+   * @throws DocumentNotFoundException if Jenkins responds with 404
+   * @throws ErrorResponseException if Jenkins responds with any other error that is not retried
+   * @throws ProcessingException if the request failed for good
+   */
+  public <T> T fetch(String uri, ResponseHandler<T> handler) {
+    final String endpoint = endpointOf(uri);
+    final ConcurrencyLimit limit = concurrencyLimit;
+    final long deadline = System.nanoTime() + (totalTimeoutMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(totalTimeoutMillis) : NO_DEADLINE_NANOS);
+    int overloaded = 0;
+    int retried = 0;
+    Throwable lastError = null;
+    while (true) {
+      long backoff = 0;
+      final long start = System.nanoTime();
+      try {
+        // a paused limit is where an overloaded Jenkins is waited for
+        if (!limit.tryAcquire(millisUntil(deadline))) {
+          throw new ProcessingException("Failed to fetch " + uri + " within " + totalTimeoutMillis + " ms", lastError);
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessingException(e);
+      }
+      try {
+        metrics.record("http.queue.millis", millisSince(start));
+        return fetch(uri, handler, endpoint, limit, deadline);
+      }
+      catch (OverloadedException e) {
+        if (++overloaded >= MAX_OVERLOADED_ATTEMPTS) {
+          throw new ProcessingException("Jenkins is still overloaded after " + overloaded + " attempts to fetch " + uri, e);
+        }
+        lastError = e;
+      }
+      catch (TransientException e) {
+        if (retried >= retries) {
+          throw new ProcessingException("Failed to fetch " + uri + (retried > 0 ? " after " + retried + " retries" : ""), e.getCause());
+        }
+        backoff = backoffMillis(++retried);
+        if (backoff >= millisUntil(deadline)) {
+          throw new ProcessingException("Failed to fetch " + uri + " within " + totalTimeoutMillis + " ms", e.getCause());
+        }
+        lastError = e.getCause();
+        metrics.count("http.retries." + endpoint, 1);
+        log.debug("Retrying {} in {} ms: {}", new Object[] { uri, backoff, e.getCause().toString() });
+      }
+      finally {
+        limit.release();
+      }
+
+      // without holding a permit
+      sleep(backoff);
+    }
+  }
+
+  /**
+   * @param retry 1 for the first retry
+   * @return an exponentially growing wait, randomly between half of it and all of it
+   */
+  private long backoffMillis(int retry) {
+    final long max = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffMillis << Math.min(retry - 1, 20));
+    return max / 2 + (long) (Math.random() * (max - max / 2));
+  }
+
+  private static void sleep(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessingException(e);
+    }
+  }
+
+  /**
+   * A single attempt.
+   *
+   * @param deadline of the whole request, see {@link System#nanoTime()}
+   */
+  private <T> T fetch(String uri, ResponseHandler<T> handler, String endpoint, ConcurrencyLimit limit, long deadline) throws OverloadedException,
+      TransientException {
+    final long start = System.nanoTime();
+    metrics.count("http.requests." + endpoint, 1);
     try {
-      return httpClient.execute(get, handler);
+      final AtomicReference<HttpGet> request = new AtomicReference<HttpGet>();
+      final HttpResponse response = execute(uri, request);
+      // until the headers have arrived, the rest is spent reading and parsing the body
+      final long latency = millisSince(start);
+      metrics.record("http.latency." + endpoint, latency);
+
+      final int status = response.getStatusLine().getStatusCode();
+      if (status == 429 || status == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+        EntityUtils.consume(response.getEntity());
+        metrics.count("http.overloaded." + endpoint, 1);
+        limit.overloaded(retryAfterMillis(response));
+        metrics.record("http.concurrency.limit", limit.getLimit());
+        throw new OverloadedException(status);
+      }
+      limit.responded(latency);
+      metrics.record("http.concurrency.limit", limit.getLimit());
+
+      final CountingEntity entity = response.getEntity() == null ? null : new CountingEntity(response.getEntity(), request.get(), deadline, totalTimeoutMillis);
+      response.setEntity(entity);
+      try {
+        if (isErrorResponse(status)) {
+          metrics.count("http.errors." + endpoint, 1);
+          throw new ErrorResponseException(uri, status, excerpt(entity));
+        }
+        return handler.handleResponse(response);
+      }
+      finally {
+        EntityUtils.consume(entity);
+        metrics.record("http.time." + endpoint, millisSince(start));
+        if (entity != null) {
+          metrics.count("http.bytes." + endpoint, entity.bytes);
+        }
+      }
     }
     catch (HttpResponseException e) {
-      if (e.getStatusCode() == 404)
+      if (e.getStatusCode() == 404) {
+        metrics.count("http.notFound." + endpoint, 1);
         throw new DocumentNotFoundException(uri, e);
-      else
-        throw new ProcessingException(e);
+      }
+      metrics.count("http.errors." + endpoint, 1);
+      // a proxy or load balancer in front of Jenkins could not reach it
+      if (e.getStatusCode() == HttpStatus.SC_BAD_GATEWAY || e.getStatusCode() == HttpStatus.SC_GATEWAY_TIMEOUT) {
+        throw new TransientException(e);
+      }
+      throw new ProcessingException(e);
     }
-    catch (IOException e) {
+    catch (OverloadedException e) {
+      throw e;
+    }
+    // also what the response handlers make of unreadable responses
+    catch (ClientProtocolException e) {
+      metrics.count("http.errors." + endpoint, 1);
       throw new ProcessingException(e);
     }
+    catch (IOException e) {
+      metrics.count("http.errors." + endpoint, 1);
+      if (e instanceof InterruptedIOException) {
+        metrics.count("http.timeouts." + endpoint, 1);
+      }
+      throw new TransientException(e);
+    }
+  }
+
+  /**
+   * @return whether the response is an error that the response handlers are not left to deal with,
+   *         404 is {@link DocumentNotFoundException} and 502 and 504 are retried
+   */
+  private static boolean isErrorResponse(int status) {
+    return status >= HttpStatus.SC_BAD_REQUEST && status != HttpStatus.SC_NOT_FOUND && status != HttpStatus.SC_BAD_GATEWAY
+        && status != HttpStatus.SC_GATEWAY_TIMEOUT;
+  }
+
+  private static String excerpt(HttpEntity entity) throws IOException {
+    if (entity == null) {
+      return "";
+    }
+
+    final InputStream in = entity.getContent();
+    final byte[] buffer = new byte[ERROR_BODY_BYTES];
+    int length = 0;
+    int read;
+    while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+      length += read;
+    }
+    return new String(buffer, 0, length, Charsets.UTF_8);
+  }
+
+  /**
+   * Retry-After is either a number of seconds or an HTTP date.
+   */
+  static long retryAfterMillis(HttpResponse response) {
+    final Header header = response.getFirstHeader("Retry-After");
+    if (header == null) {
+      return DEFAULT_RETRY_AFTER_MILLIS;
+    }
+
+    final String value = header.getValue().trim();
+    long millis;
+    try {
+      millis = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    }
+    catch (NumberFormatException e) {
+      try {
+        final Date date = DateUtils.parseDate(value);
+        millis = date.getTime() - System.currentTimeMillis();
+      }
+      catch (DateParseException e2) {
+        log.debug("Ignoring Retry-After header {}", value);
+        millis = DEFAULT_RETRY_AFTER_MILLIS;
+      }
+    }
+    return Math.min(MAX_RETRY_AFTER_MILLIS, Math.max(0, millis));
+  }
+
+  /**
+   * @return <code>view</code>, <code>job</code> (matrix configurations), <code>build</code>,
+   *         <code>testReport</code> or <code>other</code>
+   */
+  static String endpointOf(String uri) {
+    final int query = uri.indexOf('?');
+    final String path = query < 0 ? uri : uri.substring(0, query);
+    if (path.contains("/testReport/")) {
+      return "testReport";
+    }
+    if (path.contains("/lastCompletedBuild/")) {
+      return "build";
+    }
+
+    final int view = path.lastIndexOf("/view/");
+    final int job = path.lastIndexOf("/job/");
+    if (view >= 0 && view > job) {
+      return "view";
+    }
+    return job >= 0 ? "job" : "other";
+  }
+
+  private static long millisSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private static long millisUntil(long deadlineNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
   }
 
-  public InputStream fetchAsInputStream(String uri) {
+  /**
+   * @param request receives the request whose response is returned, so that it can be aborted
+   */
+  private HttpResponse execute(String uri, AtomicReference<HttpGet> request) throws IOException {
     log.trace("Requesting url {} ...", uri);
     HttpGet get = new HttpGet(uri);
-    try {
-      return httpClient.execute(get).getEntity().getContent();
+    request.set(get);
+    if (responseCache == null) {
+      return httpClient.execute(get);
     }
-    catch (ClientProtocolException e) {
-      throw new ProcessingException(e);
+
+    responseCache.prepare(get);
+    HttpResponse response = responseCache.process(uri, httpClient.execute(get));
+    if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+      // the cached response was evicted in the meantime
+      EntityUtils.consume(response.getEntity());
+      get = new HttpGet(uri);
+      request.set(get);
+      response = responseCache.process(uri, httpClient.execute(get));
     }
-    catch (IOException e) {
-      throw new ProcessingException(e);
+    return response;
+  }
+
+  /**
+   * Jenkins answered 429 or 503, the request may be repeated.
+   */
+  private static class OverloadedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    OverloadedException(int status) {
+      super("Jenkins responded with " + status);
+    }
+  }
+
+  /**
+   * A network error or a timeout, the request may be repeated.
+   */
+  private static class TransientException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    TransientException(IOException cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * Counts the bytes of the body after the content encoding has been undone, and stops reading it
+   * once the deadline of the request has passed.
+   */
+  private static class CountingEntity extends HttpEntityWrapper {
+    private final HttpGet request;
+    private final long deadlineNanos;
+    private final long timeoutMillis;
+    private long bytes;
+
+    /**
+     * @param timeoutMillis the total timeout that the deadline comes from, for the message
+     */
+    CountingEntity(HttpEntity entity, HttpGet request, long deadlineNanos, long timeoutMillis) {
+      super(entity);
+      this.request = request;
+      this.deadlineNanos = deadlineNanos;
+      this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new ProxyInputStream(super.getContent()) {
+        @Override
+        protected void beforeRead(int n) throws IOException {
+          if (System.nanoTime() - deadlineNanos > 0) {
+            // otherwise the rest of the body would be read to reuse the connection
+            request.abort();
+            throw new SocketTimeoutException("The request took longer than " + timeoutMillis + " ms");
+          }
+        }
+
+        @Override
+        protected void afterRead(int n) {
+          if (n > 0) {
+            bytes += n;
+          }
+        }
+      };
     }
   }
 }
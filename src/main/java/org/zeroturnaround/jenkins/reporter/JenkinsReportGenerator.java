@@ -17,38 +17,126 @@ package org.zeroturnaround.jenkins.reporter;
 
 import static com.google.common.collect.Lists.newArrayList;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.tools.generic.DateTool;
 import org.apache.velocity.tools.generic.EscapeTool;
 import org.apache.velocity.tools.generic.NumberTool;
+import org.zeroturnaround.jenkins.reporter.model.FailureClusters;
 import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
 import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.ViewStatistics;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
 
 public class JenkinsReportGenerator {
+  /**
+   * Bytes buffered between the template and the report file. Rendering into a file needs this much
+   * memory whatever the size of the report.
+   */
+  public static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
   private final Template template;
+  private final MetricsRegistry metrics;
+  private final BuildHistory history;
 
   public JenkinsReportGenerator(Template template) {
+    this(template, MetricsRegistry.NONE);
+  }
+
+  /**
+   * @param metrics receives the render time and, for files, the size of every report
+   */
+  public JenkinsReportGenerator(Template template, MetricsRegistry metrics) {
+    this(template, metrics, null);
+  }
+
+  /**
+   * @param history where the builds of every report are recorded and that the report tells how
+   *          often jobs and tests failed lately from, <code>null</code> for none
+   */
+  public JenkinsReportGenerator(Template template, MetricsRegistry metrics, BuildHistory history) {
     this.template = template;
+    this.metrics = metrics;
+    this.history = history;
   }
 
   public void generateReport(JenkinsView viewData, PrintWriter out, Date startTime) {
+    final long start = System.nanoTime();
+    template.merge(createContext(viewData, startTime), out);
+
+    out.println();
+    out.flush();
+    out.close();
+    metrics.record("report.render.millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * Renders the report straight into the file, in the platform encoding.
+   *
+   * @return the number of bytes written
+   */
+  public long generateReport(JenkinsView viewData, File file, Date startTime) throws IOException {
+    final long start = System.nanoTime();
+    final CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER_SIZE));
+    final Writer writer = new OutputStreamWriter(counter);
+    try {
+      template.merge(createContext(viewData, startTime), writer);
+      writer.write(IOUtils.LINE_SEPARATOR);
+      writer.close();
+    }
+    finally {
+      IOUtils.closeQuietly(writer);
+    }
+    metrics.record("report.render.millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    metrics.record("report.bytes", counter.getByteCount());
+    return counter.getByteCount();
+  }
+
+  private VelocityContext createContext(JenkinsView viewData, Date startTime) {
+    final ViewStatistics statistics = new ViewStatistics(viewData);
+
     final List<Job> failedJobs = newArrayList();
-    failedJobs.addAll(viewData.getFailedJobs());
+    failedJobs.addAll(statistics.getFailedJobs());
 
     // sort jobs by build timestamp
     Collections.sort(failedJobs, new JobByTimestampComparator());
 
     final List<Job> passedJobs = newArrayList();
-    passedJobs.addAll(viewData.getPassedJobs());
+    passedJobs.addAll(statistics.getPassedJobs());
 
     // sort jobs by build timestamp
     Collections.sort(passedJobs, new JobByTimestampComparator());
 
+    final VelocityContext context = createToolContext(startTime);
+    context.put("view", viewData);
+    context.put("stats", statistics);
+    context.put("failedJobs", failedJobs);
+    context.put("passedJobs", passedJobs);
+    context.put("clusters", new FailureClusters(viewData));
+    if (history != null) {
+      history.record(viewData.getJobs(), startTime);
+      context.put("history", history);
+    }
+    return context;
+  }
+
+  /**
+   * The start time and the formatting tools the report templates use, and where they note which
+   * stack traces are already part of the report.
+   */
+  static VelocityContext createToolContext(Date startTime) {
     final VelocityContext context = new VelocityContext();
     context.put("startTime", startTime);
 
@@ -65,17 +153,8 @@ public class JenkinsReportGenerator {
     final EscapeTool escapeTool = new EscapeTool();
     context.put("escapeTool", escapeTool);
 
-    context.put("view", viewData);
-    context.put("failedJobs", failedJobs);
-    context.put("passedJobs", passedJobs);
-
-    final StringWriter writer = new StringWriter();
-    template.merge(context, writer);
-
-    out.println(writer.toString());
-
-    out.flush();
-    out.close();
+    context.put("tracesShown", new HashMap<String, Integer>());
+    return context;
   }
 
   public static final class JobByTimestampComparator implements Comparator<Job> {
@@ -1,19 +1,59 @@
 package org.zeroturnaround.jenkins.reporter;
 
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
 import org.apache.velocity.Template;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.runtime.RuntimeConstants;
 import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
 
 public class JenkinsReportGeneratorBuilder {
+  private MetricsRegistry metrics = MetricsRegistry.NONE;
+  private BuildHistory history;
+
+  /**
+   * Where render times and report sizes are recorded. Nothing is kept by default.
+   */
+  public JenkinsReportGeneratorBuilder metrics(MetricsRegistry metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Where the builds of the reports are recorded and read back to tell how often jobs and tests
+   * failed lately. Nothing is recorded by default.
+   */
+  public JenkinsReportGeneratorBuilder history(BuildHistory history) {
+    this.history = history;
+    return this;
+  }
+
   public JenkinsReportGenerator buildDefaultGenerator() {
+    Template template = createEngine().getTemplate("report.vm");
+
+    return new JenkinsReportGenerator(template, metrics, history);
+  }
+
+  /**
+   * A generator to pass to {@link JenkinsViewAnalyser#getViewData(List, CrawlListener)}, writing the
+   * report of every view while it is crawled.
+   *
+   * @param outputs one for every view, in the order of the view URLs
+   */
+  public ProgressiveReportGenerator buildProgressiveGenerator(List<? extends Writer> outputs, Date startTime) {
+    final VelocityEngine velocityEngine = createEngine();
+    return new ProgressiveReportGenerator(velocityEngine.getTemplate("progressive-header.vm"), velocityEngine.getTemplate("report-failed-job.vm"),
+        velocityEngine.getTemplate("progressive-footer.vm"), outputs, startTime, metrics, history);
+  }
+
+  private static VelocityEngine createEngine() {
     final VelocityEngine velocityEngine = new VelocityEngine();
     velocityEngine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
     velocityEngine.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
     velocityEngine.init();
-
-    Template template = velocityEngine.getTemplate("report.vm");
-
-    return new JenkinsReportGenerator(template);
+    return velocityEngine;
   }
 }
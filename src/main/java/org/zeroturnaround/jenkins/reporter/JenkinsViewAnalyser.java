@@ -1,265 +1,1044 @@
 package org.zeroturnaround.jenkins.reporter;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 import org.zeroturnaround.jenkins.reporter.model.Build;
 import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
 import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.StackTraceStore;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestFlips;
 import org.zeroturnaround.jenkins.reporter.model.TestReport;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+import org.zeroturnaround.jenkins.reporter.util.StreamResponseHandler;
+import org.zeroturnaround.jenkins.reporter.util.URLParamEncoder;
+import org.zeroturnaround.jenkins.reporter.util.VirtualThreads;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class JenkinsViewAnalyser {
   private static final Logger log = LoggerFactory.getLogger(JenkinsViewAnalyser.class); // NOSONAR
-  private final XPath xpath;
-  private final SAXParser saxParser;
+  // SAXParser instances are not thread safe, every fetch thread gets its own
+  private final SAXParserFactory saxFactory;
+  // parsers are not thread-safe, every parse takes one and puts it back, so that there are no more of
+  // them than parses at once, whatever the threads are
+  private final Queue<SAXParser> saxParsers = new ConcurrentLinkedQueue<SAXParser>();
+  private final JenkinsXmlReader xmlReader;
   private final JenkinsHttpClient jhc;
+  private final int fetchThreads;
+  private final FetchEngine fetchEngine;
+  private final FetchStrategy fetchStrategy;
+  private final BuildCache buildCache;
+  private final StackTraceStore stackTraces;
+  private final boolean filterTestReports;
+  private final MetricsRegistry metrics;
+  private final int errorBudget;
+  private final int flakyBuilds;
+  // whether Jenkins accepts the filtered query, null until its first answer to it tells
+  private final AtomicReference<Boolean> filteredTestReportsAccepted = new AtomicReference<Boolean>();
+
+  /**
+   * The failed tests of the builds before the last completed ones, absent for builds without a test
+   * report. They never change, so only the number of cases kept limits them.
+   */
+  private final Cache<URI, Optional<TestReport>> earlierTestReports = CacheBuilder.newBuilder().maximumWeight(EARLIER_CASES_KEPT)
+      .weigher(new Weigher<URI, Optional<TestReport>>() {
+        @Override
+        public int weigh(URI buildUrl, Optional<TestReport> report) {
+          return 1 + (report.isPresent() ? report.get().getTestCases().size() : 0);
+        }
+      }).build();
+
+  private static final int EARLIER_CASES_KEPT = 100000;
+
+  private static final String BUILD_TREE = "lastCompletedBuild[" + Joiner.on(',').join(JenkinsXmlReader.BUILD_FIELDS) + "]";
+
+  private static final String BUILD_NUMBER_TREE = "lastCompletedBuild[number]";
+
+  private static final String CASE_TREE = "suites[cases[age,className,name,status,errorDetails,errorStackTrace]]";
+
+  private static final String FAILED_CASES_ONLY = "&exclude=" + URLParamEncoder.encode("//case[status!='FAILED'][status!='REGRESSION']");
+
+  /**
+   * Only the counters and the cases that {@link ReadTestReportHandler} keeps, for plain and matrix
+   * test reports.
+   */
+  private static final String FAILED_CASES_QUERY = "tree=" + URLParamEncoder.encode("failCount,passCount,skipCount,totalCount," + CASE_TREE + ",childReports[result[" + CASE_TREE + "]]")
+      + FAILED_CASES_ONLY;
 
-  private static final int SECONDS_IN_MINUTE = 60;
-  private static final int SECONDS_IN_HOUR = SECONDS_IN_MINUTE * 60;
-  private static final int MILLISECONDS_IN_SECOND = 1000;
+  private static final String CASE_NAME_TREE = "suites[cases[className,name,status]]";
 
-  public JenkinsViewAnalyser(XPath xpath, SAXParser saxParser, JenkinsHttpClient jhc) {
-    this.xpath = xpath;
-    this.saxParser = saxParser;
+  /**
+   * Only the names of the failing cases, all that is needed of the earlier builds.
+   */
+  private static final String FAILED_CASE_NAMES_QUERY = "tree=" + URLParamEncoder.encode(CASE_NAME_TREE + ",childReports[result[" + CASE_NAME_TREE + "]]")
+      + FAILED_CASES_ONLY;
+
+  /**
+   * @param xmlReader turns job listings and builds into model objects
+   * @param fetchThreads maximum number of concurrent requests made to Jenkins while crawling the jobs
+   *          of a view, 1 means that jobs are crawled one after another
+   * @param fetchEngine what runs the fetches, with {@link FetchEngine#VIRTUAL_THREADS} the number of
+   *          requests in flight is only limited by the HTTP client, without virtual threads the pool
+   *          of fetch threads is used
+   * @param fetchStrategy how the jobs and builds of a view are requested
+   * @param buildCache builds read by earlier runs, <code>null</code> if every test report should be
+   *          fetched
+   * @param stackTraces where the stack traces of all the test reports are kept, once per distinct
+   *          trace
+   * @param filterTestReports ask Jenkins for the counters and failing cases of test reports only
+   * @param metrics receives the crawl times of jobs, the configurations of matrix jobs and the cases
+   *          read from test reports
+   * @param errorBudget number of jobs and configurations per crawl that may fail and are then
+   *          reported as unavailable, the crawl fails once more do, negative for no limit
+   * @param flakyBuilds how many of the last builds of the jobs with failed tests are read to tell
+   *          flaky tests, at most {@link TestFlips#MAX_BUILDS}, less than 2 for none
+   */
+  public JenkinsViewAnalyser(SAXParserFactory saxFactory, JenkinsXmlReader xmlReader, JenkinsHttpClient jhc, int fetchThreads, FetchEngine fetchEngine,
+      FetchStrategy fetchStrategy, BuildCache buildCache, StackTraceStore stackTraces, boolean filterTestReports, MetricsRegistry metrics, int errorBudget,
+      int flakyBuilds) {
+    if (flakyBuilds > TestFlips.MAX_BUILDS) {
+      throw new IllegalArgumentException("At most the last " + TestFlips.MAX_BUILDS + " builds can be read, not " + flakyBuilds);
+    }
+    if (fetchEngine == FetchEngine.VIRTUAL_THREADS && !VirtualThreads.isAvailable()) {
+      log.warn("Virtual threads need Java 21, using a pool of " + fetchThreads + " fetch threads instead");
+      fetchEngine = FetchEngine.POOL;
+    }
+    this.saxFactory = saxFactory;
+    this.xmlReader = xmlReader;
     this.jhc = jhc;
+    this.fetchThreads = fetchThreads;
+    this.fetchEngine = fetchEngine;
+    this.fetchStrategy = fetchStrategy;
+    this.buildCache = buildCache;
+    this.stackTraces = stackTraces;
+    this.filterTestReports = filterTestReports;
+    this.metrics = metrics;
+    this.errorBudget = errorBudget;
+    this.flakyBuilds = flakyBuilds;
   }
 
   public JenkinsView getViewData(URI viewUrl) {
-    JenkinsView viewData = new JenkinsView();
+    return getViewData(Collections.singletonList(viewUrl)).get(0);
+  }
 
-    viewData.setName(getViewName(viewUrl));
-    viewData.setUrl(getViewURL(viewUrl));
-    viewData.setJobsTotal(getJobCount(viewUrl));
-    viewData.setJobs(readJobs(viewUrl));
+  /**
+   * Reads several views of the same Jenkins. The views are listed first, then every job is crawled
+   * once, however many of the views it is part of. Views that share a job share its model objects.
+   * Jobs that could not be read are part of the views, marked unavailable.
+   *
+   * @return the views in the order of the given URLs
+   */
+  public List<JenkinsView> getViewData(List<URI> viewUrls) {
+    return getViewData(viewUrls, CrawlListener.NONE);
+  }
 
+  /**
+   * Reads several views like {@link #getViewData(List)}, telling the listener about every job as
+   * soon as it is read.
+   */
+  public List<JenkinsView> getViewData(List<URI> viewUrls, CrawlListener listener) {
+    final long start = System.nanoTime();
+    final List<JenkinsView> views = listViews(viewUrls);
+    listener.viewsListed(views);
+    final ErrorBudget errors = new ErrorBudget(errorBudget, metrics);
+    crawlJobs(views, errors, new JobCompletion(listener));
+    final Map<URI, Job> jobs = Maps.newLinkedHashMap();
+    for (JenkinsView viewData : views) {
+      for (Job job : viewData.getJobs()) {
+        jobs.put(job.getUrl(), job);
+      }
+    }
+    markFlakyTests(jobs.values());
+    metrics.record("crawl.millis", millisSince(start));
+
+    final List<String> names = Lists.newArrayList();
+    for (JenkinsView viewData : views) {
+      names.add(viewData.getName());
+    }
+    log.info("Read view" + (names.size() > 1 ? "s " : " ") + Joiner.on(", ").join(names) + ": " + jhc.getTransferStatistics() + unavailable(errors));
+    return views;
+  }
+
+  /**
+   * Reads the view again, reusing the builds and test reports of an earlier result for the jobs and
+   * configurations whose last completed build is still the same. A single listing of the colors and
+   * build numbers tells which jobs have built since, only those are fetched.
+   *
+   * @param previous an earlier result of {@link #getViewData(URI)} or of this method for the same
+   *          view, <code>null</code> to read the whole view
+   */
+  public JenkinsView refreshViewData(URI viewUrl, JenkinsView previous) {
+    if (previous == null) {
+      return getViewData(viewUrl);
+    }
+
+    final long start = System.nanoTime();
+    final JenkinsView viewData = fetchViewTree(viewUrl, BUILD_NUMBER_TREE);
+    if (viewData == null) {
+      return getViewData(viewUrl);
+    }
+
+    final ErrorBudget errors = new ErrorBudget(errorBudget, metrics);
+    refreshJobs(viewData, previous, errors);
+    markFlakyTests(viewData.getJobs());
+    metrics.record("crawl.millis", millisSince(start));
+    log.info("Refreshed view " + viewData.getName() + ": " + jhc.getTransferStatistics() + unavailable(errors));
     return viewData;
   }
 
-  private URI getViewURL(URI viewUrl) {
+  private static String unavailable(ErrorBudget errors) {
+    return errors.getSpent() == 0 ? "" : ", " + errors.getSpent() + " jobs unavailable";
+  }
+
+  private List<JenkinsView> listViews(List<URI> viewUrls) {
+    final ExecutorService executor = createFetchExecutor();
     try {
+      final List<Future<JenkinsView>> futures = Lists.newArrayList();
+      for (final URI viewUrl : viewUrls) {
+        futures.add(executor.submit(new Callable<JenkinsView>() {
+          @Override
+          public JenkinsView call() {
+            return listView(viewUrl);
+          }
+        }));
+      }
 
-      Document doc = jhc.fetchAsXMLDocument(viewUrl.toASCIIString() + "/api/xml?tree=name,url");
-      URI uri = new URI(doc.getElementsByTagName("url").item(0).getTextContent());
-      return uri;
-    }
-    catch (DOMException e) {
-      throw new ProcessingException(e);
+      final List<JenkinsView> views = Lists.newArrayList();
+      for (Future<JenkinsView> future : futures) {
+        views.add(waitFor(future));
+      }
+      return views;
     }
-    catch (URISyntaxException e) {
-      throw new ProcessingException(e);
+    finally {
+      executor.shutdownNow();
     }
   }
 
-  private String getViewName(URI viewUrl) {
-    Document doc;
-    doc = jhc.fetchAsXMLDocument(viewUrl.toASCIIString() + "/api/xml?tree=name,url");
-    return doc.getElementsByTagName("name").item(0).getTextContent();
+  /**
+   * @return the view with its jobs, which already have their last completed builds if the whole
+   *         view could be read with a single request
+   */
+  private JenkinsView listView(URI viewUrl) {
+    if (fetchStrategy == FetchStrategy.BULK) {
+      JenkinsView viewData = fetchViewTree(viewUrl, BUILD_TREE);
+      if (viewData != null) {
+        return viewData;
+      }
+    }
+
+    JenkinsView viewData = new JenkinsView();
+
+    readViewInfo(viewUrl, viewData);
+    viewData.setJobsTotal(getJobCount(viewUrl));
+    viewData.setJobs(listJobs(viewUrl));
+
+    return viewData;
   }
 
-  private int getJobCount(URI uri) {
-    final String fullUrl = uri.toASCIIString() + "/api/xml?wrapper=jobs&tree=jobs[name,url,color]";
+  /**
+   * Fetches the builds, test reports and matrix configurations of the jobs of all the views, each
+   * job only once, and puts the shared jobs into the views.
+   */
+  private void crawlJobs(List<JenkinsView> views, ErrorBudget errors, JobCompletion completion) {
+    final Map<URI, Job> jobs = Maps.newLinkedHashMap();
+    for (JenkinsView viewData : views) {
+      for (Job job : viewData.getJobs()) {
+        if (!jobs.containsKey(job.getUrl())) {
+          jobs.put(job.getUrl(), job);
+        }
+      }
+    }
 
-    log.debug("Counting total number of jobs for '{}'", fullUrl);
+    final List<Job> harvestedJobs = Lists.newArrayList();
+    final List<Job> listedJobs = Lists.newArrayList();
+    for (Job job : jobs.values()) {
+      if (job.getLastCompletedBuild() != null) {
+        harvestedJobs.add(job);
+      }
+      else {
+        listedJobs.add(job);
+      }
+    }
 
-    NodeList nodes;
+    if (!harvestedJobs.isEmpty()) {
+      harvestTestReports(harvestedJobs, errors, completion);
+    }
+    if (!listedJobs.isEmpty()) {
+      readJobs(listedJobs, errors, completion);
+    }
+
+    for (JenkinsView viewData : views) {
+      final Collection<Job> viewJobs = new ArrayList<Job>();
+      for (Job job : viewData.getJobs()) {
+        final Job shared = jobs.get(job.getUrl());
+        // jobs without a completed build are left out
+        if (shared.getLastCompletedBuild() != null || shared.isUnavailable()) {
+          viewJobs.add(shared);
+        }
+      }
+      viewData.setJobs(viewJobs);
+    }
+  }
+
+  /**
+   * Reads the view, its jobs, matrix configurations and last completed builds with a single request.
+   *
+   * @param buildTree the fields of the last completed builds to read
+   * @return <code>null</code> if Jenkins refused the query or did not answer it with a view, any
+   *         other error is thrown as usual
+   */
+  private JenkinsView fetchViewTree(URI viewUrl, String buildTree) {
+    final String fullUrl = viewUrl.toASCIIString() + "/api/xml?tree=name,url,jobs[name,url,color," + buildTree + ",activeConfigurations[name,url,color," + buildTree + "]]";
+
+    log.debug("Reading the whole view with a single request from '{}'", fullUrl);
     try {
-      Document doc = jhc.fetchAsXMLDocument(fullUrl);
-      final XPathExpression expr = xpath.compile("//job");
-      nodes = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
+      return jhc.fetch(fullUrl, new ReaderResponseHandler<JenkinsView>() {
+        @Override
+        protected JenkinsView readXml(InputStream stream) throws IOException {
+          return xmlReader.readView(stream);
+        }
+      });
     }
-    catch (XPathExpressionException e) {
-      throw new ProcessingException(e);
+    catch (ErrorResponseException e) {
+      if (!e.isClientError()) {
+        throw e;
+      }
+      log.warn("Jenkins did not accept the nested tree query for " + viewUrl + ", falling back to fetching the jobs one by one: " + e.getMessage());
+      return null;
     }
+    catch (ProcessingException e) {
+      if (!(e.getCause() instanceof MalformedResponseException)) {
+        throw e;
+      }
+      log.warn("Jenkins did not answer the nested tree query for " + viewUrl + " with a view, falling back to fetching the jobs one by one: "
+          + e.getCause().getMessage());
+      return null;
+    }
+  }
 
-    return nodes.getLength();
+  /**
+   * @return whether the response is not well-formed XML, as opposed to one that broke off while it
+   *         was read
+   */
+  private static boolean isMalformed(IOException e) {
+    final Throwable cause = e.getCause();
+    if (cause instanceof XMLStreamException) {
+      return !(((XMLStreamException) cause).getNestedException() instanceof IOException);
+    }
+    if (cause instanceof SAXException) {
+      return !(((SAXException) cause).getException() instanceof IOException);
+    }
+    return false;
   }
 
-  private Collection<Job> readJobs(URI uri) {
-    final String fullUrl = uri.toASCIIString() + "/api/xml?xpath=//job&wrapper=jobs&tree=jobs[name,url,color]";
+  /**
+   * Fills in the builds of a view read with {@link #BUILD_NUMBER_TREE}, taking unchanged ones from
+   * the previous result. Jobs that are gone from the view are simply not part of the listing.
+   */
+  private void refreshJobs(JenkinsView viewData, JenkinsView previous, ErrorBudget errors) {
+    // unavailable jobs are fetched again
+    final Map<URI, Build> previousBuilds = Maps.newHashMap();
+    for (Job job : previous.getJobs()) {
+      previousBuilds.put(job.getUrl(), job.isUnavailable() ? null : job.getLastCompletedBuild());
+      for (Job child : job.getChildren()) {
+        previousBuilds.put(child.getUrl(), child.isUnavailable() ? null : child.getLastCompletedBuild());
+      }
+    }
 
-    log.debug("Reading information about failing jobs for '{}'", fullUrl);
+    final List<Job> jobs = Lists.newArrayList();
+    for (Job job : viewData.getJobs()) {
+      jobs.add(job);
+      jobs.addAll(job.getChildren());
+    }
 
-    Document doc = jhc.fetchAsXMLDocument(fullUrl);
+    final List<Job> builtJobs = Lists.newArrayList();
+    int newJobs = 0;
+    for (Job job : jobs) {
+      final Build previousBuild = previousBuilds.remove(job.getUrl());
+      if (previousBuild == null) {
+        newJobs++;
+        builtJobs.add(job);
+      }
+      else if (previousBuild.getId() != job.getLastCompletedBuild().getId()) {
+        builtJobs.add(job);
+      }
+      else {
+        job.setLastCompletedBuild(previousBuild);
+      }
+    }
 
-    final Collection<Job> jobs = parseJobsFromXml(doc, "job", true);
+    log.info("Fetching last completed build info for " + builtJobs.size() + " jobs that have built since the previous run (" + newJobs + " new), "
+        + (jobs.size() - builtJobs.size()) + " unchanged, " + previousBuilds.size() + " no longer in the view");
 
-    // call jenkins after parsing xml
-    log.info("Fetching last completed build info for " + jobs.size() + " jobs");
+    final ExecutorService executor = createFetchExecutor();
+    try {
+      final List<Future<Build>> futures = Lists.newArrayList();
+      for (final Job job : builtJobs) {
+        futures.add(executor.submit(new Callable<Build>() {
+          @Override
+          public Build call() {
+            return getLastCompletedBuild(job);
+          }
+        }));
+      }
 
-    for (final Iterator<Job> iter = jobs.iterator(); iter.hasNext();) {
-      final Job job = iter.next();
-      try {
-        job.setLastCompletedBuild(getLastCompletedBuild(job));
-        job.setChildren(readChildrenJobs(job));
+      for (int i = 0; i < builtJobs.size(); i++) {
+        final Job job = builtJobs.get(i);
+        try {
+          job.setLastCompletedBuild(waitFor(futures.get(i)));
+        }
+        // the build was deleted after the listing was made
+        catch (DocumentNotFoundException e) {
+          job.setLastCompletedBuild(null);
+        }
+        catch (ProcessingException e) {
+          job.setLastCompletedBuild(null);
+          errors.spend(job, e);
+        }
       }
-      // sometimes there is no last completed build
-      // we can ignore the job
-      catch (DocumentNotFoundException e) {
-        job.setLastCompletedBuild(null);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    for (final Iterator<Job> iter = viewData.getJobs().iterator(); iter.hasNext();) {
+      if (!JenkinsXmlReader.keepHarvestedJob(iter.next())) {
         iter.remove();
       }
     }
-
-    return jobs;
   }
 
-  private Collection<Job> readChildrenJobs(Job parentJob) {
-    final String uri = parentJob.getUrl().toASCIIString() + "/api/xml?xpath=/matrixProject/activeConfiguration&wrapper=activeConfigurations";
+  private void harvestTestReports(Collection<Job> harvestedJobs, ErrorBudget errors, JobCompletion completion) {
+    final List<Job> jobs = Lists.newArrayList();
+    for (Job job : harvestedJobs) {
+      jobs.add(job);
+      jobs.addAll(job.getChildren());
+      completion.expect(job, job);
+      for (Job child : job.getChildren()) {
+        completion.expect(job, child);
+      }
+      if (!job.getChildren().isEmpty()) {
+        metrics.record("crawl.matrix.configurations", job.getChildren().size());
+      }
+    }
 
-    log.debug("Reading child jobs of matrix job '{}' at '{}'", parentJob.getName(), uri.toString());
-    final Document doc = jhc.fetchAsXMLDocument(uri);
+    final List<Job> uncachedJobs = Lists.newArrayList();
+    for (Job job : jobs) {
+      final Build cached = getCachedBuild(job, job.getLastCompletedBuild());
+      if (cached != null) {
+        job.setLastCompletedBuild(cached);
+        completion.done(job);
+      }
+      else {
+        uncachedJobs.add(job);
+      }
+    }
 
-    final Collection<Job> jobs = parseJobsFromXml(doc, "activeConfiguration", false);
+    log.info("Fetching test reports for " + uncachedJobs.size() + " builds, " + (jobs.size() - uncachedJobs.size()) + " found in cache");
+    metrics.count("crawl.jobs.cached", jobs.size() - uncachedJobs.size());
+    readTestReports(uncachedJobs, errors, completion);
 
-    if (!jobs.isEmpty()) {
-      log.info("Fetching last completed build info for " + jobs.size() + " child jobs of " + parentJob.getName() + "...");
+    if (buildCache != null) {
+      for (Job job : uncachedJobs) {
+        // the test report is fetched again next time
+        if (!job.isUnavailable()) {
+          buildCache.put(job.getUrl(), job.getLastCompletedBuild());
+        }
+      }
+    }
+  }
+
+  private Build getCachedBuild(Job job, Build build) {
+    if (buildCache == null) {
+      return null;
+    }
 
-      for (final Iterator<Job> iter = jobs.iterator(); iter.hasNext();) {
-        final Job job = iter.next();
+    final Build cached = buildCache.get(job.getUrl(), build.getId());
+    // the traces read from the cache are copies of their own
+    if (cached != null && cached.getTestReport() != null) {
+      stackTraces.intern(cached.getTestReport());
+    }
+    return cached;
+  }
+
+  /**
+   * Fetches the test reports of the last completed builds of the jobs.
+   */
+  private void readTestReports(List<Job> jobs, ErrorBudget errors, JobCompletion completion) {
+    final ExecutorService executor = createFetchExecutor();
+    try {
+      final List<Future<TestReport>> futures = Lists.newArrayList();
+      for (final Job job : jobs) {
+        futures.add(executor.submit(new Callable<TestReport>() {
+          @Override
+          public TestReport call() {
+            final long start = System.nanoTime();
+            final TestReport testReport = readTestReport(job.getLastCompletedBuild().getUrl());
+            metrics.record("crawl.job.millis", millisSince(start));
+            return testReport;
+          }
+        }));
+      }
+
+      for (int i = 0; i < jobs.size(); i++) {
+        final Job job = jobs.get(i);
         try {
-          Build lastCompletedBuild = getLastCompletedBuild(job);
-          job.setLastCompletedBuild(lastCompletedBuild);
+          job.getLastCompletedBuild().setTestReport(waitFor(futures.get(i)));
         }
-        // sometimes there is no last completed build
-        // we can ignore the job
-        catch (DocumentNotFoundException e) {
-          job.setLastCompletedBuild(null);
-          iter.remove();
+        // the build is known, only its test counts are missing
+        catch (ProcessingException e) {
+          errors.spend(job, e);
         }
+        completion.done(job);
       }
     }
-
-    return jobs;
+    finally {
+      executor.shutdownNow();
+    }
   }
 
-  private Collection<Job> parseJobsFromXml(final Document doc, final String jobNodeName, final boolean filterByPrefix) {
-    NodeList nodes;
+  private void readViewInfo(URI viewUrl, JenkinsView viewData) {
+    Document doc = jhc.fetchAsXMLDocument(viewUrl.toASCIIString() + "/api/xml?tree=name,url");
     try {
-      final XPathExpression expr = xpath.compile("//" + jobNodeName);
-      nodes = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
+      viewData.setName(doc.getElementsByTagName("name").item(0).getTextContent());
+      viewData.setUrl(new URI(doc.getElementsByTagName("url").item(0).getTextContent()));
     }
-    catch (XPathExpressionException e) {
+    catch (DOMException e) {
       throw new ProcessingException(e);
     }
+    catch (URISyntaxException e) {
+      throw new ProcessingException(e);
+    }
+  }
 
-    final Collection<Job> jobs = new ArrayList<Job>();
+  private int getJobCount(URI uri) {
+    final String fullUrl = uri.toASCIIString() + "/api/xml?wrapper=jobs&tree=jobs[name,url,color]";
+
+    log.debug("Counting total number of jobs for '{}'", fullUrl);
 
-    for (int i = 0; i < nodes.getLength(); i++) {
-      final Node node = nodes.item(i);
+    Document doc = jhc.fetchAsXMLDocument(fullUrl);
+    return doc.getElementsByTagName("job").getLength();
+  }
 
-      if (node.getNodeType() == Node.ELEMENT_NODE) {
-        final Element el = (Element) node;
-        final String name = el.getElementsByTagName("name").item(0).getTextContent();
+  private Collection<Job> listJobs(URI uri) {
+    final String fullUrl = uri.toASCIIString() + "/api/xml?xpath=//job&wrapper=jobs&tree=jobs[name,url,color]";
 
-        if (filterByPrefix && Main.JOB_NAME_PREFIX != null && !name.startsWith(Main.JOB_NAME_PREFIX)) {
-          continue;
-        }
+    log.debug("Reading information about failing jobs for '{}'", fullUrl);
+
+    return fetchJobs(fullUrl, "job", true);
+  }
+
+  /**
+   * Fetches the last completed builds and matrix configurations of listed jobs. Jobs without a
+   * completed build are left without one.
+   */
+  private void readJobs(Collection<Job> jobs, ErrorBudget errors, JobCompletion completion) {
+    // call jenkins after parsing xml
+    log.info("Fetching last completed build info for " + jobs.size() + " jobs");
+
+    final ExecutorService executor = createFetchExecutor();
+    try {
+      // jobs and their matrix children are fetched in two separate rounds so that a job task never
+      // has to wait for tasks queued behind it in the same bounded pool
+      final List<Future<Collection<Job>>> jobFutures = Lists.newArrayList();
+      for (final Job job : jobs) {
+        jobFutures.add(executor.submit(new Callable<Collection<Job>>() {
+          @Override
+          public Collection<Job> call() {
+            job.setLastCompletedBuild(getLastCompletedBuild(job));
+            return readChildrenJobs(job);
+          }
+        }));
+      }
 
-        // these listings also list "Groups" that are not actually jobs
-        // I'll just ignore these and I happen to know they don't have the color
-        // available :)
-        if (el.getElementsByTagName("color").getLength() == 0) {
-          continue;
+      final List<Job> childJobs = Lists.newArrayList();
+      final Iterator<Future<Collection<Job>>> futureIter = jobFutures.iterator();
+      for (final Job job : jobs) {
+        completion.expect(job, job);
+        try {
+          Collection<Job> children = waitFor(futureIter.next());
+          job.setChildren(children);
+          for (Job child : children) {
+            completion.expect(job, child);
+          }
+          if (!children.isEmpty()) {
+            metrics.record("crawl.matrix.configurations", children.size());
+            log.info("Fetching last completed build info for " + children.size() + " child jobs of " + job.getName() + "...");
+            childJobs.addAll(children);
+          }
+        }
+        // sometimes there is no last completed build
+        // the job is left out of the views
+        catch (DocumentNotFoundException e) {
+          job.setLastCompletedBuild(null);
+          job.setChildren(new ArrayList<Job>());
         }
+        catch (ProcessingException e) {
+          job.setLastCompletedBuild(null);
+          job.setChildren(new ArrayList<Job>());
+          errors.spend(job, e);
+        }
+        completion.done(job);
+      }
 
-        final Job job = new Job();
-        job.setName(name);
+      final List<Future<Build>> childFutures = Lists.newArrayList();
+      for (final Job child : childJobs) {
+        childFutures.add(executor.submit(new Callable<Build>() {
+          @Override
+          public Build call() {
+            return getLastCompletedBuild(child);
+          }
+        }));
+      }
+
+      for (int i = 0; i < childJobs.size(); i++) {
+        final Job child = childJobs.get(i);
         try {
-          String jobUrl = el.getElementsByTagName("url").item(0).getTextContent();
-          job.setUrl(new URI(jobUrl));
+          child.setLastCompletedBuild(waitFor(childFutures.get(i)));
         }
-        catch (DOMException e) {
-          throw new ProcessingException(e);
+        // sometimes there is no last completed build
+        // we can ignore the job
+        catch (DocumentNotFoundException e) {
+          child.setLastCompletedBuild(null);
         }
-        catch (URISyntaxException e) {
-          throw new ProcessingException(e);
+        catch (ProcessingException e) {
+          child.setLastCompletedBuild(null);
+          errors.spend(child, e);
         }
+        completion.done(child);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tells the listener about a job once it and all its configurations are read. Only used from the
+   * thread that waits for the fetches.
+   */
+  private static final class JobCompletion {
+    private final CrawlListener listener;
+    private final Map<Job, Job> parents = new IdentityHashMap<Job, Job>();
+    private final Map<Job, Integer> pending = new IdentityHashMap<Job, Integer>();
 
-        job.setColor(el.getElementsByTagName("color").item(0).getTextContent());
-        jobs.add(job);
+    JobCompletion(CrawlListener listener) {
+      this.listener = listener;
+    }
+
+    /**
+     * @param part the job itself or one of its configurations
+     */
+    void expect(Job job, Job part) {
+      parents.put(part, job);
+      final Integer parts = pending.get(job);
+      pending.put(job, parts == null ? 1 : parts + 1);
+    }
+
+    void done(Job part) {
+      final Job job = parents.remove(part);
+      final int parts = pending.get(job) - 1;
+      if (parts > 0) {
+        pending.put(job, parts);
+        return;
+      }
+
+      pending.remove(job);
+      // drops the configurations without a completed build
+      if (JenkinsXmlReader.keepHarvestedJob(job)) {
+        listener.jobCrawled(job);
       }
     }
-    return jobs;
   }
 
-  private Build getLastCompletedBuild(Job job) {
-    log.debug("Fetching last completed build info for job {}", job.getName());
-    final String uri = job.getUrl() + "lastCompletedBuild/api/xml?tree=number,url,timestamp,duration,result,builtOn";
-    final Document doc = jhc.fetchAsXMLDocument(uri);
+  private ExecutorService createFetchExecutor() {
+    if (fetchEngine == FetchEngine.VIRTUAL_THREADS) {
+      return VirtualThreads.newThreadPerTaskExecutor();
+    }
+    if (fetchThreads <= 1) {
+      return MoreExecutors.sameThreadExecutor();
+    }
+    return Executors.newFixedThreadPool(fetchThreads, new ThreadFactoryBuilder().setNameFormat("jenkins-fetch-%d").setDaemon(true).build());
+  }
+
+  private static long millisSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
 
-    Build build = new Build();
-    build.setId(Integer.parseInt(doc.getElementsByTagName("number").item(0).getTextContent()));
-    build.setResult(doc.getElementsByTagName("result").item(0).getTextContent());
+  private static <T> T waitFor(Future<T> future) {
     try {
-      build.setUrl(new URI(doc.getElementsByTagName("url").item(0).getTextContent()));
-      build.setTestReport(readTestReport(build.getUrl()));
+      return future.get();
     }
-    catch (DOMException e) {
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new ProcessingException(e);
     }
-    catch (URISyntaxException e) {
-      throw new ProcessingException(e);
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new ProcessingException(e.getCause());
     }
-    catch (SAXException e) {
-      throw new ProcessingException(e);
+  }
+
+  private Collection<Job> readChildrenJobs(Job parentJob) {
+    final String uri = parentJob.getUrl().toASCIIString() + "/api/xml?xpath=/matrixProject/activeConfiguration&wrapper=activeConfigurations";
+
+    log.debug("Reading child jobs of matrix job '{}' at '{}'", parentJob.getName(), uri.toString());
+    return fetchJobs(uri, "activeConfiguration", false);
+  }
+
+  private Collection<Job> fetchJobs(String uri, final String jobNodeName, final boolean filterByPrefix) {
+    return jhc.fetch(uri, new ReaderResponseHandler<Collection<Job>>() {
+      @Override
+      protected Collection<Job> readXml(InputStream stream) throws IOException {
+        return xmlReader.readJobs(stream, jobNodeName, filterByPrefix);
+      }
+    });
+  }
+
+  /**
+   * Fetches the build and its test report, the time it takes ends up in the
+   * <code>crawl.job.millis</code> distribution.
+   */
+  private Build getLastCompletedBuild(Job job) {
+    final long start = System.nanoTime();
+    try {
+      return fetchLastCompletedBuild(job);
     }
-    catch (IOException e) {
-      throw new ProcessingException(e);
+    finally {
+      metrics.record("crawl.job.millis", millisSince(start));
     }
-    build.setTimestamp(new Date(Long.parseLong(doc.getElementsByTagName("timestamp").item(0).getTextContent())));
-    Calendar cal = Calendar.getInstance();
-    cal.setTime(build.getTimestamp());
-    // FIXME this will cause confusion in the beginning of Jan
-    build.setDayOfYear(cal.get(Calendar.DAY_OF_YEAR));
+  }
 
-    final long durationSeconds = Long.parseLong(doc.getElementsByTagName("duration").item(0).getTextContent()) / MILLISECONDS_IN_SECOND;
-    build.setDuration(String.format("%d:%02d:%02d", durationSeconds / SECONDS_IN_HOUR, durationSeconds % SECONDS_IN_HOUR / SECONDS_IN_MINUTE, durationSeconds % SECONDS_IN_MINUTE));
+  private Build fetchLastCompletedBuild(Job job) {
+    log.debug("Fetching last completed build info for job {}", job.getName());
+    final String uri = job.getUrl() + "lastCompletedBuild/api/xml?tree=" + Joiner.on(',').join(JenkinsXmlReader.BUILD_FIELDS);
+    final Build build = jhc.fetch(uri, new ReaderResponseHandler<Build>() {
+      @Override
+      protected Build readXml(InputStream stream) throws IOException {
+        return xmlReader.readBuild(stream);
+      }
+    });
+
+    // the build number is all that is needed to know if the cached test report is still valid
+    final Build cached = getCachedBuild(job, build);
+    if (cached != null) {
+      metrics.count("crawl.jobs.cached", 1);
+      return cached;
+    }
+
+    build.setTestReport(readTestReport(build.getUrl()));
+    if (buildCache != null) {
+      buildCache.put(job.getUrl(), build);
+    }
 
-    String builtOn = doc.getElementsByTagName("builtOn").item(0).getTextContent();
-    build.setBuiltOn(builtOn.isEmpty() ? "master" : builtOn);
-    
     return build;
   }
 
-  private TestReport readTestReport(URI buildUrl) throws SAXException, IOException {
+  /**
+   * Reads the failed tests of the builds before the last completed one of the jobs and
+   * configurations with failed tests and marks the tests that keep going from passing to failing
+   * and back as flaky. Every build is read once, into the build cache if there is one, and is
+   * counted into the {@link TestFlips} of its job right away. The build cache keeps only the builds
+   * still in the window of each job, so that builds dropping out of it are not kept forever.
+   */
+  private void markFlakyTests(Collection<Job> jobs) {
+    if (flakyBuilds < 2) {
+      return;
+    }
+
+    final List<Job> failingJobs = Lists.newArrayList();
+    for (Job job : jobs) {
+      // the report shows the tests of the configurations of matrix jobs
+      if (job.isMatrix()) {
+        for (Job child : job.getChildren()) {
+          addFailingJob(child, failingJobs);
+        }
+      }
+      else {
+        addFailingJob(job, failingJobs);
+      }
+    }
+
+    final List<TestFlips> flips = Lists.newArrayList();
+    final List<Map<Integer, Build>> cachedBuilds = Lists.newArrayList();
+    final List<Map<Integer, Build>> windowBuilds = Lists.newArrayList();
+    final ExecutorService executor = createFetchExecutor();
+    try {
+      final List<Future<?>> futures = Lists.newArrayList();
+      for (final Job job : failingJobs) {
+        final TestFlips jobFlips = new TestFlips();
+        jobFlips.addBuild(0, job.getLastCompletedBuild().getTestReport().getTestCases());
+        flips.add(jobFlips);
+
+        final Map<Integer, Build> cached = buildCache == null ? Collections.<Integer, Build> emptyMap() : buildCache.getEarlierBuilds(job.getUrl());
+        final Map<Integer, Build> window = new ConcurrentHashMap<Integer, Build>();
+        cachedBuilds.add(cached);
+        windowBuilds.add(window);
+
+        final int lastNumber = job.getLastCompletedBuild().getId();
+        for (int age = 1; age < flakyBuilds && lastNumber - age > 0; age++) {
+          final int buildAge = age;
+          futures.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+              final TestReport report;
+              try {
+                report = readEarlierTestReport(job, lastNumber - buildAge, cached, window);
+              }
+              // the flips are counted in the builds that could be read
+              catch (ProcessingException e) {
+                metrics.count("crawl.earlierBuilds.failed", 1);
+                log.warn("Could not read build #" + (lastNumber - buildAge) + " of " + job.getName() + ", its flaky tests are told from fewer builds: "
+                    + e.getMessage());
+                return;
+              }
+              if (report != null) {
+                jobFlips.addBuild(buildAge, report.getTestCases());
+              }
+            }
+          }));
+        }
+      }
+
+      for (Future<?> future : futures) {
+        waitFor(future);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    for (int i = 0; i < failingJobs.size(); i++) {
+      flips.get(i).mark(failingJobs.get(i).getLastCompletedBuild().getTestReport().getTestCases());
+      // rewritten only when builds were read or fell out of the window
+      if (buildCache != null && !windowBuilds.get(i).keySet().equals(cachedBuilds.get(i).keySet())) {
+        buildCache.putEarlierBuilds(failingJobs.get(i).getUrl(), windowBuilds.get(i));
+      }
+    }
+  }
+
+  private static void addFailingJob(Job job, List<Job> failingJobs) {
+    final Build build = job.getLastCompletedBuild();
+    if (!job.isUnavailable() && build != null && build.getTestReport() != null && !build.getTestReport().getTestCases().isEmpty()) {
+      failingJobs.add(job);
+    }
+  }
 
-    final TestReport testReport = new TestReport();
+  /**
+   * @param cached the earlier builds of the job in the build cache
+   * @param window collects the builds to keep in the build cache
+   * @return the failed tests of an earlier build, with their names only, <code>null</code> if it
+   *         has no test report
+   */
+  private TestReport readEarlierTestReport(Job job, int number, Map<Integer, Build> cached, Map<Integer, Build> window) {
+    final URI buildUrl = URI.create(job.getUrl() + String.valueOf(number) + "/");
+    Optional<TestReport> report = earlierTestReports.getIfPresent(buildUrl);
+    if (report == null) {
+      final Build cachedBuild = cached.get(number);
+      if (cachedBuild != null) {
+        metrics.count("crawl.earlierBuilds.cached", 1);
+        report = Optional.fromNullable(cachedBuild.getTestReport());
+      }
+      else {
+        report = Optional.fromNullable(namesOnly(readTestReport(buildUrl, FAILED_CASE_NAMES_QUERY)));
+        metrics.count("crawl.earlierBuilds.read", 1);
+      }
+      earlierTestReports.put(buildUrl, report);
+    }
+    else {
+      metrics.count("crawl.earlierBuilds.cached", 1);
+    }
 
-    final DefaultHandler handler = new ReadTestReportHandler(testReport);
+    final Build build = new Build();
+    build.setId(number);
+    build.setUrl(buildUrl);
+    build.setTestReport(report.orNull());
+    window.put(number, build);
+    return report.orNull();
+  }
 
+  /**
+   * @return the failed cases without their error details, Jenkins sends them if it did not accept
+   *         the filtered query
+   */
+  private static TestReport namesOnly(TestReport report) {
+    if (report == null) {
+      return null;
+    }
+
+    final TestReport names = new TestReport();
+    for (TestCase testCase : report.getTestCases()) {
+      final TestCase name = new TestCase();
+      name.setClassName(testCase.getClassName());
+      name.setMethodName(testCase.getMethodName());
+      name.setStatus(testCase.getStatus());
+      names.getTestCases().add(name);
+    }
+    names.setFailCount(names.getTestCases().size());
+    return names;
+  }
+
+  private TestReport readTestReport(URI buildUrl) {
+    return readTestReport(buildUrl, filterTestReports ? FAILED_CASES_QUERY : null);
+  }
+
+  /**
+   * @param filteredQuery the query for the parts of the report that are needed, falling back to
+   *          the whole report if Jenkins refuses it in its first answer to it, <code>null</code> for
+   *          the whole report
+   */
+  private TestReport readTestReport(URI buildUrl, String filteredQuery) {
+    if (filteredQuery != null && !Boolean.FALSE.equals(filteredTestReportsAccepted.get())) {
+      try {
+        final TestReport report = parseTestReport(buildUrl, buildUrl + "testReport/api/xml?" + filteredQuery);
+        if (report != null) {
+          filteredTestReportsAccepted.compareAndSet(null, Boolean.TRUE);
+        }
+        return report;
+      }
+      catch (ErrorResponseException e) {
+        // once Jenkins has answered the query, errors are those of the job like any other
+        if (!refusesFilter(e) || Boolean.TRUE.equals(filteredTestReportsAccepted.get())) {
+          throw e;
+        }
+        if (filteredTestReportsAccepted.compareAndSet(null, Boolean.FALSE)) {
+          log.warn("Jenkins did not accept the filtered test report query, falling back to full test reports: " + e.getMessage());
+        }
+      }
+    }
+
+    return parseTestReport(buildUrl, buildUrl + "testReport/api/xml");
+  }
+
+  /**
+   * @return whether Jenkins rejected the query itself, with 400 for a tree it cannot parse or with
+   *         its error page for an XPath it cannot compile, rather than the job, e.g. with 403
+   */
+  private static boolean refusesFilter(ErrorResponseException e) {
+    return e.getStatusCode() == HttpStatus.SC_BAD_REQUEST || e.getStatusCode() == HttpStatus.SC_INTERNAL_SERVER_ERROR && e.getBody().contains("XPath");
+  }
+
+  private TestReport parseTestReport(URI buildUrl, String uri) {
     try {
-      InputStream is = jhc.fetchAsInputStream(buildUrl + "testReport/api/xml");
-      saxParser.parse(is, handler);
+      return jhc.fetch(uri, new StreamResponseHandler<TestReport>() {
+        @Override
+        protected TestReport handleStream(InputStream stream) throws IOException {
+          final TestReport testReport = new TestReport();
+          final ReadTestReportHandler handler = new ReadTestReportHandler(testReport, stackTraces);
+          final SAXParser parser = takeSaxParser();
+          try {
+            parser.parse(stream, handler);
+          }
+          catch (SAXException e) {
+            throw new ClientProtocolException(e);
+          }
+          finally {
+            parser.reset();
+            saxParsers.offer(parser);
+          }
+          metrics.count("testReport.cases.read", handler.getCasesRead());
+          metrics.count("testReport.cases.kept", testReport.getTestCases().size());
+          return testReport;
+        }
+      });
     }
-    catch (FileNotFoundException e) {
+    catch (DocumentNotFoundException e) {
       log.debug("No test report available for {}", buildUrl);
       return null;
     }
+  }
+
+  private SAXParser takeSaxParser() {
+    final SAXParser parser = saxParsers.poll();
+    if (parser != null) {
+      return parser;
+    }
+    try {
+      synchronized (saxFactory) {
+        return saxFactory.newSAXParser();
+      }
+    }
+    catch (ParserConfigurationException e) {
+      throw new ProcessingException(e);
+    }
+    catch (SAXException e) {
+      throw new ProcessingException(e);
+    }
+  }
 
-    return testReport;
+  /**
+   * Reads the body with a {@link JenkinsXmlReader}. Malformed XML fails the request for good instead
+   * of being retried like a response that broke off.
+   */
+  private abstract static class ReaderResponseHandler<T> extends StreamResponseHandler<T> {
+    @Override
+    protected final T handleStream(InputStream stream) throws IOException {
+      try {
+        return readXml(stream);
+      }
+      catch (IOException e) {
+        if (isMalformed(e)) {
+          throw new MalformedResponseException(e);
+        }
+        throw e;
+      }
+    }
+
+    protected abstract T readXml(InputStream stream) throws IOException;
+  }
+
+  /**
+   * Jenkins answered with something that is not the XML that was asked for.
+   */
+  private static class MalformedResponseException extends ClientProtocolException {
+    private static final long serialVersionUID = 1L;
+
+    MalformedResponseException(IOException cause) {
+      super(cause);
+    }
   }
 
 }
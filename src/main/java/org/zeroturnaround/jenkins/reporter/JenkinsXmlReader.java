@@ -0,0 +1,128 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Turns the XML returned by the Jenkins remote API into model objects.
+ */
+public abstract class JenkinsXmlReader {
+  private static final int SECONDS_IN_MINUTE = 60;
+  private static final int SECONDS_IN_HOUR = SECONDS_IN_MINUTE * 60;
+  private static final int MILLISECONDS_IN_SECOND = 1000;
+
+  /**
+   * Elements of a build that end up in the model.
+   */
+  protected static final List<String> BUILD_FIELDS = ImmutableList.of("number", "result", "url", "timestamp", "duration", "builtOn");
+
+  /**
+   * Reads every element called <code>jobNodeName</code> of a job listing as a job.
+   */
+  public abstract Collection<Job> readJobs(InputStream is, String jobNodeName, boolean filterByPrefix) throws IOException;
+
+  /**
+   * Reads the document of a single build, e.g. <code>lastCompletedBuild/api/xml</code>.
+   */
+  public abstract Build readBuild(InputStream is) throws IOException;
+
+  /**
+   * Reads the answer of the nested tree query of a view that includes the jobs, their matrix
+   * configurations and last completed builds. Test reports are not part of it.
+   */
+  public abstract JenkinsView readView(InputStream is) throws IOException;
+
+  /**
+   * @return the job or <code>null</code> if it should not be part of the report
+   */
+  protected static Job createJob(String name, String url, String color, boolean filterByPrefix) {
+    if (filterByPrefix && Main.JOB_NAME_PREFIX != null && !name.startsWith(Main.JOB_NAME_PREFIX)) {
+      return null;
+    }
+
+    // these listings also list "Groups" that are not actually jobs
+    // I'll just ignore these and I happen to know they don't have the color
+    // available :)
+    if (color == null) {
+      return null;
+    }
+
+    final Job job = new Job();
+    job.setName(name);
+    job.setUrl(toURI(url));
+    job.setColor(color);
+    return job;
+  }
+
+  /**
+   * @param fields text of the {@link #BUILD_FIELDS} elements of a build, only the number for
+   *          listings that tell which jobs have built since the last run
+   */
+  protected static Build createBuild(Map<String, String> fields) {
+    Build build = new Build();
+    build.setId(Integer.parseInt(fields.get("number")));
+    if (fields.get("timestamp") == null) {
+      return build;
+    }
+
+    build.setResult(fields.get("result"));
+    build.setUrl(toURI(fields.get("url")));
+    build.setTimestamp(new Date(Long.parseLong(fields.get("timestamp"))));
+    Calendar cal = Calendar.getInstance();
+    cal.setTime(build.getTimestamp());
+    // FIXME this will cause confusion in the beginning of Jan
+    build.setDayOfYear(cal.get(Calendar.DAY_OF_YEAR));
+
+    final long durationSeconds = Long.parseLong(fields.get("duration")) / MILLISECONDS_IN_SECOND;
+    build.setDuration(String.format("%d:%02d:%02d", durationSeconds / SECONDS_IN_HOUR, durationSeconds % SECONDS_IN_HOUR / SECONDS_IN_MINUTE, durationSeconds % SECONDS_IN_MINUTE));
+
+    String builtOn = fields.get("builtOn");
+    build.setBuiltOn(builtOn == null || builtOn.isEmpty() ? "master" : builtOn);
+
+    return build;
+  }
+
+  /**
+   * Drops matrix configurations without a completed build from a job read from the nested tree.
+   *
+   * @return <code>false</code> if the job itself has no completed build and should be ignored
+   */
+  protected static boolean keepHarvestedJob(Job job) {
+    // sometimes there is no last completed build
+    // we can ignore the job, unless it could not be read
+    if (job.getLastCompletedBuild() == null) {
+      return job.isUnavailable();
+    }
+
+    for (Iterator<Job> iter = job.getChildren().iterator(); iter.hasNext();) {
+      final Job child = iter.next();
+      if (child.getLastCompletedBuild() == null && !child.isUnavailable()) {
+        iter.remove();
+      }
+    }
+    return true;
+  }
+
+  protected static URI toURI(String uri) {
+    try {
+      return new URI(uri);
+    }
+    catch (URISyntaxException e) {
+      throw new ProcessingException(e);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Date;
+
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.JobStatistics;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+import org.zeroturnaround.jenkins.reporter.model.ViewStatistics;
+import org.zeroturnaround.jenkins.reporter.util.JsonWriter;
+
+/**
+ * Writes the same information as the HTML report as JSON, for dashboards.
+ */
+public class JsonReportGenerator {
+
+  public void generateReport(JenkinsView viewData, Writer out, Date startTime) throws IOException {
+    final ViewStatistics statistics = new ViewStatistics(viewData);
+    final JsonWriter json = new JsonWriter(out);
+
+    json.beginObject();
+    json.name("name").value(viewData.getName());
+    json.name("url").value(viewData.getUrl() == null ? null : viewData.getUrl().toString());
+    json.name("startTime").value(startTime.getTime());
+    json.name("jobsTotal").value(viewData.getJobsTotal());
+    json.name("failCount").value(statistics.getFailCount());
+    json.name("testsTotal").value(statistics.getTestsTotal());
+    json.name("failureRate").value(statistics.getFailureRate());
+    json.name("failedJobs");
+    writeJobs(json, statistics, statistics.getFailedJobs());
+    json.name("passedJobs");
+    writeJobs(json, statistics, statistics.getPassedJobs());
+    json.name("unavailableJobs");
+    writeJobs(json, statistics, statistics.getUnavailableJobs());
+    json.endObject();
+    json.flush();
+  }
+
+  private void writeJobs(JsonWriter json, ViewStatistics statistics, Collection<Job> jobs) throws IOException {
+    json.beginArray();
+    for (Job job : jobs) {
+      writeJob(json, statistics, job);
+    }
+    json.endArray();
+  }
+
+  private void writeJob(JsonWriter json, ViewStatistics statistics, Job job) throws IOException {
+    final JobStatistics jobStatistics = statistics.of(job);
+
+    json.beginObject();
+    json.name("name").value(job.getName());
+    json.name("url").value(job.getUrl() == null ? null : job.getUrl().toString());
+    json.name("color").value(job.getColor());
+    json.name("failCount").value(jobStatistics.getFailCount());
+    json.name("totalCount").value(jobStatistics.getTotalCount());
+    if (job.isUnavailable()) {
+      json.name("unavailable").value(job.getUnavailableReason());
+    }
+
+    json.name("build");
+    final Build build = job.getLastCompletedBuild();
+    if (build == null) {
+      json.nullValue();
+    }
+    else {
+      json.beginObject();
+      json.name("number").value(build.getId());
+      json.name("result").value(build.getResult());
+      json.name("url").value(build.getUrl() == null ? null : build.getUrl().toString());
+      json.name("timestamp").value(build.getTimestamp() == null ? 0 : build.getTimestamp().getTime());
+      json.name("duration").value(build.getDuration());
+      json.name("builtOn").value(build.getBuiltOn());
+      json.endObject();
+    }
+
+    final TestReport report = build == null ? null : build.getTestReport();
+    if (report != null && !job.isMatrix()) {
+      json.name("testCases").beginArray();
+      for (TestCase testCase : report.getTestCases()) {
+        writeTestCase(json, testCase);
+      }
+      json.endArray();
+    }
+
+    if (job.isMatrix()) {
+      json.name("children");
+      writeJobs(json, statistics, job.getChildren());
+    }
+    json.endObject();
+  }
+
+  private void writeTestCase(JsonWriter json, TestCase testCase) throws IOException {
+    json.beginObject();
+    json.name("className").value(testCase.getClassName());
+    json.name("methodName").value(testCase.getMethodName());
+    json.name("status").value(testCase.getStatus());
+    json.name("age");
+    if (testCase.getAge() == null) {
+      json.nullValue();
+    }
+    else {
+      json.value(testCase.getAge());
+    }
+    json.name("errorDetails").value(testCase.getErrorDetails());
+    json.name("errorStackTrace").value(testCase.getErrorStackTrace());
+    json.endObject();
+  }
+}
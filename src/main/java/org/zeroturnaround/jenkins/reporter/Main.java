@@ -1,21 +1,37 @@
 package org.zeroturnaround.jenkins.reporter;
 
 import java.awt.Desktop;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.TestFlips;
+import org.zeroturnaround.jenkins.reporter.util.CollectingMetrics;
+import org.zeroturnaround.jenkins.reporter.util.HttpResponseCache;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
 import org.zeroturnaround.jenkins.reporter.util.URLParamEncoder;
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Main entry point
@@ -30,6 +46,30 @@ public class Main {
   private static final String REPORTER_NAME_PREFIX_PROPERTY = "reporter.name.prefix";
   private static final String REPORTER_OUTPUT_FILE_PROPERTY = "reporter.output.file";
   private static final String JENKINS_IGNORE_SSL_PROPERTY = "reporter.jenkins.ignore.ssl";
+  private static final String JENKINS_FETCH_THREADS_PROPERTY = "reporter.jenkins.fetch.threads";
+  private static final String JENKINS_FETCH_STRATEGY_PROPERTY = "reporter.jenkins.fetch.strategy";
+  private static final String JENKINS_FETCH_ENGINE_PROPERTY = "reporter.jenkins.fetch.engine";
+  private static final String JENKINS_FIXED_CONCURRENCY_PROPERTY = "reporter.jenkins.fixed.concurrency";
+  private static final String JENKINS_CONNECT_TIMEOUT_PROPERTY = "reporter.jenkins.connect.timeout.seconds";
+  private static final String JENKINS_READ_TIMEOUT_PROPERTY = "reporter.jenkins.read.timeout.seconds";
+  private static final String JENKINS_REQUEST_TIMEOUT_PROPERTY = "reporter.jenkins.request.timeout.minutes";
+  private static final String JENKINS_RETRIES_PROPERTY = "reporter.jenkins.retries";
+  private static final String JENKINS_ERROR_BUDGET_PROPERTY = "reporter.jenkins.error.budget";
+  private static final String JENKINS_DOM_PARSER_PROPERTY = "reporter.jenkins.dom.parser";
+  private static final String COMPRESS_STACK_TRACES_PROPERTY = "reporter.compress.stack.traces";
+  private static final String REPORTER_CACHE_DIR_PROPERTY = "reporter.cache.dir";
+  private static final String HTTP_CACHE_DIR_PROPERTY = "reporter.http.cache.dir";
+  private static final String HTTP_CACHE_MEMORY_PROPERTY = "reporter.http.cache.memory.mb";
+  private static final String JENKINS_FILTER_TEST_REPORTS_PROPERTY = "reporter.jenkins.filter.test.reports";
+  private static final String SERVER_PORT_PROPERTY = "reporter.server.port";
+  private static final String SERVER_REFRESH_MINUTES_PROPERTY = "reporter.server.refresh.minutes";
+  private static final String METRICS_FILE_PROPERTY = "reporter.metrics.file";
+  private static final String METRICS_REGISTRY_PROPERTY = "reporter.metrics.registry";
+  private static final String PROGRESSIVE_PROPERTY = "reporter.progressive";
+  private static final String HISTORY_DIR_PROPERTY = "reporter.history.dir";
+  private static final String HISTORY_BUILDS_PROPERTY = "reporter.history.builds";
+  private static final String HISTORY_DAYS_PROPERTY = "reporter.history.days";
+  private static final String FLAKY_BUILDS_PROPERTY = "reporter.flaky.builds";
 
   /**
    * The HTTP url of your Jenkins instances. For example http://jenkins/
@@ -50,6 +90,141 @@ public class Main {
   public static final String JENKINS_API_TOKEN = System.getProperty(JENKINS_API_TOKEN_PROPERTY);
   public static final boolean JENKINS_IGNORE_SSL = Boolean.getBoolean(JENKINS_IGNORE_SSL_PROPERTY);
 
+  /**
+   * Maximum number of requests made to Jenkins in parallel while crawling the jobs of a view. By
+   * default jobs are crawled one at a time.
+   */
+  public static final int JENKINS_FETCH_THREADS = Integer.getInteger(JENKINS_FETCH_THREADS_PROPERTY, 1);
+
+  /**
+   * Either per-job (a request per job and build) or bulk (the whole view with a single nested tree
+   * query, falling back to per-job if Jenkins rejects it).
+   */
+  private static final String JENKINS_FETCH_STRATEGY = System.getProperty(JENKINS_FETCH_STRATEGY_PROPERTY, "per-job");
+
+  /**
+   * Either pool (as many platform threads as fetch threads) or virtual-threads (a virtual thread per
+   * job, configuration and test report, the pool before Java 21). The number of requests in flight
+   * is limited by the fetch threads in both cases.
+   */
+  private static final String JENKINS_FETCH_ENGINE = System.getProperty(JENKINS_FETCH_ENGINE_PROPERTY, "pool");
+
+  /**
+   * By default the requests in flight start below the fetch threads and grow only while Jenkins
+   * keeps up. This makes all fetch threads' requests from the start.
+   */
+  private static final boolean JENKINS_FIXED_CONCURRENCY = Boolean.getBoolean(JENKINS_FIXED_CONCURRENCY_PROPERTY);
+
+  /**
+   * Seconds to open a connection to Jenkins.
+   */
+  private static final int JENKINS_CONNECT_TIMEOUT_SECONDS = Integer.getInteger(JENKINS_CONNECT_TIMEOUT_PROPERTY, 10);
+
+  /**
+   * Seconds a request may go without receiving any data.
+   */
+  private static final int JENKINS_READ_TIMEOUT_SECONDS = Integer.getInteger(JENKINS_READ_TIMEOUT_PROPERTY, 60);
+
+  /**
+   * Minutes a single request, e.g. for a big test report, may take altogether, its retries and the
+   * waits before them included.
+   */
+  private static final int JENKINS_REQUEST_TIMEOUT_MINUTES = Integer.getInteger(JENKINS_REQUEST_TIMEOUT_PROPERTY, 10);
+
+  /**
+   * How many times a request that failed with a network error, a timeout, 502 or 504 is repeated.
+   */
+  private static final int JENKINS_RETRIES = Integer.getInteger(JENKINS_RETRIES_PROPERTY, JenkinsHttpClient.DEFAULT_RETRIES);
+
+  /**
+   * Jobs that still cannot be read after the retries are reported as unavailable. When more jobs
+   * than this fail in a crawl, it is given up.
+   */
+  private static final int JENKINS_ERROR_BUDGET = Integer.getInteger(JENKINS_ERROR_BUDGET_PROPERTY, 25);
+
+  /**
+   * Job listings and builds are streamed by default, this switches back to reading them into DOM
+   * documents.
+   */
+  private static final boolean JENKINS_DOM_PARSER = Boolean.getBoolean(JENKINS_DOM_PARSER_PROPERTY);
+
+  /**
+   * Keep long stack traces of failed tests compressed in memory.
+   */
+  private static final boolean COMPRESS_STACK_TRACES = Boolean.getBoolean(COMPRESS_STACK_TRACES_PROPERTY);
+
+  /**
+   * Directory where completed builds and their test reports are kept between runs. Nothing is cached
+   * by default.
+   */
+  private static final String CACHE_DIR = System.getProperty(REPORTER_CACHE_DIR_PROPERTY);
+
+  /**
+   * Directory where responses with an ETag or Last-Modified header are kept between runs. By default
+   * they are only kept in memory.
+   */
+  private static final String HTTP_CACHE_DIR = System.getProperty(HTTP_CACHE_DIR_PROPERTY);
+
+  /**
+   * Megabytes of responses kept in memory for conditional requests.
+   */
+  private static final int HTTP_CACHE_MEMORY_MB = Integer.getInteger(HTTP_CACHE_MEMORY_PROPERTY, 32);
+
+  /**
+   * Download only the counters and failing cases of test reports instead of the whole reports.
+   */
+  private static final boolean JENKINS_FILTER_TEST_REPORTS = Boolean.getBoolean(JENKINS_FILTER_TEST_REPORTS_PROPERTY);
+
+  /**
+   * Instead of writing the reports once, keep running and serve them over HTTP on this port. The
+   * views are crawled again in the background so the reports stay fresh.
+   */
+  private static final Integer SERVER_PORT = Integer.getInteger(SERVER_PORT_PROPERTY);
+
+  /**
+   * Minutes between the end of a crawl of a view and the start of the next one in server mode.
+   */
+  private static final int SERVER_REFRESH_MINUTES = Integer.getInteger(SERVER_REFRESH_MINUTES_PROPERTY, 15);
+
+  /**
+   * File where the requests, timings and sizes of the run are written as JSON at its end.
+   */
+  private static final String METRICS_FILE = System.getProperty(METRICS_FILE_PROPERTY);
+
+  /**
+   * Class implementing {@link MetricsRegistry}, with a public no-argument constructor, that receives
+   * every measurement as it is made, e.g. to send it to a monitoring system.
+   */
+  private static final String METRICS_REGISTRY = System.getProperty(METRICS_REGISTRY_PROPERTY);
+
+  /**
+   * Write the failed jobs into the reports as soon as they are read, the totals and passed jobs
+   * follow at the end of the crawl.
+   */
+  private static final boolean PROGRESSIVE = Boolean.getBoolean(PROGRESSIVE_PROPERTY);
+
+  /**
+   * Directory where the reported builds are recorded, so that the report can tell how often jobs and
+   * tests failed in their last builds. Nothing is recorded by default.
+   */
+  private static final String HISTORY_DIR = System.getProperty(HISTORY_DIR_PROPERTY);
+
+  /**
+   * How many of the last recorded builds of a job the report counts the failures in.
+   */
+  private static final int HISTORY_BUILDS = Integer.getInteger(HISTORY_BUILDS_PROPERTY, 10);
+
+  /**
+   * Days the recorded builds are kept.
+   */
+  private static final int HISTORY_DAYS = Integer.getInteger(HISTORY_DAYS_PROPERTY, 90);
+
+  /**
+   * How many of the last builds of the jobs with failed tests are read to mark the tests that keep
+   * passing and failing by turns as flaky. Only the last completed build is read by default.
+   */
+  private static final int FLAKY_BUILDS = Integer.getInteger(FLAKY_BUILDS_PROPERTY, 0);
+
   public static final void main(String[] args) {
     if (args.length == 0) {
       System.err.println("Please give the name of Jenkins view as parameter to this script."); // NOSONAR
@@ -75,80 +250,257 @@ public class Main {
     if (!viewUrlPrefix.endsWith("/"))
       viewUrlPrefix = viewUrlPrefix + "/";
 
-    Date startTime = new Date();
-    // Lets generate a report for all the views specified
+    final HttpResponseCache responseCache = new HttpResponseCache(HTTP_CACHE_MEMORY_MB * 1024L * 1024L, HTTP_CACHE_DIR == null ? null : new File(HTTP_CACHE_DIR));
+
+    final CollectingMetrics metrics = new CollectingMetrics(createMetricsRegistry());
+    final JenkinsReportGeneratorBuilder generatorBuilder = new JenkinsReportGeneratorBuilder().metrics(metrics)
+        .history(HISTORY_DIR == null ? null : new BuildHistory(new File(HISTORY_DIR), HISTORY_BUILDS, HISTORY_DAYS));
+
+    if (SERVER_PORT != null) {
+      serve(args, jenkinsUrl, viewUrlPrefix, responseCache, metrics, generatorBuilder);
+      return;
+    }
+
+    final Date startTime = new Date();
+    final List<URI> viewUrls = Lists.newArrayList();
     for (String viewPath : args) {
-      URI viewUrl;
-      try {
-        Iterable<String> viewNames = Splitter.on('/').split(viewPath);
-        StringBuilder urlBuilder = new StringBuilder(jenkinsUrl);
-        for (String viewName : viewNames)
-          urlBuilder.append(viewUrlPrefix).append(URLParamEncoder.encode(viewName));
-        
-        viewUrl = new URI(urlBuilder.toString());
-      }
-      catch (URISyntaxException e) {
-        throw new ProcessingException(e);
-      }
+      viewUrls.add(createViewUrl(jenkinsUrl, viewUrlPrefix, viewPath));
+    }
 
-      // lets generate a output filename if none provided
-      String outputFilePath = OUTPUT_FILE_NAME;
-      final File outputFile;
+    if (PROGRESSIVE) {
+      generateProgressiveReports(args, viewUrls, startTime, responseCache, metrics, generatorBuilder);
+    }
+    else {
+      generateReports(args, viewUrls, startTime, responseCache, metrics, generatorBuilder);
+    }
 
-      try {
-          if (outputFilePath == null) {
-            final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
-            outputFilePath = viewPath.replace("/", "-") + "-jenkins-report-" + sdf.format(startTime) + "-";
-            outputFile = File.createTempFile(outputFilePath, ".html");
+    log.info("Metrics of the run:" + metrics);
+    if (METRICS_FILE != null) {
+      writeMetrics(metrics, new File(METRICS_FILE));
+    }
+  }
+
+  private static void generateReports(String[] args, List<URI> viewUrls, final Date startTime, HttpResponseCache responseCache, MetricsRegistry metrics,
+      final JenkinsReportGeneratorBuilder generatorBuilder) {
+    // jobs that are part of several views are crawled only once
+    final List<JenkinsView> views = createAnalyser(viewUrls.get(0), responseCache, metrics).getViewData(viewUrls);
+
+    // Lets generate a report for all the views specified
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(args.length, Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("report-%d").setDaemon(true).build());
+    try {
+      final List<Future<?>> futures = Lists.newArrayList();
+      for (int i = 0; i < args.length; i++) {
+        final String viewPath = args[i];
+        final JenkinsView viewData = views.get(i);
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            generateReport(viewPath, viewData, startTime, generatorBuilder);
           }
-          else {
-            File file = new File(outputFilePath);
-            File outputDir = file.getParentFile();
-            try {
-              FileUtils.forceMkdir(outputDir);
-            }
-            catch (IOException e) {
-              throw new ProcessingException("Could not create directory " + outputDir, e);
-            }
-            log.debug("Created directory {}", outputDir);
-            outputFile = new File(outputFilePath);
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ProcessingException(e);
+        }
+        catch (ExecutionException e) {
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
           }
+          throw new ProcessingException(e.getCause());
+        }
       }
-      catch (IOException e) {
-          throw new ProcessingException("Unable to create file " + outputFilePath, e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Opens the report files before the crawl starts and writes into them while it runs.
+   */
+  private static void generateProgressiveReports(String[] args, List<URI> viewUrls, Date startTime, HttpResponseCache responseCache, MetricsRegistry metrics,
+      JenkinsReportGeneratorBuilder generatorBuilder) {
+    final List<File> outputFiles = Lists.newArrayList();
+    final List<Writer> outputs = Lists.newArrayList();
+    try {
+      for (String viewPath : args) {
+        final File outputFile = createOutputFile(viewPath, startTime);
+        log.info("Writing the report of view " + viewPath + " to: " + outputFile);
+        outputFiles.add(outputFile);
+        outputs.add(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(outputFile), JenkinsReportGenerator.OUTPUT_BUFFER_SIZE)));
       }
+    }
+    catch (IOException e) {
+      for (Writer out : outputs) {
+        IOUtils.closeQuietly(out);
+      }
+      throw new ProcessingException("Unable to create file " + outputFiles.get(outputs.size()), e);
+    }
 
-      log.debug("Using view URL {} and generating output to {}", viewUrl, outputFilePath);
+    final ProgressiveReportGenerator generator = generatorBuilder.buildProgressiveGenerator(outputs, startTime);
+    try {
+      // jobs that are part of several views are crawled only once
+      createAnalyser(viewUrls.get(0), responseCache, metrics).getViewData(viewUrls, generator);
+      generator.finish();
+    }
+    finally {
+      for (Writer out : outputs) {
+        IOUtils.closeQuietly(out);
+      }
+    }
+
+    for (File outputFile : outputFiles) {
+      log.info("Generated report to: " + outputFile + " (" + FileUtils.byteCountToDisplaySize(outputFile.length()) + ")");
+    }
+  }
 
-      PrintWriter out;
+  private static MetricsRegistry createMetricsRegistry() {
+    if (METRICS_REGISTRY == null) {
+      return MetricsRegistry.NONE;
+    }
+
+    try {
+      return (MetricsRegistry) Class.forName(METRICS_REGISTRY).newInstance();
+    }
+    catch (Exception e) {
+      throw new ProcessingException("Unable to create the metrics registry " + METRICS_REGISTRY, e);
+    }
+  }
+
+  private static void writeMetrics(CollectingMetrics metrics, File file) {
+    Writer out = null;
+    try {
+      out = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+      metrics.writeJson(out);
+      out.close();
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Unable to write into the file " + file.getAbsolutePath(), e);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+    log.info("Wrote metrics to: " + file);
+  }
+
+  private static void generateReport(String viewPath, JenkinsView viewData, Date startTime, JenkinsReportGeneratorBuilder generatorBuilder) {
+    final File outputFile = createOutputFile(viewPath, startTime);
+    log.debug("Generating report of view {} to {}", viewPath, outputFile);
+
+    final JenkinsReportGenerator app = generatorBuilder.buildDefaultGenerator();
+    final long reportSize;
+    try {
+      reportSize = app.generateReport(viewData, outputFile, startTime);
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Unable to write into the file " + outputFile.getAbsolutePath(), e);
+    }
+
+    if (Desktop.isDesktopSupported()) {
       try {
-        out = new PrintWriter(new FileWriter(outputFile));
+        Desktop.getDesktop().open(outputFile);
       }
       catch (IOException e) {
-        throw new ProcessingException("Unable to write into the file " + outputFile.getAbsolutePath(), e);
       }
+    }
+    log.info("Generated report to: " + outputFile + " (" + FileUtils.byteCountToDisplaySize(reportSize) + ")");
+  }
 
-      // ViewData viewData =
-      JenkinsViewAnalyser jHelper;
-
-      jHelper = (new JenkinsHelperBuilder()).createDefault(viewUrl, JENKINS_USERNAME, JENKINS_API_TOKEN, JENKINS_IGNORE_SSL);
-
-      JenkinsView viewData = jHelper.getViewData(viewUrl);
-
-      final JenkinsReportGenerator app = (new JenkinsReportGeneratorBuilder()).buildDefaultGenerator();
-      app.generateReport(viewData, out, startTime);
+  private static File createOutputFile(String viewPath, Date startTime) {
+    // lets generate a output filename if none provided
+    String outputFilePath = OUTPUT_FILE_NAME;
+    final File outputFile;
 
-      if (Desktop.isDesktopSupported()) {
-        try {
-          Desktop.getDesktop().open(outputFile);
+    try {
+        if (outputFilePath == null) {
+          final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss");
+          outputFilePath = viewPath.replace("/", "-") + "-jenkins-report-" + sdf.format(startTime) + "-";
+          outputFile = File.createTempFile(outputFilePath, ".html");
         }
-        catch (IOException e) {
+        else {
+          File file = new File(outputFilePath);
+          File outputDir = file.getParentFile();
+          try {
+            FileUtils.forceMkdir(outputDir);
+          }
+          catch (IOException e) {
+            throw new ProcessingException("Could not create directory " + outputDir, e);
+          }
+          log.debug("Created directory {}", outputDir);
+          outputFile = new File(outputFilePath);
         }
+    }
+    catch (IOException e) {
+        throw new ProcessingException("Unable to create file " + outputFilePath, e);
+    }
+    return outputFile;
+  }
+
+  /**
+   * Keeps a generator for every view and serves their reports until the JVM is stopped. The views
+   * share one analyser and its connections to Jenkins.
+   */
+  private static void serve(String[] viewPaths, String jenkinsUrl, String viewUrlPrefix, HttpResponseCache responseCache, MetricsRegistry metrics,
+      JenkinsReportGeneratorBuilder generatorBuilder) {
+    final ReportServer server = new ReportServer(SERVER_PORT, SERVER_REFRESH_MINUTES * 60L * 1000L);
+    JenkinsViewAnalyser analyser = null;
+    for (String viewPath : viewPaths) {
+      URI viewUrl = createViewUrl(jenkinsUrl, viewUrlPrefix, viewPath);
+      if (analyser == null) {
+        analyser = createAnalyser(viewUrl, responseCache, metrics);
       }
-      log.info("Generated report to: " + outputFile);
+      server.addView(viewPath, viewUrl, analyser, generatorBuilder.buildDefaultGenerator());
+    }
+
+    try {
+      server.start();
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Unable to listen on port " + SERVER_PORT, e);
+    }
+  }
+
+  private static URI createViewUrl(String jenkinsUrl, String viewUrlPrefix, String viewPath) {
+    try {
+      Iterable<String> viewNames = Splitter.on('/').split(viewPath);
+      StringBuilder urlBuilder = new StringBuilder(jenkinsUrl);
+      for (String viewName : viewNames)
+        urlBuilder.append(viewUrlPrefix).append(URLParamEncoder.encode(viewName));
+
+      return new URI(urlBuilder.toString());
+    }
+    catch (URISyntaxException e) {
+      throw new ProcessingException(e);
     }
   }
 
+  private static JenkinsViewAnalyser createAnalyser(URI viewUrl, HttpResponseCache responseCache, MetricsRegistry metrics) {
+    return new JenkinsHelperBuilder()
+        .fetchThreads(JENKINS_FETCH_THREADS)
+        .fetchStrategy(FetchStrategy.fromString(JENKINS_FETCH_STRATEGY))
+        .fetchEngine(FetchEngine.fromString(JENKINS_FETCH_ENGINE))
+        .adaptiveConcurrency(!JENKINS_FIXED_CONCURRENCY)
+        .timeouts((int) TimeUnit.SECONDS.toMillis(JENKINS_CONNECT_TIMEOUT_SECONDS), (int) TimeUnit.SECONDS.toMillis(JENKINS_READ_TIMEOUT_SECONDS),
+            TimeUnit.MINUTES.toMillis(JENKINS_REQUEST_TIMEOUT_MINUTES))
+        .retries(JENKINS_RETRIES, JenkinsHttpClient.DEFAULT_RETRY_BACKOFF_MILLIS)
+        .errorBudget(JENKINS_ERROR_BUDGET)
+        .domParser(JENKINS_DOM_PARSER)
+        .compressStackTraces(COMPRESS_STACK_TRACES)
+        .cacheDirectory(CACHE_DIR == null ? null : new File(CACHE_DIR))
+        .responseCache(responseCache)
+        .filterTestReports(JENKINS_FILTER_TEST_REPORTS)
+        .flakyBuilds(FLAKY_BUILDS)
+        .metrics(metrics)
+        .createDefault(viewUrl, JENKINS_USERNAME, JENKINS_API_TOKEN, JENKINS_IGNORE_SSL);
+  }
+
   private static void printUsage() {
     System.out.println("Program Usage");
     System.out.println();
@@ -172,6 +524,78 @@ public class Main {
     System.out.println();
     System.out.println("Optional -D" + JENKINS_IGNORE_SSL_PROPERTY + "=true");
     System.out.println("\tIgnore hostname certification matching the IP.");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_FETCH_THREADS_PROPERTY + "=1");
+    System.out.println("\tMaximum number of parallel requests to Jenkins while crawling jobs. Defaults to 1");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_FETCH_STRATEGY_PROPERTY + "=per-job|bulk");
+    System.out.println("\tRead the whole view with a single request (bulk) or job by job (per-job). Defaults to per-job");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_FETCH_ENGINE_PROPERTY + "=pool|virtual-threads");
+    System.out.println("\tRun every fetch on a virtual thread of its own (Java 21+) instead of a pool of fetch threads. Defaults to pool");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_FIXED_CONCURRENCY_PROPERTY + "=true");
+    System.out.println("\tMake as many parallel requests as fetch threads from the start instead of adapting to how fast Jenkins responds.");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_CONNECT_TIMEOUT_PROPERTY + "=10");
+    System.out.println("\tSeconds to connect to Jenkins. Defaults to 10");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_READ_TIMEOUT_PROPERTY + "=60");
+    System.out.println("\tSeconds a request may wait for data from Jenkins. Defaults to 60");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_REQUEST_TIMEOUT_PROPERTY + "=10");
+    System.out.println("\tMinutes a single request may take, retries included. Defaults to 10");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_RETRIES_PROPERTY + "=3");
+    System.out.println("\tHow often a request failing with a network error, a timeout, 502 or 504 is repeated. Defaults to 3");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_ERROR_BUDGET_PROPERTY + "=25");
+    System.out.println("\tJobs that cannot be read are reported as unavailable, but the run fails when more than this many do. Defaults to 25");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_DOM_PARSER_PROPERTY + "=true");
+    System.out.println("\tParse job listings into DOM documents instead of streaming them.");
+    System.out.println();
+    System.out.println("Optional -D" + COMPRESS_STACK_TRACES_PROPERTY + "=true");
+    System.out.println("\tKeep long stack traces compressed in memory, for views with many failing tests.");
+    System.out.println();
+    System.out.println("Optional -D" + REPORTER_CACHE_DIR_PROPERTY + "=cache-directory");
+    System.out.println("\tKeep completed builds and test reports in this directory so that later runs only fetch new builds.");
+    System.out.println();
+    System.out.println("Optional -D" + HTTP_CACHE_DIR_PROPERTY + "=cache-directory");
+    System.out.println("\tKeep responses with an ETag or Last-Modified header in this directory and request them conditionally later.");
+    System.out.println();
+    System.out.println("Optional -D" + HTTP_CACHE_MEMORY_PROPERTY + "=32");
+    System.out.println("\tMegabytes of responses kept in memory for conditional requests. Defaults to 32");
+    System.out.println();
+    System.out.println("Optional -D" + JENKINS_FILTER_TEST_REPORTS_PROPERTY + "=true");
+    System.out.println("\tOnly download the failing cases of test reports. Falls back to full reports if Jenkins rejects the query.");
+    System.out.println();
+    System.out.println("Optional -D" + SERVER_PORT_PROPERTY + "=8080");
+    System.out.println("\tKeep running and serve the reports over HTTP on this port, /view-name for HTML and /view-name.json for JSON.");
+    System.out.println();
+    System.out.println("Optional -D" + SERVER_REFRESH_MINUTES_PROPERTY + "=15");
+    System.out.println("\tMinutes between refreshes of a view in server mode. Defaults to 15");
+    System.out.println();
+    System.out.println("Optional -D" + METRICS_FILE_PROPERTY + "=metrics.json");
+    System.out.println("\tWrite request counts, latencies, crawl and render times of the run as JSON into this file.");
+    System.out.println();
+    System.out.println("Optional -D" + METRICS_REGISTRY_PROPERTY + "=com.example.MyMetricsRegistry");
+    System.out.println("\tPass every measurement on to this implementation of " + MetricsRegistry.class.getName() + ".");
+    System.out.println();
+    System.out.println("Optional -D" + PROGRESSIVE_PROPERTY + "=true");
+    System.out.println("\tWrite the failed jobs into the report as soon as they are read, the totals follow at the end of the crawl.");
+    System.out.println();
+    System.out.println("Optional -D" + HISTORY_DIR_PROPERTY + "=history-directory");
+    System.out.println("\tRecord the reported builds in this directory and show how often jobs and tests failed in their last builds.");
+    System.out.println();
+    System.out.println("Optional -D" + HISTORY_BUILDS_PROPERTY + "=10");
+    System.out.println("\tHow many of the last recorded builds of a job the failures are counted in. Defaults to 10");
+    System.out.println();
+    System.out.println("Optional -D" + HISTORY_DAYS_PROPERTY + "=90");
+    System.out.println("\tDays the recorded builds are kept. Defaults to 90");
+    System.out.println();
+    System.out.println("Optional -D" + FLAKY_BUILDS_PROPERTY + "=10");
+    System.out.println("\tRead the failed tests of this many last builds of failing jobs and mark the tests that pass and fail by turns as flaky.");
   }
 
   private static boolean validateArguments() {
@@ -184,6 +608,50 @@ public class Main {
       System.out.println(String.format("Please provide your jenkins URL via JVM property -D%s", JENKINS_URL_PROPERTY)); // NOSONAR
       return false;
     }
+
+    try {
+      FetchStrategy.fromString(JENKINS_FETCH_STRATEGY);
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println(String.format("Unknown fetch strategy '%s' given with -D%s", JENKINS_FETCH_STRATEGY, JENKINS_FETCH_STRATEGY_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    if (SERVER_REFRESH_MINUTES < 1) {
+      System.out.println(String.format("Please provide a positive number of minutes with -D%s", SERVER_REFRESH_MINUTES_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    try {
+      FetchEngine.fromString(JENKINS_FETCH_ENGINE);
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println(String.format("Unknown fetch engine '%s' given with -D%s", JENKINS_FETCH_ENGINE, JENKINS_FETCH_ENGINE_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    if (JENKINS_FETCH_THREADS < 1) {
+      System.out.println(String.format("Please provide a positive number of fetch threads with -D%s", JENKINS_FETCH_THREADS_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    if (FLAKY_BUILDS < 0 || FLAKY_BUILDS > TestFlips.MAX_BUILDS) {
+      System.out.println(String.format("Please provide a number of builds up to %d with -D%s", TestFlips.MAX_BUILDS, FLAKY_BUILDS_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    if (HISTORY_BUILDS < 1) {
+      System.out.println(String.format("Please provide a positive number of builds with -D%s", HISTORY_BUILDS_PROPERTY)); // NOSONAR
+      return false;
+    }
+
+    for (String property : new String[] { JENKINS_CONNECT_TIMEOUT_PROPERTY, JENKINS_READ_TIMEOUT_PROPERTY, JENKINS_REQUEST_TIMEOUT_PROPERTY, JENKINS_RETRIES_PROPERTY,
+        JENKINS_ERROR_BUDGET_PROPERTY, HISTORY_DAYS_PROPERTY }) {
+      if (Integer.getInteger(property, 0) < 0) {
+        System.out.println(String.format("Please provide a number that is not negative with -D%s", property)); // NOSONAR
+        return false;
+      }
+    }
     return true;
   }
 }
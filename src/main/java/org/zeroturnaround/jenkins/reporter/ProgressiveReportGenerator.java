@@ -0,0 +1,161 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.zeroturnaround.jenkins.reporter.JenkinsReportGenerator.JobByTimestampComparator;
+import org.zeroturnaround.jenkins.reporter.model.FailureClusters;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.Job.BadJobPredicate;
+import org.zeroturnaround.jenkins.reporter.model.ViewStatistics;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Writes the reports of views while they are crawled: the header as soon as the views are listed,
+ * every failed job as soon as it is read and the totals and passed jobs once the crawl is done. A
+ * reader of the file or of the response sees the first failures long before the slowest jobs are
+ * read. Failed jobs are in the order they are read instead of by the time they were built.
+ * <p>
+ * Pass it to {@link JenkinsViewAnalyser#getViewData(List, CrawlListener)} and call
+ * {@link #finish()} after that returns.
+ */
+public class ProgressiveReportGenerator implements CrawlListener {
+  private final Template header;
+  private final Template failedJob;
+  private final Template footer;
+  private final List<? extends Writer> outputs;
+  private final Date startTime;
+  private final MetricsRegistry metrics;
+  private final BuildHistory history;
+  private final BadJobPredicate bad = new BadJobPredicate();
+
+  private List<JenkinsView> views;
+  // one context per view keeps the numbering of the error details going between the jobs
+  private final List<VelocityContext> contexts = newArrayList();
+  private final List<Set<URI>> jobUrls = newArrayList();
+  private final Set<Writer> failuresWritten = Sets.newIdentityHashSet();
+
+  /**
+   * @param outputs one for every view, in the order of the view URLs, closed by {@link #finish()}
+   * @param history where the crawled builds are recorded, <code>null</code> for none
+   */
+  public ProgressiveReportGenerator(Template header, Template failedJob, Template footer, List<? extends Writer> outputs, Date startTime,
+      MetricsRegistry metrics, BuildHistory history) {
+    this.header = header;
+    this.failedJob = failedJob;
+    this.footer = footer;
+    this.outputs = outputs;
+    this.startTime = startTime;
+    this.metrics = metrics;
+    this.history = history;
+  }
+
+  @Override
+  public void viewsListed(List<JenkinsView> listedViews) {
+    if (listedViews.size() != outputs.size()) {
+      throw new IllegalArgumentException(listedViews.size() + " views listed for " + outputs.size() + " outputs");
+    }
+    this.views = listedViews;
+
+    for (int i = 0; i < listedViews.size(); i++) {
+      final JenkinsView view = listedViews.get(i);
+      final Set<URI> urls = Sets.newHashSet();
+      for (Job job : view.getJobs()) {
+        urls.add(job.getUrl());
+      }
+      jobUrls.add(urls);
+
+      final VelocityContext context = JenkinsReportGenerator.createToolContext(startTime);
+      context.put("view", view);
+      if (history != null) {
+        context.put("history", history);
+      }
+      contexts.add(context);
+      render(header, context, outputs.get(i));
+    }
+  }
+
+  @Override
+  public void jobCrawled(Job job) {
+    if (history != null) {
+      history.record(Collections.singletonList(job), startTime);
+    }
+    if (!bad.apply(job)) {
+      return;
+    }
+
+    final ViewStatistics statistics = new ViewStatistics(Collections.singletonList(job));
+    for (int i = 0; i < outputs.size(); i++) {
+      if (!jobUrls.get(i).contains(job.getUrl())) {
+        continue;
+      }
+
+      final Writer out = outputs.get(i);
+      final VelocityContext context = contexts.get(i);
+      context.put("job", job);
+      context.put("stats", statistics);
+      render(failedJob, context, out);
+
+      if (failuresWritten.add(out)) {
+        metrics.record("report.firstFailure.millis", System.currentTimeMillis() - startTime.getTime());
+      }
+    }
+  }
+
+  /**
+   * Writes the totals and the passed jobs of the crawled views and closes the outputs.
+   */
+  public void finish() {
+    if (views == null) {
+      throw new IllegalStateException("The views have not been listed yet");
+    }
+
+    try {
+      for (int i = 0; i < views.size(); i++) {
+        final ViewStatistics statistics = new ViewStatistics(views.get(i));
+
+        final List<Job> failedJobs = newArrayList(statistics.getFailedJobs());
+        Collections.sort(failedJobs, new JobByTimestampComparator());
+        final List<Job> passedJobs = newArrayList(statistics.getPassedJobs());
+        Collections.sort(passedJobs, new JobByTimestampComparator());
+
+        final VelocityContext context = contexts.get(i);
+        context.remove("job");
+        context.put("stats", statistics);
+        context.put("failedJobs", failedJobs);
+        context.put("passedJobs", passedJobs);
+        context.put("clusters", new FailureClusters(views.get(i)));
+        render(footer, context, outputs.get(i));
+      }
+    }
+    finally {
+      for (Writer out : outputs) {
+        IOUtils.closeQuietly(out);
+      }
+    }
+  }
+
+  private void render(Template template, VelocityContext context, Writer out) {
+    try {
+      template.merge(context, out);
+      // the reader should see the fragment now, not when the buffer fills up
+      out.flush();
+    }
+    catch (IOException e) {
+      throw new ProcessingException("Unable to write the report", e);
+    }
+  }
+}
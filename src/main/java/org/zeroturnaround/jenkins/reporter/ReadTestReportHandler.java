@@ -1,182 +1,323 @@
 package org.zeroturnaround.jenkins.reporter;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
+import org.zeroturnaround.jenkins.reporter.model.StackTraceStore;
 import org.zeroturnaround.jenkins.reporter.model.TestCase;
 import org.zeroturnaround.jenkins.reporter.model.TestReport;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
 
+/**
+ * Reads the counters and the failed cases of a Jenkins test report.
+ * <p>
+ * Test reports can be tens of megabytes, so the handler avoids allocating anything per element:
+ * element names are mapped to ids once, text is collected into one reused buffer and Strings are only
+ * created for the fields of the cases that are kept. The status comes last in a case, so the text of
+ * the current case stays in the buffer until the case ends. Stack traces are looked up in a
+ * {@link StackTraceStore} straight from the buffer, only new ones are copied.
+ */
 public final class ReadTestReportHandler extends DefaultHandler {
+  private static final String FAILED = "FAILED";
+  private static final String REGRESSION = "REGRESSION";
+
+  // element ids
+  private static final int OTHER = 0;
+  private static final int MATRIX_TEST_RESULT = 1;
+  private static final int TEST_RESULT = 2;
+  private static final int CHILD_REPORT = 3;
+  private static final int SUITE = 4;
+  private static final int CASE = 5;
+  private static final int FAIL_COUNT = 6;
+  private static final int SKIP_COUNT = 7;
+  private static final int PASS_COUNT = 8;
+  private static final int TOTAL_COUNT = 9;
+  private static final int STATUS = 10;
+  private static final int AGE = 11;
+  private static final int CLASS_NAME = 12;
+  private static final int NAME = 13;
+  private static final int ERROR_DETAILS = 14;
+  private static final int ERROR_STACK_TRACE = 15;
+
+  // scopes in which the text of an element is read
+  private static final int NOWHERE = 0;
+  private static final int HEADER = 1;
+  private static final int IN_CASE = 2;
+
+  private static final Map<String, Integer> ELEMENTS = new HashMap<String, Integer>();
+  private static final int[] SCOPE = new int[16];
+
+  // the text fields of a case that are kept, indexes into caseStart and caseEnd
+  private static final int CLASS_NAME_FIELD = 0;
+  private static final int NAME_FIELD = 1;
+  private static final int ERROR_DETAILS_FIELD = 2;
+  private static final int ERROR_STACK_TRACE_FIELD = 3;
+  private static final int[] CASE_FIELD = new int[16];
+
+  static {
+    element("matrixTestResult", MATRIX_TEST_RESULT, NOWHERE);
+    element("testResult", TEST_RESULT, NOWHERE);
+    element("childReport", CHILD_REPORT, NOWHERE);
+    element("suite", SUITE, NOWHERE);
+    element("case", CASE, NOWHERE);
+    element("failCount", FAIL_COUNT, HEADER);
+    element("skipCount", SKIP_COUNT, HEADER);
+    element("passCount", PASS_COUNT, HEADER);
+    element("totalCount", TOTAL_COUNT, HEADER);
+    element("status", STATUS, IN_CASE);
+    element("age", AGE, IN_CASE);
+    element("className", CLASS_NAME, IN_CASE);
+    element("name", NAME, IN_CASE);
+    element("errorDetails", ERROR_DETAILS, IN_CASE);
+    element("errorStackTrace", ERROR_STACK_TRACE, IN_CASE);
+
+    Arrays.fill(CASE_FIELD, -1);
+    CASE_FIELD[CLASS_NAME] = CLASS_NAME_FIELD;
+    CASE_FIELD[NAME] = NAME_FIELD;
+    CASE_FIELD[ERROR_DETAILS] = ERROR_DETAILS_FIELD;
+    CASE_FIELD[ERROR_STACK_TRACE] = ERROR_STACK_TRACE_FIELD;
+  }
+
   private final TestReport testReport;
-  private boolean ageNode = false;
-  private boolean classNameNode = false;
-  private StringBuffer errorDetails, errorStackTrace;
-  private boolean errorDetailsNode = false;
-  private boolean errorStackTraceNode = false;
-  private boolean failCountNode = false;
+  private final StackTraceStore stackTraces;
+
   private boolean matrixJob;
-  private boolean methodNameNode = false;
-  private boolean passCountNode = false;
   private boolean plainJob;
-  private boolean rootNode = false;
-  private boolean skipCountNode = false;
-  private boolean statusNode = false;
-  private TestCase testCase;
-  private boolean totalCountNode = false;
+  private int scope = NOWHERE;
+
+  // element whose text is being collected, OTHER if none
+  private int reading = OTHER;
+  private int textStart;
+
+  private char[] text = new char[1024];
+  private int textLength;
+
+  private final int[] caseStart = new int[4];
+  private final int[] caseEnd = new int[4];
+  private String caseStatus;
+  // -1 if the case has no age
+  private int caseAge;
+  private int casesRead;
 
   ReadTestReportHandler(TestReport testReport) {
+    this(testReport, new StackTraceStore(false, MetricsRegistry.NONE));
+  }
+
+  ReadTestReportHandler(TestReport testReport, StackTraceStore stackTraces) {
     this.testReport = testReport;
+    this.stackTraces = stackTraces;
+  }
+
+  private static void element(String name, int id, int scope) {
+    ELEMENTS.put(name, id);
+    SCOPE[id] = scope;
+  }
+
+  private static int elementId(String qName) {
+    final Integer id = ELEMENTS.get(qName);
+    return id == null ? OTHER : id;
   }
 
   @Override
   public void characters(char ch[], int start, int length) throws SAXException {
-    if (rootNode && failCountNode) {
-      testReport.setFailCount(Integer.parseInt(new String(ch, start, length)));
-    }
-    else if (rootNode && skipCountNode) {
-      testReport.setSkipCount(Integer.parseInt(new String(ch, start, length)));
-    }
-    else if (rootNode && passCountNode) {
-      testReport.setPassCount(Integer.parseInt(new String(ch, start, length)));
-    }
-    else if (rootNode && totalCountNode) {
-      testReport.setTotalCount(Integer.parseInt(new String(ch, start, length)));
-    }
-    else if (statusNode) {
-      testCase.setStatus(new String(ch, start, length));
+    if (reading == OTHER) {
+      return;
     }
-    else if (ageNode) {
-      testCase.setAge(Integer.parseInt(new String(ch, start, length)));
-    }
-    else if (classNameNode) {
-      testCase.setClassName(new String(ch, start, length));
-    }
-    else if (methodNameNode) {
-      testCase.setMethodName(new String(ch, start, length));
-    }
-    else if (errorDetailsNode) {
-      errorDetails.append(new String(ch, start, length));
+
+    if (textLength + length > text.length) {
+      text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
     }
-    else if (errorStackTraceNode) {
-      errorStackTrace.append(new String(ch, start, length));
+    System.arraycopy(ch, start, text, textLength, length);
+    textLength += length;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    final int id = elementId(qName);
+    switch (id) {
+      case OTHER:
+        return;
+      case MATRIX_TEST_RESULT:
+        matrixJob = true;
+        scope = HEADER;
+        break;
+      case TEST_RESULT:
+        plainJob = true;
+        scope = HEADER;
+        break;
+      case CHILD_REPORT:
+        // "childReport" is next element after the header in matrix job
+        if (matrixJob) {
+          endHeader();
+        }
+        break;
+      case SUITE:
+        // "suite" is next element after the header in plain job
+        if (plainJob) {
+          endHeader();
+        }
+        break;
+      case CASE:
+        scope = IN_CASE;
+        textLength = 0;
+        Arrays.fill(caseStart, -1);
+        caseStatus = null;
+        caseAge = -1;
+        break;
+      default:
+        if (SCOPE[id] == scope) {
+          reading = id;
+          textStart = textLength;
+        }
     }
   }
 
   @Override
   public void endElement(String uri, String localName, String qName) throws SAXException {
-    if (qName.equals("matrixTestResult")) {
-      rootNode = false;
-    }
-    else if (qName.equals("testResult")) {
-      rootNode = false;
+    final int id = elementId(qName);
+    if (id == OTHER) {
+      return;
     }
-    else if (qName.equalsIgnoreCase("case")) {
-      if (testCase.getStatus() != null && (testCase.getStatus().equals("FAILED") || testCase.getStatus().equals("REGRESSION"))) {
-        testReport.getTestCases().add(testCase);
-        testCase = new TestCase(); // to avoid mutating it later (e.g. <name> tag occurs outside of <case> too)
-      }
-    }
-    else if (failCountNode) {
-      failCountNode = false;
-    }
-    else if (qName.equalsIgnoreCase("skipCount")) {
-      skipCountNode = false;
-    }
-    else if (qName.equalsIgnoreCase("passCount")) {
-      passCountNode = false;
+
+    if (id == reading) {
+      endText(id);
+      reading = OTHER;
     }
-    else if (qName.equalsIgnoreCase("totalCount")) {
-      totalCountNode = false;
+    else if (id == CASE) {
+      endCase();
     }
-    else if (statusNode) {
-      statusNode = false;
+    else if (id == MATRIX_TEST_RESULT || id == TEST_RESULT) {
+      endHeader();
     }
-    else if (ageNode) {
-      ageNode = false;
+  }
+
+  private void endHeader() {
+    if (scope != HEADER) {
+      return;
     }
-    else if (classNameNode) {
-      classNameNode = false;
+    scope = NOWHERE;
+
+    // in case of plain job we need to calculate totalCount manually
+    if (plainJob && testReport.getTotalCount() == 0) {
+      testReport.setTotalCount(testReport.getPassCount() + testReport.getFailCount() + testReport.getSkipCount());
     }
-    else if (methodNameNode) {
-      methodNameNode = false;
+  }
+
+  private void endText(int id) throws SAXException {
+    final int caseField = CASE_FIELD[id];
+    if (caseField >= 0) {
+      // stays in the buffer until the status of the case is known
+      caseStart[caseField] = textStart;
+      caseEnd[caseField] = textLength;
+      return;
     }
-    else if (qName.equalsIgnoreCase("errorDetails")) {
-      errorDetailsNode = false;
-      testCase.setErrorDetails(errorDetails.toString());
-      errorDetails = null;
+
+    final int start = textStart;
+    final int end = textLength;
+    textLength = textStart;
+    if (start == end) {
+      return;
     }
-    else if (qName.equalsIgnoreCase("errorStackTrace")) {
-      errorStackTraceNode = false;
-      testCase.setErrorStackTrace(errorStackTrace.toString());
-      errorStackTrace = null;
+
+    switch (id) {
+      case FAIL_COUNT:
+        testReport.setFailCount(parseInt(start, end));
+        break;
+      case SKIP_COUNT:
+        testReport.setSkipCount(parseInt(start, end));
+        break;
+      case PASS_COUNT:
+        testReport.setPassCount(parseInt(start, end));
+        break;
+      case TOTAL_COUNT:
+        testReport.setTotalCount(parseInt(start, end));
+        break;
+      case AGE:
+        caseAge = parseInt(start, end);
+        break;
+      case STATUS:
+        caseStatus = textEquals(start, end, FAILED) ? FAILED : textEquals(start, end, REGRESSION) ? REGRESSION : null;
+        break;
+      default:
+        break;
     }
   }
 
-  @Override
-  public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-    if (qName.equals("matrixTestResult")) {
-      matrixJob = true;
-      rootNode = true;
-    }
-    else if (qName.equals("testResult")) {
-      plainJob = true;
-      rootNode = true;
-    }
-    else if (qName.equalsIgnoreCase("childReport")) {
-      if (matrixJob) {
-        // "childReport" is next element after the header in
-        // matrix job
-        rootNode = false;
-      }
-    }
-    else if (qName.equalsIgnoreCase("suite")) {
-      if (plainJob) {
-        // "suite" is next element after the header in
-        // plain job
-        rootNode = false;
+  /**
+   * @return all the cases in the report, including those that were not kept
+   */
+  int getCasesRead() {
+    return casesRead;
+  }
 
-        // in case of plain job we need to calculate totalCount
-        // manually
-        if (testReport.getTotalCount() == 0) {
-          testReport.setTotalCount(testReport.getPassCount() + testReport.getFailCount() + testReport.getSkipCount());
-        }
+  private void endCase() {
+    scope = NOWHERE;
+    casesRead++;
+    if (caseStatus != null) {
+      final TestCase testCase = new TestCase();
+      testCase.setStatus(caseStatus);
+      if (caseAge >= 0) {
+        testCase.setAge(caseAge);
       }
+      testCase.setClassName(caseText(CLASS_NAME_FIELD));
+      testCase.setMethodName(caseText(NAME_FIELD));
+      testCase.setErrorDetails(caseText(ERROR_DETAILS_FIELD));
+      final int traceStart = caseStart[ERROR_STACK_TRACE_FIELD];
+      if (traceStart >= 0) {
+        testCase.setStackTrace(stackTraces.intern(text, traceStart, caseEnd[ERROR_STACK_TRACE_FIELD]));
+      }
+      testReport.getTestCases().add(testCase);
     }
-    else if (qName.equalsIgnoreCase("case")) {
-      testCase = new TestCase();
-    }
-    else if (qName.equalsIgnoreCase("failCount")) {
-      failCountNode = true;
-    }
-    else if (qName.equalsIgnoreCase("skipCount")) {
-      skipCountNode = true;
-    }
-    else if (qName.equalsIgnoreCase("passCount")) {
-      passCountNode = true;
-    }
-    else if (qName.equalsIgnoreCase("totalCount")) {
-      totalCountNode = true;
+    textLength = 0;
+  }
+
+  private String caseText(int field) {
+    final int start = caseStart[field];
+    return start < 0 ? null : new String(text, start, caseEnd[field] - start);
+  }
+
+  private boolean textEquals(int start, int end, String value) {
+    if (end - start != value.length()) {
+      return false;
     }
-    else if (qName.equalsIgnoreCase("status")) {
-      statusNode = true;
+    for (int i = start; i < end; i++) {
+      if (text[i] != value.charAt(i - start)) {
+        return false;
+      }
     }
-    else if (qName.equalsIgnoreCase("age")) {
-      ageNode = true;
+    return true;
+  }
+
+  private int parseInt(int start, int end) throws SAXException {
+    while (start < end && Character.isWhitespace(text[start])) {
+      start++;
     }
-    else if (qName.equalsIgnoreCase("className")) {
-      classNameNode = true;
+    while (end > start && Character.isWhitespace(text[end - 1])) {
+      end--;
     }
-    else if (qName.equalsIgnoreCase("name")) {
-      methodNameNode = true;
+
+    final boolean negative = start < end && text[start] == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end) {
+      throw new SAXException("Not a number: " + new String(text, start, end - start));
     }
-    else if (qName.equalsIgnoreCase("errorDetails")) {
-      errorDetailsNode = true;
-      errorDetails = new StringBuffer();
+
+    long value = 0;
+    for (; i < end; i++) {
+      final int digit = text[i] - '0';
+      if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+        throw new SAXException("Not a number: " + new String(text, start, end - start));
+      }
+      value = value * 10 + digit;
     }
-    else if (qName.equalsIgnoreCase("errorStackTrace")) {
-      errorStackTraceNode = true;
-      errorStackTrace = new StringBuffer();
+    value = negative ? -value : value;
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new SAXException("Not a number: " + new String(text, start, end - start));
     }
-
+    return (int) value;
   }
-}
\ No newline at end of file
+}
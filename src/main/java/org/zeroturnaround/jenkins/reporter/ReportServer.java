@@ -0,0 +1,220 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.http.impl.cookie.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps the reports of views in memory, refreshes them in the background and serves them over HTTP:
+ * <code>/{view}</code> is the HTML report and <code>/{view}.json</code> the JSON form, where the view
+ * is given as on the command line. <code>/</code> lists the views. After the first crawl of a view
+ * only the jobs that have built since are fetched again.
+ */
+public class ReportServer {
+  private static final Logger log = LoggerFactory.getLogger(ReportServer.class); // NOSONAR
+
+  private final int port;
+  private final long refreshMillis;
+  private final Map<String, ViewReport> views = Maps.newLinkedHashMap();
+
+  private HttpServer server;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param port where to listen, 0 for any free port
+   * @param refreshMillis time between the end of a crawl of a view and the start of the next one
+   */
+  public ReportServer(int port, long refreshMillis) {
+    this.port = port;
+    this.refreshMillis = refreshMillis;
+  }
+
+  /**
+   * @param viewPath name of the view in the URLs of the server
+   */
+  public void addView(String viewPath, URI viewUrl, JenkinsViewAnalyser analyser, JenkinsReportGenerator generator) {
+    views.put(viewPath, new ViewReport(viewPath, viewUrl, analyser, generator));
+  }
+
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("report-server-%d").setDaemon(true).build()));
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          serve(exchange);
+        }
+        finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+
+    // every view refreshes on its own thread so that a slow view does not hold back the others
+    scheduler = Executors.newScheduledThreadPool(Math.max(1, views.size()), new ThreadFactoryBuilder().setNameFormat("report-refresh-%d").setDaemon(true).build());
+    for (final ViewReport view : views.values()) {
+      scheduler.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          view.refresh();
+        }
+      }, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    log.info("Serving reports of " + views.size() + " views on port " + getPort());
+  }
+
+  public void stop() {
+    scheduler.shutdownNow();
+    server.stop(0);
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+      send(exchange, 405, "text/plain", "Method not allowed".getBytes(Charsets.UTF_8), null);
+      return;
+    }
+
+    final String path = exchange.getRequestURI().getPath().substring(1);
+    if (path.isEmpty()) {
+      send(exchange, 200, "text/html; charset=UTF-8", index(), null);
+      return;
+    }
+
+    final boolean json = path.endsWith(".json");
+    final ViewReport view = views.get(json ? path.substring(0, path.length() - ".json".length()) : path);
+    if (view == null) {
+      send(exchange, 404, "text/plain", ("Unknown view " + path).getBytes(Charsets.UTF_8), null);
+      return;
+    }
+
+    final Report report = view.report;
+    if (report == null) {
+      exchange.getResponseHeaders().set("Retry-After", "60");
+      send(exchange, 503, "text/plain", ("The first report of " + view.viewPath + " is not ready yet").getBytes(Charsets.UTF_8), null);
+      return;
+    }
+
+    if (json) {
+      send(exchange, 200, "application/json; charset=UTF-8", report.json, report.generated);
+    }
+    else {
+      send(exchange, 200, "text/html; charset=" + Charsets.UTF_8.name(), report.html, report.generated);
+    }
+  }
+
+  private byte[] index() {
+    final StringBuilder html = new StringBuilder("<html><head><title>Jenkins reports</title></head><body><ul>");
+    for (ViewReport view : views.values()) {
+      final String name = StringEscapeUtils.escapeHtml(view.viewPath);
+      final Report report = view.report;
+      html.append("<li><a href=\"").append(name).append("\">").append(name).append("</a> (<a href=\"").append(name).append(".json\">json</a>) ");
+      html.append(report == null ? "not generated yet" : "generated at " + DateUtils.formatDate(report.generated));
+      html.append("</li>");
+    }
+    return html.append("</ul></body></html>").toString().getBytes(Charsets.UTF_8);
+  }
+
+  private static void send(HttpExchange exchange, int status, String contentType, byte[] body, Date lastModified) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    if (lastModified != null) {
+      exchange.getResponseHeaders().set("Last-Modified", DateUtils.formatDate(lastModified));
+    }
+
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+
+    exchange.sendResponseHeaders(status, body.length);
+    final OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+  }
+
+  /**
+   * A rendered report, replaced as a whole when the view has been refreshed.
+   */
+  private static final class Report {
+    private final Date generated;
+    private final byte[] html;
+    private final byte[] json;
+
+    Report(Date generated, byte[] html, byte[] json) {
+      this.generated = generated;
+      this.html = html;
+      this.json = json;
+    }
+  }
+
+  private static final class ViewReport {
+    private final String viewPath;
+    private final URI viewUrl;
+    private final JenkinsViewAnalyser analyser;
+    private final JenkinsReportGenerator generator;
+    private final JsonReportGenerator jsonGenerator = new JsonReportGenerator();
+
+    private volatile Report report;
+    // only touched by the refreshing thread
+    private JenkinsView viewData;
+
+    ViewReport(String viewPath, URI viewUrl, JenkinsViewAnalyser analyser, JenkinsReportGenerator generator) {
+      this.viewPath = viewPath;
+      this.viewUrl = viewUrl;
+      this.analyser = analyser;
+      this.generator = generator;
+    }
+
+    void refresh() {
+      final Date startTime = new Date();
+      try {
+        // only the jobs that have built since the previous refresh are fetched again
+        viewData = analyser.refreshViewData(viewUrl, viewData);
+
+        final ByteArrayOutputStream html = new ByteArrayOutputStream();
+        generator.generateReport(viewData, new PrintWriter(new OutputStreamWriter(html, Charsets.UTF_8)), startTime);
+
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        final Writer jsonWriter = new OutputStreamWriter(json, Charsets.UTF_8);
+        jsonGenerator.generateReport(viewData, jsonWriter, startTime);
+        jsonWriter.close();
+
+        report = new Report(startTime, html.toByteArray(), json.toByteArray());
+        log.info("Refreshed the report of " + viewPath + " in " + (System.currentTimeMillis() - startTime.getTime()) + " ms");
+      }
+      catch (Exception e) {
+        // keep serving the previous report, the next refresh may succeed
+        log.error("Could not refresh the report of " + viewPath, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Pulls the model objects straight out of the response stream, only the job or build being read is
+ * kept in memory.
+ */
+public class StaxJenkinsXmlReader extends JenkinsXmlReader {
+  private final XMLInputFactory factory;
+
+  public StaxJenkinsXmlReader(XMLInputFactory factory) {
+    // an element's text is then reported as a single event
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    this.factory = factory;
+  }
+
+  @Override
+  public Collection<Job> readJobs(InputStream is, String jobNodeName, boolean filterByPrefix) throws IOException {
+    final XMLStreamReader reader = open(is);
+    try {
+      final Collection<Job> jobs = new ArrayList<Job>();
+      while (reader.hasNext()) {
+        if (reader.next() == START_ELEMENT && jobNodeName.equals(reader.getLocalName())) {
+          final Job job = readJob(reader, filterByPrefix, false);
+          if (job != null) {
+            jobs.add(job);
+          }
+        }
+      }
+      return jobs;
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    finally {
+      close(reader);
+    }
+  }
+
+  @Override
+  public Build readBuild(InputStream is) throws IOException {
+    final XMLStreamReader reader = open(is);
+    try {
+      reader.nextTag();
+      return readBuild(reader);
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    finally {
+      close(reader);
+    }
+  }
+
+  @Override
+  public JenkinsView readView(InputStream is) throws IOException {
+    final XMLStreamReader reader = open(is);
+    try {
+      reader.nextTag();
+
+      final JenkinsView viewData = new JenkinsView();
+      final Collection<Job> jobs = new ArrayList<Job>();
+      int jobsTotal = 0;
+      while (nextChild(reader)) {
+        final String element = reader.getLocalName();
+        if ("name".equals(element)) {
+          viewData.setName(reader.getElementText());
+        }
+        else if ("url".equals(element)) {
+          viewData.setUrl(toURI(reader.getElementText()));
+        }
+        else if ("job".equals(element)) {
+          jobsTotal++;
+          final Job job = readJob(reader, true, true);
+          if (job != null && job.getChildren() == null) {
+            job.setChildren(new ArrayList<Job>());
+          }
+          if (job != null && keepHarvestedJob(job)) {
+            jobs.add(job);
+          }
+        }
+        else {
+          skipElement(reader);
+        }
+      }
+
+      viewData.setJobsTotal(jobsTotal);
+      viewData.setJobs(jobs);
+      return viewData;
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    finally {
+      close(reader);
+    }
+  }
+
+  /**
+   * Reads the job element the reader is positioned at, the reader is left at its end element.
+   *
+   * @param harvested whether the element comes from the nested tree query and has the last completed
+   *          build and matrix configurations inside
+   */
+  private Job readJob(XMLStreamReader reader, boolean filterByPrefix, boolean harvested) throws XMLStreamException {
+    String name = null;
+    String url = null;
+    String color = null;
+    Build build = null;
+    Collection<Job> children = null;
+
+    while (nextChild(reader)) {
+      final String element = reader.getLocalName();
+      if ("name".equals(element)) {
+        name = reader.getElementText();
+      }
+      else if ("url".equals(element)) {
+        url = reader.getElementText();
+      }
+      else if ("color".equals(element)) {
+        color = reader.getElementText();
+      }
+      else if (harvested && "lastCompletedBuild".equals(element)) {
+        build = readBuild(reader);
+      }
+      else if (harvested && "activeConfiguration".equals(element)) {
+        final Job child = readJob(reader, false, true);
+        if (children == null) {
+          children = new ArrayList<Job>();
+        }
+        if (child != null) {
+          children.add(child);
+        }
+      }
+      else {
+        skipElement(reader);
+      }
+    }
+
+    final Job job = createJob(name, url, color, filterByPrefix);
+    if (job != null && harvested) {
+      job.setLastCompletedBuild(build);
+      job.setChildren(children);
+    }
+    return job;
+  }
+
+  private Build readBuild(XMLStreamReader reader) throws XMLStreamException {
+    final Map<String, String> fields = Maps.newHashMap();
+    while (nextChild(reader)) {
+      final String element = reader.getLocalName();
+      if (BUILD_FIELDS.contains(element) && !fields.containsKey(element)) {
+        fields.put(element, reader.getElementText());
+      }
+      else {
+        skipElement(reader);
+      }
+    }
+    return createBuild(fields);
+  }
+
+  /**
+   * Moves to the next child element of the current element.
+   *
+   * @return <code>false</code> if the end of the current element was reached instead
+   */
+  private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      final int event = reader.next();
+      if (event == START_ELEMENT) {
+        return true;
+      }
+      if (event == END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      final int event = reader.next();
+      if (event == START_ELEMENT) {
+        depth++;
+      }
+      else if (event == END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private XMLStreamReader open(InputStream is) throws IOException {
+    try {
+      return factory.createXMLStreamReader(is);
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static void close(XMLStreamReader reader) {
+    try {
+      reader.close();
+    }
+    catch (XMLStreamException e) {
+      // nothing to do
+    }
+  }
+}
@@ -15,10 +15,13 @@
  */
 package org.zeroturnaround.jenkins.reporter.model;
 
+import java.io.Serializable;
 import java.net.URI;
 import java.util.Date;
 
-public class Build {
+public class Build implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   private String duration;
   private int id;
   private String result;
@@ -0,0 +1,301 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The failed tests of a view grouped by the error they failed with and by the test, across all jobs
+ * and matrix configurations. Every case is looked at once and hashed, so grouping takes time linear
+ * in the number of failed cases. The tests are numbered by a {@link TestIndex} of the failed cases,
+ * so a case is grouped by its test without building a name for it.
+ * <p>
+ * The error signature is the first line of the stack trace, the exception and its message, and the
+ * method of the first frame. Numbers in the message do not count, so
+ * <code>expected:&lt;1&gt; but was:&lt;2&gt;</code> and <code>expected:&lt;3&gt; but was:&lt;4&gt;</code> are the same
+ * error. Tests without a stack trace are grouped by their error details.
+ */
+public final class FailureClusters {
+  /**
+   * Clusters in the report, the biggest ones.
+   */
+  public static final int TOP = 10;
+
+  // tests and jobs kept per cluster to show what it is made of
+  private static final int EXAMPLES = 5;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final Comparator<Cluster> BY_SIZE = new Comparator<Cluster>() {
+    @Override
+    public int compare(Cluster c1, Cluster c2) {
+      return c1.testCount != c2.testCount ? (c1.testCount > c2.testCount ? -1 : 1) : c1.signature.compareTo(c2.signature);
+    }
+  };
+
+  private final Map<Long, Cluster> byError = new HashMap<Long, Cluster>();
+  private final TestIndex index = new TestIndex();
+  // by the number of the test in the index
+  private final List<Cluster> byTest = new ArrayList<Cluster>();
+  // signatures of the traces already seen, most traces are shared by several tests
+  private final Map<StackTrace, Long> traceSignatures = new IdentityHashMap<StackTrace, Long>();
+  private int failedTests;
+
+  public FailureClusters(JenkinsView view) {
+    this(view.getJobs());
+  }
+
+  public FailureClusters(Iterable<Job> jobs) {
+    for (Job job : jobs) {
+      if (job.isMatrix()) {
+        for (Job child : job.getChildren()) {
+          add(job, child);
+        }
+      }
+      else {
+        add(job, job);
+      }
+    }
+  }
+
+  private void add(Job job, Job configuration) {
+    final Build build = configuration.getLastCompletedBuild();
+    if (build == null || build.getTestReport() == null) {
+      return;
+    }
+
+    for (TestCase testCase : build.getTestReport().getTestCases()) {
+      failedTests++;
+
+      final long signature = signature(testCase);
+      Cluster error = byError.get(signature);
+      if (error == null) {
+        error = new Cluster(describe(testCase));
+        byError.put(signature, error);
+      }
+      error.add(job, testCase);
+
+      // the tests are numbered in the order they first failed
+      final int test = index.add(testCase);
+      if (test == byTest.size()) {
+        byTest.add(new Cluster(testCase.getClassName() + "." + testCase.getMethodName()));
+      }
+      byTest.get(test).add(job, testCase);
+    }
+  }
+
+  /**
+   * @return all failed tests that were grouped
+   */
+  public int getFailedTests() {
+    return failedTests;
+  }
+
+  /**
+   * @return the {@link #TOP} errors most tests failed with, only errors of more than one test
+   */
+  public List<Cluster> getTopErrors() {
+    return top(byError.values());
+  }
+
+  /**
+   * @return the {@link #TOP} tests that failed in the most jobs and configurations, only tests that
+   *         failed more than once
+   */
+  public List<Cluster> getTopTests() {
+    return top(byTest);
+  }
+
+  /**
+   * @return the number of distinct errors
+   */
+  public int getErrorCount() {
+    return byError.size();
+  }
+
+  private static List<Cluster> top(Collection<Cluster> clusters) {
+    final List<Cluster> shared = new ArrayList<Cluster>();
+    for (Cluster cluster : clusters) {
+      if (cluster.testCount > 1) {
+        shared.add(cluster);
+      }
+    }
+    Collections.sort(shared, BY_SIZE);
+    return shared.size() > TOP ? new ArrayList<Cluster>(shared.subList(0, TOP)) : shared;
+  }
+
+  private long signature(TestCase testCase) {
+    final StackTrace trace = testCase.getStackTrace();
+    if (trace == null) {
+      return normalize(testCase.getErrorDetails(), null);
+    }
+
+    Long signature = traceSignatures.get(trace);
+    if (signature == null) {
+      signature = normalize(trace.getText(), null);
+      traceSignatures.put(trace, signature);
+    }
+    return signature;
+  }
+
+  private static String describe(TestCase testCase) {
+    final StringBuilder description = new StringBuilder();
+    normalize(testCase.getStackTrace() != null ? testCase.getStackTrace().getText() : testCase.getErrorDetails(), description);
+    return description.toString();
+  }
+
+  /**
+   * Hashes the signature of the error with FNV-1a, collisions of the 64 bit hashes are unlikely
+   * enough to ignore.
+   *
+   * @param error a stack trace or the error details, may be <code>null</code>
+   * @param description receives the signature as text, <code>null</code> if only the hash is needed
+   */
+  static long normalize(String error, StringBuilder description) {
+    long hash = FNV_OFFSET_BASIS;
+    if (error == null) {
+      return hash;
+    }
+
+    final int end = signatureEnd(error);
+    final int messageEnd = error.indexOf('\n') < 0 ? end : error.indexOf('\n');
+    boolean inNumber = false;
+    boolean inBlank = false;
+    for (int i = 0; i < end; i++) {
+      char c = error.charAt(i);
+      // numbers in class and method names of the frame do count
+      if (Character.isDigit(c) && i < messageEnd) {
+        inBlank = false;
+        if (inNumber) {
+          continue;
+        }
+        inNumber = true;
+        c = '#';
+      }
+      else if (Character.isWhitespace(c)) {
+        if (inBlank) {
+          continue;
+        }
+        inBlank = true;
+        inNumber = false;
+        c = ' ';
+      }
+      else {
+        inNumber = false;
+        inBlank = false;
+      }
+
+      hash = (hash ^ c) * FNV_PRIME;
+      if (description != null) {
+        description.append(c);
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * @return the end of the first line and of the method of the first frame, which comes before
+   *         the file and line number
+   */
+  private static int signatureEnd(String error) {
+    final int firstLine = error.indexOf('\n');
+    if (firstLine < 0) {
+      return error.length();
+    }
+
+    final int frameStart = error.indexOf("at ", firstLine);
+    if (frameStart < 0) {
+      return firstLine;
+    }
+    final int frameEnd = error.indexOf('(', frameStart);
+    final int nextLine = error.indexOf('\n', frameStart);
+    if (frameEnd < 0 || nextLine >= 0 && nextLine < frameEnd) {
+      return nextLine < 0 ? error.length() : nextLine;
+    }
+    return frameEnd;
+  }
+
+  /**
+   * The failed tests with the same error or of the same test.
+   */
+  public static final class Cluster {
+    private final String signature;
+    private int testCount;
+    private int jobCount;
+    private Job lastJob;
+    private final List<Job> jobs = new ArrayList<Job>(1);
+    private final List<TestCase> testCases = new ArrayList<TestCase>(1);
+
+    Cluster(String signature) {
+      this.signature = signature;
+    }
+
+    void add(Job job, TestCase testCase) {
+      testCount++;
+      if (testCases.size() < EXAMPLES) {
+        testCases.add(testCase);
+      }
+      // the cases of a job are added one after another
+      if (job != lastJob) {
+        lastJob = job;
+        jobCount++;
+        if (jobs.size() < EXAMPLES) {
+          jobs.add(job);
+        }
+      }
+    }
+
+    /**
+     * @return the error signature or the class and method of the test
+     */
+    public String getSignature() {
+      return signature;
+    }
+
+    public int getTestCount() {
+      return testCount;
+    }
+
+    /**
+     * @return the number of top level jobs with failed tests in the cluster
+     */
+    public int getJobCount() {
+      return jobCount;
+    }
+
+    /**
+     * @return some of the jobs, in the order of the view
+     */
+    public List<Job> getJobs() {
+      return jobs;
+    }
+
+    /**
+     * @return some of the failed tests, in the order of the view
+     */
+    public List<TestCase> getTestCases() {
+      return testCases;
+    }
+  }
+}
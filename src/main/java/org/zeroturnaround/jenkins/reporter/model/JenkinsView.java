@@ -78,6 +78,14 @@ public class JenkinsView {
     return totalCount;
   }
 
+  /**
+   * @return the cases of the last builds of the jobs, indexed as the jobs are now. Build it once
+   *         the view has been crawled.
+   */
+  public TestIndex createTestIndex() {
+    return new TestIndex(jobs);
+  }
+
   public URI getUrl() {
     return url;
   }
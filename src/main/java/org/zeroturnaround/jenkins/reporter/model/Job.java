@@ -27,14 +27,14 @@ public class Job {
   public static class BadJobPredicate implements Predicate<Job>{
     @Override
     public boolean apply(Job job) {
-      return job.getFailCount() != 0 || job.isRed() || job.isYellow() || job.isAborted();
+      return !job.isUnavailable() && (job.getFailCount() != 0 || job.isRed() || job.isYellow() || job.isAborted());
     }
   }
 
   public static class GoodJobPredicate implements Predicate<Job>{
     @Override
     public boolean apply(Job job) {
-      return job.getFailCount() == 0 && (job.isGreen() || job.isDisabled());
+      return !job.isUnavailable() && job.getFailCount() == 0 && (job.isGreen() || job.isDisabled());
     }
   }
 
@@ -46,6 +46,7 @@ public class Job {
   private String name;
   private URI url;
   private Document configXml;
+  private String unavailableReason;
 
   public Document getConfigXml() {
     return configXml;
@@ -150,6 +151,21 @@ public class Job {
     return url;
   }
 
+  /**
+   * @return whether the last completed build or its test report could not be read from Jenkins
+   */
+  public boolean isUnavailable() {
+    return unavailableReason != null;
+  }
+
+  public String getUnavailableReason() {
+    return unavailableReason;
+  }
+
+  public void setUnavailableReason(String unavailableReason) {
+    this.unavailableReason = unavailableReason;
+  }
+
   public boolean isMatrix() {
     return children != null && !children.isEmpty();
   }
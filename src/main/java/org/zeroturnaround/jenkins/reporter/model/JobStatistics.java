@@ -0,0 +1,61 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+/**
+ * Test totals of a job, for matrix jobs the sums over the configurations. Part of a
+ * {@link ViewStatistics}.
+ */
+public final class JobStatistics {
+  private final int failCount;
+  private final int passCount;
+  private final int totalCount;
+  private final boolean matrix;
+
+  JobStatistics(int failCount, int passCount, int totalCount, boolean matrix) {
+    this.failCount = failCount;
+    this.passCount = passCount;
+    this.totalCount = totalCount;
+    this.matrix = matrix;
+  }
+
+  static JobStatistics of(TestReport report) {
+    if (report == null) {
+      return new JobStatistics(0, 0, 0, false);
+    }
+    return new JobStatistics(report.getFailCount(), report.getPassCount(), report.getTotalCount(), false);
+  }
+
+  public int getFailCount() {
+    return failCount;
+  }
+
+  public int getPassCount() {
+    return passCount;
+  }
+
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  public double getFailureRate() {
+    return (double) failCount / totalCount;
+  }
+
+  public boolean isMatrix() {
+    return matrix;
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The stack trace of a failed test, shared by all the tests that failed with the same trace. The id
+ * is a hash of the normalized trace: line endings, whitespace at the end of lines and identity hash
+ * codes such as <code>Foo@1b6d3586</code> do not count, so the same failure in several matrix
+ * configurations has the same id. The text is the one of the first test seen with it.
+ * <p>
+ * Long traces can be kept compressed, they are then inflated every time the text is read.
+ */
+public final class StackTrace implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // identity hash codes are at least this many hex digits after an @
+  private static final int MIN_IDENTITY_HASH_LENGTH = 6;
+
+  private final String id;
+  private final String text;
+  private final byte[] compressed;
+  private final int length;
+
+  StackTrace(String id, String text, boolean compress) {
+    this.id = id;
+    this.length = text.length();
+    if (compress) {
+      this.text = null;
+      this.compressed = deflate(text);
+    }
+    else {
+      this.text = text;
+      this.compressed = null;
+    }
+  }
+
+  /**
+   * A trace that is not shared with other tests, see {@link StackTraceStore} for shared ones.
+   */
+  public static StackTrace of(String text) {
+    return new StackTrace(id(text.toCharArray(), 0, text.length()), text, false);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getText() {
+    return text != null ? text : inflate(compressed, length);
+  }
+
+  /**
+   * @return the number of characters of the text
+   */
+  public int getLength() {
+    return length;
+  }
+
+  public boolean isCompressed() {
+    return compressed != null;
+  }
+
+  @Override
+  public String toString() {
+    return getText();
+  }
+
+  /**
+   * Hashes the normalized trace in <code>text[start..end)</code>.
+   */
+  static String id(char[] text, int start, int end) {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    int i = start;
+    while (i < end) {
+      final char c = text[i];
+      if (c == ' ' || c == '\t' || c == '\r') {
+        int blankEnd = i + 1;
+        while (blankEnd < end && (text[blankEnd] == ' ' || text[blankEnd] == '\t' || text[blankEnd] == '\r')) {
+          blankEnd++;
+        }
+        // blanks at the end of a line or of the trace are left out
+        if (blankEnd < end && text[blankEnd] != '\n') {
+          for (int j = i; j < blankEnd; j++) {
+            if (text[j] != '\r') {
+              hasher.putChar(text[j]);
+            }
+          }
+        }
+        i = blankEnd;
+        continue;
+      }
+
+      hasher.putChar(c);
+      i++;
+      if (c == '@') {
+        int hexEnd = i;
+        while (hexEnd < end && Character.digit(text[hexEnd], 16) >= 0) {
+          hexEnd++;
+        }
+        if (hexEnd - i >= MIN_IDENTITY_HASH_LENGTH && (hexEnd == end || isIdentityHashEnd(text[hexEnd]))) {
+          i = hexEnd;
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  // not the start of a host name as in an e-mail address
+  private static boolean isIdentityHashEnd(char c) {
+    return !Character.isLetterOrDigit(c) && c != '.' && c != '-';
+  }
+
+  private static byte[] deflate(String text) {
+    final Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(text.getBytes(Charsets.UTF_8));
+      deflater.finish();
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4 + 16);
+      final byte[] buffer = new byte[1024];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private static String inflate(byte[] compressed, int length) {
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      // UTF-8 takes at most 3 bytes for a char of the trace
+      byte[] bytes = new byte[length * 3];
+      int read = 0;
+      while (!inflater.finished()) {
+        if (read == bytes.length) {
+          bytes = Arrays.copyOf(bytes, bytes.length * 2 + 1);
+        }
+        final int inflated = inflater.inflate(bytes, read, bytes.length - read);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Truncated stack trace");
+        }
+        read += inflated;
+      }
+      return new String(bytes, 0, read, Charsets.UTF_8);
+    }
+    catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt stack trace", e);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Keeps a single copy of every stack trace read from the test reports, see {@link StackTrace} for
+ * which traces are the same. A trace is only held as long as a test case refers to it, so the store
+ * does not grow across the refreshes of a long running server. Thread safe.
+ */
+public class StackTraceStore {
+  /**
+   * Shorter traces are never compressed, it would not save enough to pay for the inflating.
+   */
+  public static final int MIN_COMPRESSED_LENGTH = 512;
+
+  private final ConcurrentMap<String, StackTrace> traces = new MapMaker().weakValues().makeMap();
+  private final boolean compress;
+  private final MetricsRegistry metrics;
+
+  /**
+   * @param compress whether traces of at least {@link #MIN_COMPRESSED_LENGTH} characters are kept
+   *          compressed
+   * @param metrics counts the new and the shared traces
+   */
+  public StackTraceStore(boolean compress, MetricsRegistry metrics) {
+    this.compress = compress;
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return the trace in <code>text[start..end)</code>, the text is only copied if the trace is new
+   */
+  public StackTrace intern(char[] text, int start, int end) {
+    final String id = StackTrace.id(text, start, end);
+    final StackTrace known = traces.get(id);
+    if (known != null) {
+      metrics.count("testReport.traces.shared", 1);
+      return known;
+    }
+    return add(new StackTrace(id, new String(text, start, end - start), compress && end - start >= MIN_COMPRESSED_LENGTH));
+  }
+
+  /**
+   * @return the copy of the trace already in the store, e.g. for traces of cached builds
+   */
+  public StackTrace intern(StackTrace trace) {
+    final StackTrace known = traces.get(trace.getId());
+    if (known != null) {
+      metrics.count("testReport.traces.shared", 1);
+      return known;
+    }
+    return add(trace);
+  }
+
+  /**
+   * Replaces the traces of the test report with the shared copies.
+   */
+  public void intern(TestReport report) {
+    for (TestCase testCase : report.getTestCases()) {
+      if (testCase.getStackTrace() != null) {
+        testCase.setStackTrace(intern(testCase.getStackTrace()));
+      }
+    }
+  }
+
+  private StackTrace add(StackTrace trace) {
+    final StackTrace raced = traces.putIfAbsent(trace.getId(), trace);
+    if (raced != null) {
+      metrics.count("testReport.traces.shared", 1);
+      return raced;
+    }
+    metrics.count("testReport.traces.new", 1);
+    return trace;
+  }
+}
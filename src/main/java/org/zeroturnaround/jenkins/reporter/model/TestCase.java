@@ -15,12 +15,19 @@
  */
 package org.zeroturnaround.jenkins.reporter.model;
 
-public class TestCase {
+import java.io.Serializable;
+
+public class TestCase implements Serializable {
+  // 2 since the stack trace is shared, older cached builds are read again
+  private static final long serialVersionUID = 2L;
+
   private Integer age;
   private String className;
   private String errorDetails;
-  private String errorStackTrace;
+  private StackTrace stackTrace;
   private String methodName, status;
+  private Float flipRate;
+  private boolean flaky;
 
   public Integer getAge() {
     return age;
@@ -34,8 +41,19 @@ public class TestCase {
     return errorDetails;
   }
 
+  /**
+   * @return the text of the stack trace
+   */
   public String getErrorStackTrace() {
-    return errorStackTrace;
+    return stackTrace == null ? null : stackTrace.getText();
+  }
+
+  /**
+   * @return the stack trace, the same object for all the tests with the same trace if they were read
+   *         through a {@link StackTraceStore}
+   */
+  public StackTrace getStackTrace() {
+    return stackTrace;
   }
 
   public String getMethodName() {
@@ -46,6 +64,21 @@ public class TestCase {
     return status;
   }
 
+  /**
+   * @return the share of the last builds in which the test went from passing to failing or back,
+   *         <code>null</code> if the earlier builds were not read
+   */
+  public Float getFlipRate() {
+    return flipRate;
+  }
+
+  /**
+   * @see TestFlips
+   */
+  public boolean isFlaky() {
+    return flaky;
+  }
+
   public void setAge(Integer age) {
     this.age = age;
   }
@@ -58,8 +91,15 @@ public class TestCase {
     this.errorDetails = errorDetails;
   }
 
+  /**
+   * Sets a stack trace that is not shared with other tests.
+   */
   public void setErrorStackTrace(String errorStackTrace) {
-    this.errorStackTrace = errorStackTrace;
+    this.stackTrace = errorStackTrace == null ? null : StackTrace.of(errorStackTrace);
+  }
+
+  public void setStackTrace(StackTrace stackTrace) {
+    this.stackTrace = stackTrace;
   }
 
   public void setMethodName(String methodName) {
@@ -69,4 +109,12 @@ public class TestCase {
   public void setStatus(String status) {
     this.status = status;
   }
+
+  public void setFlipRate(Float flipRate) {
+    this.flipRate = flipRate;
+  }
+
+  public void setFlaky(boolean flaky) {
+    this.flaky = flaky;
+  }
 }
\ No newline at end of file
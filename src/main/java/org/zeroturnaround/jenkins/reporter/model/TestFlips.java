@@ -0,0 +1,116 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Which tests of a job failed in its last builds, a bit per build, to tell flaky tests from ones
+ * that broke and stay broken. The test reports of the builds can be added in any order and dropped
+ * right after, only the tests that failed in one of the builds take memory.
+ */
+public class TestFlips {
+  public static final int MAX_BUILDS = 64;
+
+  /**
+   * A test is flaky if it went from passing to failing or back at least {@link #MIN_FLIPS} times
+   * and in at least this share of the builds.
+   */
+  public static final float FLAKY_FLIP_RATE = 0.3f;
+  public static final int MIN_FLIPS = 2;
+
+  // bit n is set for the build n builds before the last one, if it has a test report
+  private long builds;
+  private final Map<String, long[]> failures = new HashMap<String, long[]>();
+
+  /**
+   * @param age 0 for the last completed build, 1 for the one before it and so on
+   * @param failedCases the failed tests of the build
+   */
+  public synchronized void addBuild(int age, Iterable<TestCase> failedCases) {
+    if (age < 0 || age >= MAX_BUILDS) {
+      throw new IllegalArgumentException("Only the last " + MAX_BUILDS + " builds are counted, not " + age);
+    }
+
+    final long bit = 1L << age;
+    builds |= bit;
+    for (TestCase testCase : failedCases) {
+      final String key = key(testCase);
+      long[] failed = failures.get(key);
+      if (failed == null) {
+        failed = new long[1];
+        failures.put(key, failed);
+      }
+      failed[0] |= bit;
+    }
+  }
+
+  /**
+   * @return the builds with a test report
+   */
+  public synchronized int getBuildCount() {
+    return Long.bitCount(builds);
+  }
+
+  /**
+   * @return how many times the test went from passing to failing or back, from the oldest build to
+   *         the last one
+   */
+  public synchronized int getFlips(TestCase testCase) {
+    final long[] failed = failures.get(key(testCase));
+    if (failed == null) {
+      return 0;
+    }
+
+    int flips = 0;
+    int previous = -1;
+    for (int age = MAX_BUILDS - 1; age >= 0; age--) {
+      if ((builds & 1L << age) == 0) {
+        continue;
+      }
+      final int current = (failed[0] & 1L << age) == 0 ? 0 : 1;
+      if (previous >= 0 && current != previous) {
+        flips++;
+      }
+      previous = current;
+    }
+    return flips;
+  }
+
+  /**
+   * Sets the flip rate and flakiness of the failed tests of the last build.
+   */
+  public synchronized void mark(Iterable<TestCase> failedCases) {
+    final int transitions = getBuildCount() - 1;
+    for (TestCase testCase : failedCases) {
+      if (transitions < 1) {
+        testCase.setFlipRate(null);
+        testCase.setFlaky(false);
+        continue;
+      }
+
+      final int flips = getFlips(testCase);
+      final float flipRate = (float) flips / transitions;
+      testCase.setFlipRate(flipRate);
+      testCase.setFlaky(flips >= MIN_FLIPS && flipRate >= FLAKY_FLIP_RATE);
+    }
+  }
+
+  private static String key(TestCase testCase) {
+    return testCase.getClassName() + "." + testCase.getMethodName();
+  }
+}
@@ -0,0 +1,388 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The test cases of a report or a view indexed by test and by package, for looking them up and
+ * counting their failures in constant time instead of scanning all cases. Every class, method and
+ * package name is kept once and numbered, a test is the pair of the numbers of its class and method
+ * and the status and age of the cases are kept in int arrays, so that a suite of tens of thousands
+ * of tests takes a few arrays instead of a map entry and boxed numbers per case.
+ * <p>
+ * The index is built once, cases added to the report after that are not in it.
+ */
+public final class TestIndex {
+  /**
+   * The age of tests that have none, passed ones or ones read from an older Jenkins.
+   */
+  public static final int NO_AGE = -1;
+
+  // the failed statuses come last
+  private static final String[] STATUSES = { "PASSED", "SKIPPED", "FIXED", "FAILED", "REGRESSION" };
+  private static final int FIRST_FAILED = 3;
+  private static final int UNKNOWN_STATUS = -1;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Symbols classes = new Symbols();
+  private final Symbols methods = new Symbols();
+  private final Symbols packages = new Symbols();
+  // by class
+  private int[] classPackage = new int[INITIAL_CAPACITY];
+  // by package
+  private int[] packageFailures = new int[INITIAL_CAPACITY];
+
+  // the class number in the upper and the method number in the lower half
+  private final LongIntMap tests = new LongIntMap();
+  // by test, the cases of a test are chained from its first case through nextCase
+  private int[] testFailures = new int[INITIAL_CAPACITY];
+  private int[] testAge = new int[INITIAL_CAPACITY];
+  private int[] firstCase = new int[INITIAL_CAPACITY];
+  private int testCount;
+
+  // by case
+  private int[] caseStatus = new int[INITIAL_CAPACITY];
+  private int[] nextCase = new int[INITIAL_CAPACITY];
+  private TestCase[] cases = new TestCase[INITIAL_CAPACITY];
+  private int caseCount;
+
+  /**
+   * An empty index, the cases are added one by one with {@link #add(TestCase)}.
+   */
+  TestIndex() {
+  }
+
+  public TestIndex(TestReport report) {
+    addAll(report);
+  }
+
+  public TestIndex(JenkinsView view) {
+    this(view.getJobs());
+  }
+
+  /**
+   * Indexes the last builds of the jobs and of the configurations of matrix jobs.
+   */
+  public TestIndex(Iterable<Job> jobs) {
+    for (Job job : jobs) {
+      if (job.isMatrix()) {
+        for (Job child : job.getChildren()) {
+          addAll(child);
+        }
+      }
+      else {
+        addAll(job);
+      }
+    }
+  }
+
+  private void addAll(Job job) {
+    final Build build = job.getLastCompletedBuild();
+    if (build != null && build.getTestReport() != null) {
+      addAll(build.getTestReport());
+    }
+  }
+
+  private void addAll(TestReport report) {
+    for (TestCase testCase : report.getTestCases()) {
+      add(testCase);
+    }
+  }
+
+  /**
+   * @return the number of the test of the case, tests are numbered from 0 in the order they are
+   *         first added
+   */
+  int add(TestCase testCase) {
+    final int newClass = classes.size();
+    final int cls = classes.add(testCase.getClassName());
+    if (cls == newClass) {
+      classPackage = ensureCapacity(classPackage, cls);
+      classPackage[cls] = packages.add(packageOf(testCase.getClassName()));
+      packageFailures = ensureCapacity(packageFailures, classPackage[cls]);
+    }
+    final long key = (long) cls << 32 | methods.add(testCase.getMethodName());
+
+    int test = tests.get(key);
+    if (test < 0) {
+      test = testCount++;
+      tests.put(key, test);
+      testFailures = ensureCapacity(testFailures, test);
+      testAge = ensureCapacity(testAge, test);
+      firstCase = ensureCapacity(firstCase, test);
+      testAge[test] = NO_AGE;
+      firstCase[test] = -1;
+    }
+
+    final int c = caseCount++;
+    caseStatus = ensureCapacity(caseStatus, c);
+    nextCase = ensureCapacity(nextCase, c);
+    if (c == cases.length) {
+      cases = Arrays.copyOf(cases, c * 2);
+    }
+    cases[c] = testCase;
+    caseStatus[c] = status(testCase.getStatus());
+    nextCase[c] = firstCase[test];
+    firstCase[test] = c;
+
+    if (testCase.getAge() != null) {
+      testAge[test] = Math.max(testAge[test], testCase.getAge());
+    }
+    if (caseStatus[c] >= FIRST_FAILED) {
+      testFailures[test]++;
+      packageFailures[classPackage[cls]]++;
+    }
+    return test;
+  }
+
+  /**
+   * @return all indexed cases, a test that ran in several jobs has a case for each
+   */
+  public int getCaseCount() {
+    return caseCount;
+  }
+
+  /**
+   * @return the distinct tests, by class and method
+   */
+  public int getTestCount() {
+    return testCount;
+  }
+
+  /**
+   * @return the packages of the indexed tests, <code>""</code> for the default package
+   */
+  public List<String> getPackages() {
+    final List<String> names = new ArrayList<String>(packages.size());
+    for (int i = 0; i < packages.size(); i++) {
+      names.add(packages.name(i));
+    }
+    return names;
+  }
+
+  /**
+   * @return the failed cases of the tests in the package, not counting its subpackages
+   */
+  public int getFailureCount(String packageName) {
+    final int pkg = packages.get(packageName);
+    return pkg < 0 ? 0 : packageFailures[pkg];
+  }
+
+  /**
+   * @return the failed cases of the test, one per job or configuration it failed in
+   */
+  public int getFailureCount(String className, String methodName) {
+    final int test = test(className, methodName);
+    return test < 0 ? 0 : testFailures[test];
+  }
+
+  /**
+   * @return the highest age of the cases of the test, {@link #NO_AGE} if none of them has one
+   */
+  public int getAge(String className, String methodName) {
+    final int test = test(className, methodName);
+    return test < 0 ? NO_AGE : testAge[test];
+  }
+
+  /**
+   * @return the cases of the test, empty if it is not indexed
+   */
+  public List<TestCase> getTestCases(String className, String methodName) {
+    return cases(className, methodName, false);
+  }
+
+  /**
+   * @return the failed cases of the test, empty if it is not indexed
+   */
+  public List<TestCase> getFailedTestCases(String className, String methodName) {
+    return cases(className, methodName, true);
+  }
+
+  private List<TestCase> cases(String className, String methodName, boolean failedOnly) {
+    final int test = test(className, methodName);
+    if (test < 0) {
+      return Collections.emptyList();
+    }
+
+    final List<TestCase> result = new ArrayList<TestCase>();
+    for (int c = firstCase[test]; c >= 0; c = nextCase[c]) {
+      if (!failedOnly || caseStatus[c] >= FIRST_FAILED) {
+        result.add(cases[c]);
+      }
+    }
+    // the chain starts from the last case added
+    Collections.reverse(result);
+    return result;
+  }
+
+  private int test(String className, String methodName) {
+    final int cls = classes.get(className);
+    final int method = methods.get(methodName);
+    return cls < 0 || method < 0 ? -1 : tests.get((long) cls << 32 | method);
+  }
+
+  private static String packageOf(String className) {
+    final int dot = className == null ? -1 : className.lastIndexOf('.');
+    return dot < 0 ? "" : className.substring(0, dot);
+  }
+
+  private static int status(String status) {
+    for (int i = 0; i < STATUSES.length; i++) {
+      if (STATUSES[i].equals(status)) {
+        return i;
+      }
+    }
+    return UNKNOWN_STATUS;
+  }
+
+  private static int[] ensureCapacity(int[] array, int index) {
+    return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+  }
+
+  // spreads similar hash codes and keys over the table, the low bits pick the slot
+  private static int mix(int hash) {
+    final int h = hash * 0x9e3779b9;
+    return h ^ h >>> 16;
+  }
+
+  private static int mix(long key) {
+    return (int) (key * 0x9e3779b97f4a7c15L >>> 32);
+  }
+
+  /**
+   * Numbers names in the order they are added, looked up in an open addressed table of the numbers.
+   */
+  static final class Symbols {
+    private String[] names = new String[INITIAL_CAPACITY];
+    // number + 1 of the name in the slot, 0 for an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * @return the number of the name, a new one if the name has not been added
+     */
+    int add(String name) {
+      final int slot = slot(name);
+      if (slots[slot] != 0) {
+        return slots[slot] - 1;
+      }
+
+      if (size == names.length) {
+        names = Arrays.copyOf(names, size * 2);
+      }
+      names[size] = name;
+      slots[slot] = ++size;
+      // at most half full keeps the probe sequences short
+      if (size * 2 > slots.length) {
+        rehash(slots.length * 2);
+      }
+      return size - 1;
+    }
+
+    /**
+     * @return the number of the name, -1 if it has not been added
+     */
+    int get(String name) {
+      return slots[slot(name)] - 1;
+    }
+
+    String name(int id) {
+      return names[id];
+    }
+
+    int size() {
+      return size;
+    }
+
+    // the slot of the name or the empty slot it would go to
+    private int slot(String name) {
+      final int mask = slots.length - 1;
+      int slot = mix(name == null ? 0 : name.hashCode()) & mask;
+      while (slots[slot] != 0 && !equal(names[slots[slot] - 1], name)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void rehash(int capacity) {
+      slots = new int[capacity];
+      for (int id = 0; id < size; id++) {
+        slots[slot(names[id])] = id + 1;
+      }
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+
+  /**
+   * Maps longs to non-negative ints in an open addressed table, without boxing either.
+   */
+  static final class LongIntMap {
+    private long[] keys = new long[INITIAL_CAPACITY * 2];
+    // value + 1 of the key in the slot, 0 for an empty slot
+    private int[] values = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * @return the value of the key, -1 if it has none
+     */
+    int get(long key) {
+      return values[slot(key)] - 1;
+    }
+
+    void put(long key, int value) {
+      final int slot = slot(key);
+      if (values[slot] == 0) {
+        size++;
+      }
+      keys[slot] = key;
+      values[slot] = value + 1;
+      if (size * 2 > keys.length) {
+        rehash(keys.length * 2);
+      }
+    }
+
+    private int slot(long key) {
+      final int mask = keys.length - 1;
+      int slot = mix(key) & mask;
+      while (values[slot] != 0 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void rehash(int capacity) {
+      final long[] oldKeys = keys;
+      final int[] oldValues = values;
+      keys = new long[capacity];
+      values = new int[capacity];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldValues[i] != 0) {
+          final int slot = slot(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+  }
+}
@@ -17,14 +17,19 @@ package org.zeroturnaround.jenkins.reporter.model;
 
 import static com.google.common.collect.Lists.newArrayList;
 
+import java.io.Serializable;
 import java.util.Collection;
 
-public class TestReport {
+public class TestReport implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   private int failCount;
   private int passCount;
   private int skipCount;
   private Collection<TestCase> testCases = newArrayList();
   private int totalCount;
+  // built on first use, threads that race may each build one
+  private transient volatile TestIndex index;
 
   public int getFailCount() {
     return failCount;
@@ -60,6 +65,18 @@ public class TestReport {
     return testCases;
   }
 
+  /**
+   * @return the cases indexed by test and package, built on the first call
+   */
+  public TestIndex getIndex() {
+    TestIndex result = index;
+    if (result == null) {
+      result = new TestIndex(this);
+      index = result;
+    }
+    return result;
+  }
+
   public int getTotalCount() {
     return totalCount;
   }
@@ -78,6 +95,7 @@ public class TestReport {
 
   public void setTestCases(Collection<TestCase> testCases) {
     this.testCases = testCases;
+    this.index = null;
   }
 
   public void setTotalCount(int totalCount) {
@@ -0,0 +1,164 @@
+/**
+ *    Copyright (C) 2013 ZeroTurnaround LLC <support@zeroturnaround.com>
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.zeroturnaround.jenkins.reporter.model;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.zeroturnaround.jenkins.reporter.model.Job.BadJobPredicate;
+import org.zeroturnaround.jenkins.reporter.model.Job.GoodJobPredicate;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test totals of a view and its jobs, computed once so that rendering a report does not add up the
+ * test reports again for every row. Later changes to the view are not reflected.
+ */
+public final class ViewStatistics {
+  private final Map<Job, JobStatistics> jobs = new IdentityHashMap<Job, JobStatistics>();
+  private final Map<String, Integer> testsPerTrace = new HashMap<String, Integer>();
+  private final int failCount;
+  private final int testsTotal;
+  private final List<Job> failedJobs;
+  private final List<Job> passedJobs;
+  private final List<Job> unavailableJobs;
+
+  public ViewStatistics(JenkinsView view) {
+    this(view.getJobs());
+  }
+
+  /**
+   * Totals of some of the jobs of a view, e.g. of a single job that was just read.
+   */
+  public ViewStatistics(Iterable<Job> jobs) {
+    final BadJobPredicate bad = new BadJobPredicate();
+    final GoodJobPredicate good = new GoodJobPredicate();
+    final ImmutableList.Builder<Job> failed = ImmutableList.builder();
+    final ImmutableList.Builder<Job> passed = ImmutableList.builder();
+    final ImmutableList.Builder<Job> unavailable = ImmutableList.builder();
+
+    int viewFailCount = 0;
+    int viewTestsTotal = 0;
+    for (Job job : jobs) {
+      final JobStatistics statistics = add(job);
+      viewFailCount += statistics.getFailCount();
+      viewTestsTotal += statistics.getTotalCount();
+
+      if (bad.apply(job)) {
+        failed.add(job);
+      }
+      if (good.apply(job)) {
+        passed.add(job);
+      }
+      if (job.isUnavailable()) {
+        unavailable.add(job);
+      }
+    }
+
+    this.failCount = viewFailCount;
+    this.testsTotal = viewTestsTotal;
+    this.failedJobs = failed.build();
+    this.passedJobs = passed.build();
+    this.unavailableJobs = unavailable.build();
+  }
+
+  private JobStatistics add(Job job) {
+    final JobStatistics statistics;
+    if (job.isMatrix()) {
+      int childFailCount = 0;
+      int childPassCount = 0;
+      int childTotalCount = 0;
+      for (Job child : job.getChildren()) {
+        final JobStatistics childStatistics = add(child);
+        childFailCount += childStatistics.getFailCount();
+        childPassCount += childStatistics.getPassCount();
+        childTotalCount += childStatistics.getTotalCount();
+      }
+      statistics = new JobStatistics(childFailCount, childPassCount, childTotalCount, true);
+    }
+    else {
+      final Build build = job.getLastCompletedBuild();
+      final TestReport report = build == null ? null : build.getTestReport();
+      statistics = JobStatistics.of(report);
+      if (report != null) {
+        for (TestCase testCase : report.getTestCases()) {
+          if (testCase.getStackTrace() != null) {
+            final Integer tests = testsPerTrace.get(testCase.getStackTrace().getId());
+            testsPerTrace.put(testCase.getStackTrace().getId(), tests == null ? 1 : tests + 1);
+          }
+        }
+      }
+    }
+    jobs.put(job, statistics);
+    return statistics;
+  }
+
+  /**
+   * @return the totals of a job or matrix configuration of the view, <code>null</code> for other jobs
+   */
+  public JobStatistics of(Job job) {
+    return jobs.get(job);
+  }
+
+  /**
+   * @return the number of failed tests of the view with the same stack trace
+   */
+  public int testsWith(StackTrace trace) {
+    final Integer tests = testsPerTrace.get(trace.getId());
+    return tests == null ? 0 : tests;
+  }
+
+  public int getFailCount() {
+    return failCount;
+  }
+
+  public int getTestsTotal() {
+    return testsTotal;
+  }
+
+  public float getFailureRate() {
+    if (testsTotal != 0) {
+      return 100 * (float) failCount / testsTotal;
+    }
+    else {
+      return 0;
+    }
+  }
+
+  /**
+   * @return jobs with failed tests or a red, yellow or aborted build, in the order of the view
+   */
+  public List<Job> getFailedJobs() {
+    return failedJobs;
+  }
+
+  /**
+   * @return jobs without failed tests and a blue or disabled build, in the order of the view
+   */
+  public List<Job> getPassedJobs() {
+    return passedJobs;
+  }
+
+  /**
+   * @return jobs that could not be read from Jenkins, neither failed nor passed, in the order of the
+   *         view
+   */
+  public List<Job> getUnavailableJobs() {
+    return unavailableJobs;
+  }
+}
@@ -0,0 +1,113 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the counters and distributions of a run in memory for the summary at its end, and passes
+ * everything on to another registry that may for example send it to a monitoring system.
+ */
+public class CollectingMetrics implements MetricsRegistry {
+  private final MetricsRegistry delegate;
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+  public CollectingMetrics() {
+    this(NONE);
+  }
+
+  public CollectingMetrics(MetricsRegistry delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void count(String name, long delta) {
+    AtomicLong counter = counters.get(name);
+    if (counter == null) {
+      counters.putIfAbsent(name, new AtomicLong());
+      counter = counters.get(name);
+    }
+    counter.addAndGet(delta);
+    delegate.count(name, delta);
+  }
+
+  @Override
+  public void record(String name, long value) {
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      histograms.putIfAbsent(name, new Histogram());
+      histogram = histograms.get(name);
+    }
+    histogram.record(value);
+    delegate.record(name, value);
+  }
+
+  /**
+   * @return 0 if nothing was counted
+   */
+  public long getCount(String name) {
+    final AtomicLong counter = counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * @return <code>null</code> if nothing was recorded
+   */
+  public Histogram getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /**
+   * Writes the counters and a summary of every distribution as a JSON object, sorted by name.
+   */
+  public void writeJson(Writer out) throws IOException {
+    final JsonWriter json = new JsonWriter(out);
+    json.beginObject();
+
+    json.name("counters").beginObject();
+    for (Map.Entry<String, AtomicLong> counter : new TreeMap<String, AtomicLong>(counters).entrySet()) {
+      json.name(counter.getKey()).value(counter.getValue().get());
+    }
+    json.endObject();
+
+    json.name("histograms").beginObject();
+    for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+      final Histogram histogram = entry.getValue();
+      json.name(entry.getKey()).beginObject();
+      json.name("count").value(histogram.getCount());
+      json.name("sum").value(histogram.getSum());
+      json.name("mean").value(histogram.getMean());
+      json.name("p50").value(histogram.getPercentile(0.5));
+      json.name("p90").value(histogram.getPercentile(0.9));
+      json.name("p99").value(histogram.getPercentile(0.99));
+      json.name("max").value(histogram.getMax());
+      json.endObject();
+    }
+    json.endObject();
+
+    json.endObject();
+    json.flush();
+  }
+
+  /**
+   * One line per counter and distribution, for the log.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder summary = new StringBuilder();
+    for (Map.Entry<String, AtomicLong> counter : new TreeMap<String, AtomicLong>(counters).entrySet()) {
+      summary.append(String.format("%n  %-40s %d", counter.getKey(), counter.getValue().get()));
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+      final Histogram histogram = entry.getValue();
+      summary.append(String.format("%n  %-40s count %d, mean %.1f, p90 %d, max %d", entry.getKey(), histogram.getCount(), histogram.getMean(),
+          histogram.getPercentile(0.9), histogram.getMax()));
+    }
+    return summary.toString();
+  }
+}
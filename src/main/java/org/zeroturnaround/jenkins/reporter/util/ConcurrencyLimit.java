@@ -0,0 +1,214 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests in flight to Jenkins. An adaptive limit starts low, grows while responses are
+ * as fast as the fastest ones seen (doubling per round trip until the first sign of congestion,
+ * then by one per round trip) and shrinks when responses slow down (by a tenth) or Jenkins answers
+ * that it is overloaded (by half). The limit never exceeds the configured maximum.
+ * <p>
+ * An overloaded Jenkins also pauses all requests for the time it asks for with Retry-After.
+ * <p>
+ * Waiting requests park on a {@link Condition} rather than in a monitor, so that waiting virtual
+ * threads do not pin their carrier threads.
+ */
+public class ConcurrencyLimit {
+  private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimit.class); // NOSONAR
+
+  private static final int INITIAL_LIMIT = 4;
+
+  /**
+   * A response is slow if it takes this many times the baseline, plus {@link #LATENCY_SLACK_MILLIS}
+   * so that the jitter of very fast responses does not count.
+   */
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final long LATENCY_SLACK_MILLIS = 10;
+
+  // the baseline follows slower responses by this share so that a Jenkins that stays slower is
+  // not held at the minimum forever
+  private static final double BASELINE_DRIFT = 0.01;
+
+  private static final double LATENCY_BACKOFF = 0.9;
+  private static final double OVERLOAD_BACKOFF = 0.5;
+
+  private final int maxLimit;
+  private final boolean adaptive;
+  private final ReentrantLock lock = new ReentrantLock();
+  // signalled whenever another request may be sent
+  private final Condition changed = lock.newCondition();
+
+  private double limit;
+  private int inFlight;
+  private boolean slowStart = true;
+  private double baselineMillis = -1;
+  private long lastDecreaseNanos;
+  private long pausedUntilNanos;
+
+  private ConcurrencyLimit(int maxLimit, boolean adaptive) {
+    if (maxLimit < 1) {
+      throw new IllegalArgumentException("The limit has to be at least 1, not " + maxLimit);
+    }
+    this.maxLimit = maxLimit;
+    this.adaptive = adaptive;
+    this.limit = adaptive ? Math.min(INITIAL_LIMIT, maxLimit) : maxLimit;
+    this.lastDecreaseNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+  }
+
+  /**
+   * Always allows <code>limit</code> requests in flight, only Retry-After pauses them.
+   */
+  public static ConcurrencyLimit fixed(int limit) {
+    return new ConcurrencyLimit(limit, false);
+  }
+
+  public static ConcurrencyLimit adaptive(int maxLimit) {
+    return new ConcurrencyLimit(maxLimit, true);
+  }
+
+  /**
+   * Waits until another request may be sent. Every call has to be followed by {@link #release()}.
+   */
+  public void acquire() throws InterruptedException {
+    lock.lock();
+    try {
+      while (true) {
+        final long pausedMillis = TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime());
+        if (pausedMillis > 0) {
+          changed.await(pausedMillis, TimeUnit.MILLISECONDS);
+        }
+        else if (inFlight < (int) limit) {
+          inFlight++;
+          return;
+        }
+        else {
+          changed.await();
+        }
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Like {@link #acquire()}, but gives up after the given time.
+   *
+   * @return whether another request may be sent, only then it has to be followed by
+   *         {@link #release()}
+   */
+  public boolean tryAcquire(long timeoutMillis) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    lock.lock();
+    try {
+      while (true) {
+        final long pausedMillis = TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime());
+        final long leftMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (pausedMillis <= 0 && inFlight < (int) limit) {
+          inFlight++;
+          return true;
+        }
+        if (leftMillis <= 0) {
+          return false;
+        }
+        changed.await(pausedMillis > 0 ? Math.min(pausedMillis, leftMillis) : leftMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      changed.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param latencyMillis time until the headers of a response arrived
+   */
+  public void responded(long latencyMillis) {
+    if (!adaptive) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (baselineMillis < 0 || latencyMillis < baselineMillis) {
+        baselineMillis = latencyMillis;
+      }
+      else {
+        baselineMillis += (latencyMillis - baselineMillis) * BASELINE_DRIFT;
+      }
+
+      if (latencyMillis > baselineMillis * LATENCY_TOLERANCE + LATENCY_SLACK_MILLIS) {
+        decrease(LATENCY_BACKOFF, "responses slow down to " + latencyMillis + " ms");
+      }
+      // only grow when the limit is actually reached, otherwise it says nothing about Jenkins
+      else if (inFlight >= (int) limit && limit < maxLimit) {
+        limit = Math.min(maxLimit, slowStart ? limit + 1 : limit + 1 / limit);
+        changed.signalAll();
+        log.debug("Raised the concurrency limit to {}", getLimit());
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Jenkins answered 429 or 503.
+   *
+   * @param retryAfterMillis how long Jenkins asked to wait
+   */
+  public void overloaded(long retryAfterMillis) {
+    lock.lock();
+    try {
+      pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+      if (adaptive) {
+        decrease(OVERLOAD_BACKOFF, "Jenkins is overloaded");
+      }
+      log.info("Jenkins is overloaded, pausing requests for " + retryAfterMillis + " ms with at most " + getLimit() + " in flight");
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void decrease(double factor, String reason) {
+    slowStart = false;
+    // responses of requests sent before the last decrease do not count again
+    final long now = System.nanoTime();
+    if (now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos((long) Math.max(baselineMillis, 1))) {
+      return;
+    }
+    lastDecreaseNanos = now;
+
+    final double lowered = Math.max(1, limit * factor);
+    if ((int) lowered < (int) limit) {
+      log.info("Lowering the concurrency limit to " + (int) lowered + ", " + reason);
+    }
+    limit = lowered;
+  }
+}
@@ -0,0 +1,70 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values in power of two buckets, so that recording is a few atomic
+ * increments and the memory used does not grow with the number of values. Percentiles are the upper
+ * bound of the bucket they fall in, at most twice the real value.
+ */
+public class Histogram {
+  // bucket 0 holds 0, bucket i holds the values from 2^(i-1) to 2^i - 1
+  private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * @param value negative values are counted as 0
+   */
+  public void record(long value) {
+    final long v = Math.max(0, value);
+    buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+    count.incrementAndGet();
+    sum.addAndGet(v);
+
+    long current = max.get();
+    while (v > current && !max.compareAndSet(current, v)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long n = getCount();
+    return n == 0 ? 0 : (double) getSum() / n;
+  }
+
+  /**
+   * @param quantile between 0 and 1, e.g. 0.9 for the 90th percentile
+   */
+  public long getPercentile(double quantile) {
+    final long n = getCount();
+    if (n == 0) {
+      return 0;
+    }
+
+    final long rank = (long) Math.ceil(quantile * n);
+    long seen = 0;
+    for (int i = 0; i < Long.SIZE; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        final long upperBound = i == 0 ? 0 : (1L << i) - 1;
+        return Math.min(upperBound, getMax());
+      }
+    }
+    return getMax();
+  }
+}
@@ -0,0 +1,322 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers responses that carry an ETag or Last-Modified header so that the same URL can be
+ * requested conditionally and a 304 answered from the cache. Entries live in a memory LRU bounded by
+ * size and, if a directory is given, also on disk where they survive between runs.
+ */
+public class HttpResponseCache {
+  private static final Logger log = LoggerFactory.getLogger(HttpResponseCache.class); // NOSONAR
+
+  /**
+   * Responses bigger than this are passed through without caching them.
+   */
+  public static final int MAX_ENTRY_BYTES = 16 * 1024 * 1024;
+
+  private final long maxMemoryBytes;
+  private final File directory;
+
+  private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private long memoryBytes;
+
+  /**
+   * @param maxMemoryBytes total size of the response bodies kept in memory
+   * @param directory where entries are kept between runs, <code>null</code> for memory only
+   */
+  public HttpResponseCache(long maxMemoryBytes, File directory) {
+    if (directory != null) {
+      try {
+        FileUtils.forceMkdir(directory);
+      }
+      catch (IOException e) {
+        throw new IllegalArgumentException("Could not create directory " + directory, e);
+      }
+    }
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.directory = directory;
+  }
+
+  /**
+   * Adds the validators of the cached response, if any, to the request.
+   */
+  public void prepare(HttpGet get) {
+    final Entry entry = get(get.getURI().toASCIIString());
+    if (entry == null) {
+      return;
+    }
+
+    if (entry.eTag != null) {
+      get.addHeader("If-None-Match", entry.eTag);
+    }
+    if (entry.lastModified != null) {
+      get.addHeader("If-Modified-Since", entry.lastModified);
+    }
+  }
+
+  /**
+   * @return the response to hand on, the cached one if the server answered 304 and otherwise the
+   *         given response whose body is copied into the cache while it is read
+   */
+  public HttpResponse process(final String uri, HttpResponse response) {
+    final int status = response.getStatusLine().getStatusCode();
+    if (status == HttpStatus.SC_NOT_MODIFIED) {
+      final Entry entry = get(uri);
+      if (entry != null) {
+        log.trace("{} has not been modified, using the cached response", uri);
+        final BasicHttpResponse cached = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        cached.setEntity(new ByteArrayEntity(entry.body));
+        return cached;
+      }
+    }
+
+    if (status != HttpStatus.SC_OK || response.getEntity() == null) {
+      return response;
+    }
+
+    final String eTag = headerValue(response, "ETag");
+    final String lastModified = headerValue(response, "Last-Modified");
+    if (eTag == null && lastModified == null) {
+      return response;
+    }
+
+    final long length = response.getEntity().getContentLength();
+    if (length > MAX_ENTRY_BYTES) {
+      return response;
+    }
+
+    response.setEntity(new HttpEntityWrapper(response.getEntity()) {
+      private InputStream content;
+
+      // the same stream every time, it is asked for again to consume whatever was not read
+      @Override
+      public synchronized InputStream getContent() throws IOException {
+        if (content == null) {
+          content = new RecordingInputStream(super.getContent(), uri, eTag, lastModified);
+        }
+        return content;
+      }
+    });
+    return response;
+  }
+
+  private Entry get(String uri) {
+    synchronized (memory) {
+      final Entry entry = memory.get(uri);
+      if (entry != null) {
+        return entry;
+      }
+    }
+
+    if (directory == null) {
+      return null;
+    }
+
+    final File file = getFile(uri);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      final Entry entry = (Entry) in.readObject();
+      // the file name is a hash, make sure it really is the same URL
+      if (!uri.equals(entry.uri)) {
+        return null;
+      }
+      remember(entry);
+      return entry;
+    }
+    catch (IOException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return null;
+    }
+    catch (ClassNotFoundException e) {
+      log.debug("Ignoring unreadable cache entry " + file, e);
+      return null;
+    }
+    finally {
+      IOUtils.closeQuietly((InputStream) in);
+    }
+  }
+
+  private void put(Entry entry) {
+    remember(entry);
+
+    if (directory == null) {
+      return;
+    }
+
+    final File file = getFile(entry.uri);
+    final File tmpFile = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      out.writeObject(entry);
+      out.close();
+
+      FileUtils.deleteQuietly(file);
+      if (!tmpFile.renameTo(file)) {
+        throw new IOException("Could not rename " + tmpFile + " to " + file);
+      }
+    }
+    catch (IOException e) {
+      log.warn("Could not cache the response of " + entry.uri, e);
+    }
+    finally {
+      IOUtils.closeQuietly((OutputStream) out);
+      FileUtils.deleteQuietly(tmpFile);
+    }
+  }
+
+  private void remember(Entry entry) {
+    if (entry.body.length > maxMemoryBytes) {
+      return;
+    }
+
+    synchronized (memory) {
+      final Entry previous = memory.put(entry.uri, entry);
+      if (previous != null) {
+        memoryBytes -= previous.body.length;
+      }
+      memoryBytes += entry.body.length;
+
+      // least recently used entries go first
+      for (Iterator<Map.Entry<String, Entry>> iter = memory.entrySet().iterator(); memoryBytes > maxMemoryBytes && iter.hasNext();) {
+        memoryBytes -= iter.next().getValue().body.length;
+        iter.remove();
+      }
+    }
+  }
+
+  private File getFile(String uri) {
+    return new File(directory, Hashing.sha1().hashString(uri, Charsets.UTF_8).toString() + ".response");
+  }
+
+  private static String headerValue(HttpResponse response, String name) {
+    final Header header = response.getFirstHeader(name);
+    return header == null ? null : header.getValue();
+  }
+
+  private static final class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String uri;
+    private final String eTag;
+    private final String lastModified;
+    private final byte[] body;
+
+    Entry(String uri, String eTag, String lastModified, byte[] body) {
+      this.uri = uri;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.body = body;
+    }
+  }
+
+  /**
+   * Copies the body into the cache while the consumer reads it. Nothing is stored if the body turns
+   * out to be too big or is not read to the end.
+   */
+  private final class RecordingInputStream extends FilterInputStream {
+    private final String uri;
+    private final String eTag;
+    private final String lastModified;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    RecordingInputStream(InputStream in, String uri, String eTag, String lastModified) {
+      super(in);
+      this.uri = uri;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b == -1) {
+        complete();
+      }
+      else if (copy != null) {
+        copy.write(b);
+        checkSize();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int count = super.read(b, off, len);
+      if (count == -1) {
+        complete();
+      }
+      else if (copy != null) {
+        copy.write(b, off, count);
+        checkSize();
+      }
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        // parsers may stop before the end of the document, read the rest so that it can be cached
+        if (copy != null) {
+          final byte[] buffer = new byte[8192];
+          while (copy != null && read(buffer, 0, buffer.length) != -1) {
+            // keep reading
+          }
+        }
+      }
+      finally {
+        super.close();
+      }
+    }
+
+    private void checkSize() {
+      if (copy.size() > MAX_ENTRY_BYTES) {
+        copy = null;
+      }
+    }
+
+    private void complete() {
+      if (copy != null) {
+        put(new Entry(uri, eTag, lastModified, copy.toByteArray()));
+        copy = null;
+      }
+    }
+  }
+}
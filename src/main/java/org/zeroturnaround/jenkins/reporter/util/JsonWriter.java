@@ -0,0 +1,143 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+
+/**
+ * Writes JSON to a stream one token at a time, adding the commas between members and elements.
+ */
+public class JsonWriter {
+  private final Writer out;
+
+  // whether the object or array at each nesting depth already has a member
+  private final BitSet hasMember = new BitSet();
+  private int depth;
+  private boolean afterName;
+
+  public JsonWriter(Writer out) {
+    this.out = out;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    return open('{');
+  }
+
+  public JsonWriter endObject() throws IOException {
+    return close('}');
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    return open('[');
+  }
+
+  public JsonWriter endArray() throws IOException {
+    return close(']');
+  }
+
+  public JsonWriter name(String name) throws IOException {
+    separate();
+    string(name);
+    out.write(':');
+    afterName = true;
+    return this;
+  }
+
+  public JsonWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    separate();
+    string(value);
+    return this;
+  }
+
+  public JsonWriter value(long value) throws IOException {
+    separate();
+    out.write(Long.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return nullValue();
+    }
+    separate();
+    out.write(Double.toString(value));
+    return this;
+  }
+
+  public JsonWriter value(boolean value) throws IOException {
+    separate();
+    out.write(value ? "true" : "false");
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    separate();
+    out.write("null");
+    return this;
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private JsonWriter open(char bracket) throws IOException {
+    separate();
+    out.write(bracket);
+    depth++;
+    hasMember.clear(depth);
+    return this;
+  }
+
+  private JsonWriter close(char bracket) throws IOException {
+    depth--;
+    out.write(bracket);
+    return this;
+  }
+
+  private void separate() throws IOException {
+    if (afterName) {
+      // the value of a member
+      afterName = false;
+      return;
+    }
+    if (hasMember.get(depth)) {
+      out.write(',');
+    }
+    hasMember.set(depth);
+  }
+
+  private void string(String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            out.write(String.format("\\u%04x", (int) c));
+          }
+          else {
+            out.write(c);
+          }
+      }
+    }
+    out.write('"');
+  }
+}
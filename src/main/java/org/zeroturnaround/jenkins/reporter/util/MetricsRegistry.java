@@ -0,0 +1,32 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+/**
+ * Receives the numbers measured while crawling Jenkins and rendering reports. Implementations are
+ * called from the fetch threads and have to be thread safe.
+ * <p>
+ * Names are dot separated, e.g. <code>http.latency.testReport</code>, see the README for the list.
+ */
+public interface MetricsRegistry {
+  /**
+   * Drops everything.
+   */
+  MetricsRegistry NONE = new MetricsRegistry() {
+    @Override
+    public void count(String name, long delta) {
+    }
+
+    @Override
+    public void record(String name, long value) {
+    }
+  };
+
+  /**
+   * Adds to a counter, e.g. the number of requests made.
+   */
+  void count(String name, long delta);
+
+  /**
+   * Adds a measurement to a distribution, e.g. the latency of a single request in milliseconds.
+   */
+  void record(String name, long value);
+}
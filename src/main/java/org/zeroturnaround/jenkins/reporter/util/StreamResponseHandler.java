@@ -0,0 +1,42 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+
+/**
+ * Hands the body of a successful response to {@link #handleStream(InputStream)} and closes it
+ * afterwards.
+ */
+public abstract class StreamResponseHandler<T> implements ResponseHandler<T> {
+
+  @Override
+  public T handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+    int status = response.getStatusLine().getStatusCode();
+    if (status != HttpStatus.SC_OK) {
+      throw new HttpResponseException(status, "200 status code expected but was " + status);
+    }
+
+    HttpEntity entity = response.getEntity();
+    if (entity == null) {
+      throw new ClientProtocolException("Response entity is null");
+    }
+
+    InputStream stream = entity.getContent();
+    try {
+      return handleStream(stream);
+    }
+    finally {
+      IOUtils.closeQuietly(stream);
+    }
+  }
+
+  protected abstract T handleStream(InputStream stream) throws IOException;
+}
@@ -0,0 +1,92 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Counts the bytes of response bodies as they arrive over the wire and after the content encoding
+ * has been undone, to see what compression saves.
+ */
+public class TransferStatistics {
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong wireBytes = new AtomicLong();
+  private final AtomicLong decodedBytes = new AtomicLong();
+
+  /**
+   * @return interceptor to register before the content decoding one
+   */
+  public HttpResponseInterceptor wireCounter() {
+    return new CountingInterceptor(wireBytes);
+  }
+
+  /**
+   * @return interceptor to register after the content decoding one
+   */
+  public HttpResponseInterceptor decodedCounter() {
+    return new CountingInterceptor(decodedBytes) {
+      @Override
+      public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+        responses.incrementAndGet();
+        super.process(response, context);
+      }
+    };
+  }
+
+  public long getResponses() {
+    return responses.get();
+  }
+
+  public long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  public long getDecodedBytes() {
+    return decodedBytes.get();
+  }
+
+  @Override
+  public String toString() {
+    final long wire = getWireBytes();
+    final long decoded = getDecodedBytes();
+    return String.format("%d responses, %d KB transferred, %d KB uncompressed (%.1fx)", getResponses(), wire / 1024, decoded / 1024, wire == 0 ? 1.0 : (double) decoded / wire);
+  }
+
+  private static class CountingInterceptor implements HttpResponseInterceptor {
+    private final AtomicLong counter;
+
+    CountingInterceptor(AtomicLong counter) {
+      this.counter = counter;
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+      final HttpEntity entity = response.getEntity();
+      if (entity == null) {
+        return;
+      }
+
+      response.setEntity(new HttpEntityWrapper(entity) {
+        @Override
+        public InputStream getContent() throws IOException {
+          return new ProxyInputStream(super.getContent()) {
+            @Override
+            protected void afterRead(int n) {
+              if (n > 0) {
+                counter.addAndGet(n);
+              }
+            }
+          };
+        }
+      });
+    }
+  }
+}
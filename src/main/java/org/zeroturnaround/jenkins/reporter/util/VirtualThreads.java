@@ -0,0 +1,55 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates executors that run every task on a virtual thread of its own. The factory method is looked
+ * up reflectively so that the reporter keeps building for and running on versions before Java 21,
+ * where {@link #isAvailable()} tells callers to use something else.
+ */
+public final class VirtualThreads {
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class); // NOSONAR
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+  private VirtualThreads() {
+  }
+
+  public static boolean isAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * @throws IllegalStateException if there are no virtual threads, see {@link #isAvailable()}
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      throw new IllegalStateException("Virtual threads need Java 21, this is Java " + System.getProperty("java.version"));
+    }
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+    }
+    catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static Method findFactoryMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    }
+    catch (NoSuchMethodException e) {
+      log.debug("No virtual threads before Java 21");
+      return null;
+    }
+  }
+}
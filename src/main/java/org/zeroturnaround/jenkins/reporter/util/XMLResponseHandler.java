@@ -4,39 +4,38 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.ResponseHandler;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
-public class XMLResponseHandler implements ResponseHandler<Document>{
-  private final DocumentBuilder builder;
-
-  public XMLResponseHandler(DocumentBuilder builder) {
-    this.builder = builder;
+/**
+ * Parses response bodies into DOM documents. DocumentBuilder instances are not thread safe so every
+ * thread gets its own builder from the factory.
+ */
+public class XMLResponseHandler extends StreamResponseHandler<Document> {
+  private final ThreadLocal<DocumentBuilder> builders;
+
+  public XMLResponseHandler(final DocumentBuilderFactory factory) {
+    this.builders = new ThreadLocal<DocumentBuilder>() {
+      @Override
+      protected DocumentBuilder initialValue() {
+        try {
+          return factory.newDocumentBuilder();
+        }
+        catch (ParserConfigurationException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
   }
 
   @Override
-  public Document handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
-    int status = response.getStatusLine().getStatusCode();
-    if (status != HttpStatus.SC_OK) {
-      throw new HttpResponseException(status, "200 status code expected but was " + status);
-    }
-
-    HttpEntity entity = response.getEntity();
-    if (entity == null) {
-      throw new ClientProtocolException("Response entity is null");
-    }
-
-    InputStream stream = entity.getContent();
+  protected Document handleStream(InputStream stream) throws IOException {
     try {
-      return builder.parse(entity.getContent());
+      return builders.get().parse(stream);
     }
     catch (IllegalStateException e) {
       throw new ClientProtocolException(e);
@@ -44,9 +43,6 @@ public class XMLResponseHandler implements ResponseHandler<Document>{
     catch (SAXException e) {
       throw new ClientProtocolException(e);
     }
-    finally {
-      IOUtils.closeQuietly(stream);
-    }
   }
 
 }
@@ -0,0 +1,86 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+public class BuildCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCachedBuildSurvivesNewInstance() throws Exception {
+    URI jobUrl = new URI("http://jenkins.example.com/job/core-build/");
+    new BuildCache(folder.getRoot()).put(jobUrl, createBuild(42));
+
+    Build cached = new BuildCache(folder.getRoot()).get(jobUrl, 42);
+
+    assertNotNull(cached);
+    assertEquals(42, cached.getId());
+    assertEquals(new Date(1380535200000L), cached.getTimestamp());
+    assertEquals(1, cached.getTestReport().getFailCount());
+    assertEquals("testLogin", cached.getTestReport().getTestCases().iterator().next().getMethodName());
+  }
+
+  @Test
+  public void testNewBuildNumberMisses() throws Exception {
+    URI jobUrl = new URI("http://jenkins.example.com/job/core-build/");
+    BuildCache cache = new BuildCache(folder.getRoot());
+    cache.put(jobUrl, createBuild(42));
+
+    assertNull(cache.get(jobUrl, 43));
+    assertNull(cache.get(new URI("http://jenkins.example.com/job/other/"), 42));
+  }
+
+  @Test
+  public void testEarlierBuildsAreReplaced() throws Exception {
+    URI jobUrl = new URI("http://jenkins.example.com/job/core-build/");
+    BuildCache cache = new BuildCache(folder.getRoot());
+    Map<Integer, Build> builds = new HashMap<Integer, Build>();
+    builds.put(40, createBuild(40));
+    builds.put(41, createBuild(41));
+    cache.putEarlierBuilds(jobUrl, builds);
+
+    builds.remove(40);
+    builds.put(42, createBuild(42));
+    cache.putEarlierBuilds(jobUrl, builds);
+
+    assertEquals(new HashSet<Integer>(Arrays.asList(41, 42)), new BuildCache(folder.getRoot()).getEarlierBuilds(jobUrl).keySet());
+    assertEquals("testLogin", cache.getEarlierBuilds(jobUrl).get(42).getTestReport().getTestCases().iterator().next().getMethodName());
+    assertTrue(cache.getEarlierBuilds(new URI("http://jenkins.example.com/job/other/")).isEmpty());
+    // one file for the job however many builds it went through
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  private static Build createBuild(int number) throws Exception {
+    TestCase testCase = new TestCase();
+    testCase.setClassName("com.example.LoginTest");
+    testCase.setMethodName("testLogin");
+    testCase.setStatus("FAILED");
+    testCase.setAge(1);
+
+    TestReport report = new TestReport();
+    report.setFailCount(1);
+    report.setTotalCount(10);
+    report.getTestCases().add(testCase);
+
+    Build build = new Build();
+    build.setId(number);
+    build.setUrl(new URI("http://jenkins.example.com/job/core-build/" + number + "/"));
+    build.setTimestamp(new Date(1380535200000L));
+    build.setTestReport(report);
+    return build;
+  }
+}
@@ -0,0 +1,142 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+public class BuildHistoryTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Date now = new Date();
+
+  @Test
+  public void testFailuresOfLastBuilds() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 10, 90);
+    history.record(Arrays.asList(createJob("core", 1, "testLogin")), now);
+    history.record(Arrays.asList(createJob("core", 2)), now);
+    Job job = createJob("core", 3, "testLogin", "testLogout");
+    history.record(Arrays.asList(job), now);
+    // reported again, e.g. in another view
+    history.record(Arrays.asList(job), now);
+
+    assertEquals(3, history.getBuildCount(job));
+    assertEquals(2, history.getFailureCount(job));
+    assertEquals(2, history.getFailureCount(job, testCase("testLogin")));
+    assertEquals(1, history.getFailureCount(job, testCase("testLogout")));
+    assertEquals(0, history.getFailureCount(job, testCase("testUnknown")));
+    assertEquals(0, history.getBuildCount(createJob("other", 3)));
+  }
+
+  @Test
+  public void testSurvivesNewInstance() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 2, 90);
+    for (int build = 1; build <= 3; build++) {
+      history.record(Arrays.asList(createJob("core", build, "testLogin"), createJob("plugins", build)), now);
+    }
+
+    history = new BuildHistory(folder.getRoot(), 2, 90);
+    Job job = createJob("core", 3, "testLogin");
+    history.record(Arrays.asList(job), now);
+
+    // only the last two builds count
+    assertEquals(2, history.getBuildCount(job));
+    assertEquals(2, history.getFailureCount(job, testCase("testLogin")));
+    assertEquals(0, history.getFailureCount(createJob("plugins", 3)));
+  }
+
+  @Test
+  public void testMatrixConfigurations() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 10, 90);
+    Job matrix = createJob("matrix", 1);
+    Job child = createJob("matrix/jdk=6", 1, "testLogin");
+    matrix.setChildren(Arrays.asList(child, createJob("matrix/jdk=7", 1)));
+    history.record(Arrays.asList(matrix), now);
+
+    assertEquals(1, history.getFailureCount(child, testCase("testLogin")));
+    assertEquals(0, history.getFailureCount(createJob("matrix/jdk=7", 1), testCase("testLogin")));
+  }
+
+  @Test
+  public void testManyFailedTests() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 10, 90);
+    String[] names = new String[500];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = "test" + i;
+    }
+    // a few tests are kept as numbers, many as a bitset
+    history.record(Arrays.asList(createJob("core", 1, "test7", "test400")), now);
+    Job job = createJob("core", 2, names);
+    history.record(Arrays.asList(job), now);
+
+    assertEquals(2, history.getFailureCount(job, testCase("test7")));
+    assertEquals(2, history.getFailureCount(job, testCase("test400")));
+    assertEquals(1, history.getFailureCount(job, testCase("test499")));
+  }
+
+  @Test
+  public void testOldRunsAreDropped() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 10, 90);
+    history.record(Arrays.asList(createJob("core", 1, "testLogin")), new Date(now.getTime() - 100L * 24 * 3600 * 1000));
+    history.record(Arrays.asList(createJob("core", 2, "testLogin")), now);
+
+    history = new BuildHistory(folder.getRoot(), 10, 90);
+    assertEquals(1, history.getBuildCount(createJob("core", 2)));
+  }
+
+  @Test
+  public void testPartlyWrittenRunIsDropped() throws Exception {
+    BuildHistory history = new BuildHistory(folder.getRoot(), 10, 90);
+    history.record(Arrays.asList(createJob("core", 1, "testLogin")), now);
+    FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), "runs.bin"), true);
+    out.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+    out.close();
+
+    history = new BuildHistory(folder.getRoot(), 10, 90);
+    Job job = createJob("core", 2, "testLogin");
+    history.record(Arrays.asList(job), now);
+
+    assertEquals(2, history.getBuildCount(job));
+    assertEquals(2, history.getFailureCount(job, testCase("testLogin")));
+  }
+
+  private static Job createJob(String name, int buildNumber, String... failedTests) {
+    TestReport report = new TestReport();
+    for (String failedTest : failedTests) {
+      report.getTestCases().add(testCase(failedTest));
+    }
+    report.setFailCount(failedTests.length);
+    report.setTotalCount(1000);
+
+    Build build = new Build();
+    build.setId(buildNumber);
+    build.setTestReport(report);
+
+    Job job = new Job();
+    job.setName(name);
+    job.setUrl(URI.create("http://jenkins.example.com/job/" + name + "/"));
+    job.setColor(failedTests.length == 0 ? "blue" : "yellow");
+    job.setLastCompletedBuild(build);
+    return job;
+  }
+
+  private static TestCase testCase(String methodName) {
+    TestCase testCase = new TestCase();
+    testCase.setStatus("FAILED");
+    testCase.setClassName("com.example.LoginTest");
+    testCase.setMethodName(methodName);
+    return testCase;
+  }
+}
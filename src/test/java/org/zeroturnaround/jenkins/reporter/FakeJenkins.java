@@ -0,0 +1,727 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the parts of the Jenkins remote API that the reporter reads for a synthetic view, so that
+ * the crawler can be run and measured without a real Jenkins. More views over ranges of the same
+ * jobs can be added with {@link #view(String, int, int)}.
+ * <p>
+ * The view <code>/view/{name}/</code> has jobs named <code>job-0</code>, <code>job-1</code>, ... of
+ * which the first ones are matrix jobs with configurations <code>axis=0</code>, <code>axis=1</code>
+ * ... Every job and configuration has build number {@link #BUILD_NUMBER} until it is rebuilt with
+ * {@link #rebuild(int)}. Even jobs have failing
+ * tests, odd ones pass. The test reports of the earlier builds are the same, except that the
+ * second failing test only fails in builds with an even number. Which builds and test reports answer 404 only depends on their path, so the
+ * outcome is the same for every run.
+ */
+public class FakeJenkins {
+  public static final int BUILD_NUMBER = 42;
+
+  public static final String VIEW = "view";
+  public static final String JOBS = "jobs";
+  public static final String CONFIGURATIONS = "configurations";
+  public static final String BUILD = "build";
+  public static final String TEST_REPORT = "testReport";
+  public static final String FILTERED_TEST_REPORT = "filteredTestReport";
+  public static final String EARLIER_TEST_REPORT = "earlierTestReport";
+  public static final String NOT_FOUND = "notFound";
+  public static final String OVERLOADED = "overloaded";
+  public static final String BAD_GATEWAY = "badGateway";
+  public static final String ERROR = "error";
+  public static final String GARBLED = "garbled";
+
+  // the only exclude queries on test reports that are understood, keeping cases of the given statuses
+  private static final Pattern EXCLUDE_CASES = Pattern.compile("//case(\\[status!='[A-Z]+'\\])+");
+  private static final Pattern EXCLUDED_STATUS = Pattern.compile("status!='([A-Z]+)'");
+
+  private String viewName = "Synthetic";
+  private volatile int jobs = 10;
+  private int matrixJobs = 0;
+  private int matrixChildren = 3;
+  private int passedTests = 20;
+  private int failedTests = 2;
+  private int stackTraceLines = 20;
+  private long latencyMillis = 0;
+  private int notFoundPercentage = 0;
+  private int overloadedAbove = Integer.MAX_VALUE;
+  private String retryAfter;
+  private int badGatewaysPerPath = 0;
+  private Set<String> brokenJobs = Collections.emptySet();
+  private volatile int treeQueryStatus = 200;
+  private boolean refuseExcludes = false;
+  private Set<String> brokenTestReports = Collections.emptySet();
+  private int brokenTestReportStatus;
+  private Set<String> garbledJobs = Collections.emptySet();
+  private int brokenEarlierBuild;
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+  private final Map<String, AtomicInteger> requestsPerPath = new ConcurrentHashMap<String, AtomicInteger>();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // whether the request of the handler thread is still in flight
+  private final ThreadLocal<AtomicBoolean> inFlightRequest = new ThreadLocal<AtomicBoolean>();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final Map<String, Integer> buildNumbers = new ConcurrentHashMap<String, Integer>();
+  // first and last job (exclusive) of the views other than the main one
+  private final Map<String, int[]> views = new ConcurrentHashMap<String, int[]>();
+
+  public FakeJenkins viewName(String viewName) {
+    this.viewName = viewName;
+    return this;
+  }
+
+  /**
+   * Adds a view of the jobs from <code>firstJob</code> up to but not including <code>endJob</code>.
+   */
+  public FakeJenkins view(String name, int firstJob, int endJob) {
+    views.put(name, new int[] { firstJob, endJob });
+    return this;
+  }
+
+  /**
+   * Can also be changed while running, jobs are added to or removed from the end of the view.
+   */
+  public FakeJenkins jobs(int jobs) {
+    this.jobs = jobs;
+    return this;
+  }
+
+  /**
+   * Gives the job, and its configurations if it is a matrix job, a new last completed build.
+   */
+  public void rebuild(int job) {
+    final String jobPath = "job-" + job;
+    buildNumbers.put(jobPath, getBuildNumber(jobPath) + 1);
+    if (isMatrix(job)) {
+      for (int child = 0; child < matrixChildren; child++) {
+        buildNumbers.put(jobPath + "/axis=" + child, getBuildNumber(jobPath + "/axis=" + child) + 1);
+      }
+    }
+  }
+
+  /**
+   * @param jobPath <code>job-1</code> or <code>job-1/axis=0</code>
+   */
+  public int getBuildNumber(String jobPath) {
+    final Integer number = buildNumbers.get(jobPath);
+    return number == null ? BUILD_NUMBER : number;
+  }
+
+  /**
+   * @param matrixJobs how many of the jobs are matrix jobs
+   * @param matrixChildren configurations of each matrix job
+   */
+  public FakeJenkins matrixJobs(int matrixJobs, int matrixChildren) {
+    this.matrixJobs = matrixJobs;
+    this.matrixChildren = matrixChildren;
+    return this;
+  }
+
+  /**
+   * @param passedTests passed cases in the test report of every build
+   * @param failedTests failed cases in the test reports of failing jobs
+   * @param stackTraceLines lines in the stack trace of a failed case
+   */
+  public FakeJenkins testReports(int passedTests, int failedTests, int stackTraceLines) {
+    this.passedTests = passedTests;
+    this.failedTests = failedTests;
+    this.stackTraceLines = stackTraceLines;
+    return this;
+  }
+
+  /**
+   * @param latencyMillis time every request takes before it is answered
+   */
+  public FakeJenkins latency(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+    return this;
+  }
+
+  /**
+   * @param notFoundPercentage share of the last completed builds and test reports that are missing
+   */
+  public FakeJenkins notFoundPercentage(int notFoundPercentage) {
+    this.notFoundPercentage = notFoundPercentage;
+    return this;
+  }
+
+  /**
+   * @param concurrentRequests requests beyond this many at the same time are answered with 503
+   * @param retryAfter value of the Retry-After header sent with them, none if <code>null</code>
+   */
+  public FakeJenkins overloadedAbove(int concurrentRequests, String retryAfter) {
+    this.overloadedAbove = concurrentRequests;
+    this.retryAfter = retryAfter;
+    return this;
+  }
+
+  /**
+   * @param badGatewaysPerPath the first requests for every path below a job are answered with 502
+   */
+  public FakeJenkins badGateways(int badGatewaysPerPath) {
+    this.badGatewaysPerPath = badGatewaysPerPath;
+    return this;
+  }
+
+  /**
+   * @param jobPaths jobs or configurations, <code>job-1</code> or <code>job-1/axis=0</code>, whose
+   *          builds and test reports are always answered with 500
+   */
+  public FakeJenkins brokenJobs(String... jobPaths) {
+    this.brokenJobs = new HashSet<String>(Arrays.asList(jobPaths));
+    return this;
+  }
+
+  /**
+   * Can also be changed while running.
+   *
+   * @param status answer to the nested tree queries of whole views, 200 to answer them
+   */
+  public FakeJenkins treeQueryStatus(int status) {
+    this.treeQueryStatus = status;
+    return this;
+  }
+
+  /**
+   * Test reports asked for with an <code>exclude</code> query are answered with 400.
+   */
+  public FakeJenkins refuseExcludes() {
+    this.refuseExcludes = true;
+    return this;
+  }
+
+  /**
+   * @param status what the test reports are always answered with, 500 comes with a stack trace
+   * @param jobPaths jobs or configurations whose test reports are broken
+   */
+  public FakeJenkins brokenTestReports(int status, String... jobPaths) {
+    this.brokenTestReportStatus = status;
+    this.brokenTestReports = new HashSet<String>(Arrays.asList(jobPaths));
+    return this;
+  }
+
+  /**
+   * @param jobPaths jobs or configurations whose configuration listing and last completed build
+   *          are answered with XML that is not well-formed
+   */
+  public FakeJenkins garbledJobs(String... jobPaths) {
+    this.garbledJobs = new HashSet<String>(Arrays.asList(jobPaths));
+    return this;
+  }
+
+  /**
+   * @param number the earlier build whose test reports are answered with 500 in every job
+   */
+  public FakeJenkins brokenEarlierBuild(int number) {
+    this.brokenEarlierBuild = number;
+    return this;
+  }
+
+  public FakeJenkins start() throws IOException {
+    // otherwise delayed ACKs add tens of milliseconds to every response, read once by the JDK
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        inFlightRequest.set(new AtomicBoolean(true));
+        final int concurrent = inFlight.incrementAndGet();
+        int max = maxInFlight.get();
+        while (concurrent > max && !maxInFlight.compareAndSet(max, concurrent)) {
+          max = maxInFlight.get();
+        }
+        try {
+          if (concurrent > overloadedAbove) {
+            count(OVERLOADED);
+            if (retryAfter != null) {
+              exchange.getResponseHeaders().set("Retry-After", retryAfter);
+            }
+            sendResponseHeaders(exchange, 503, -1);
+          }
+          else {
+            serve(exchange);
+          }
+        }
+        finally {
+          answered();
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+    return this;
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return the Jenkins root URL, ending with a slash
+   */
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  public String getViewName() {
+    return viewName;
+  }
+
+  public int getJobs() {
+    return jobs;
+  }
+
+  public int getMatrixChildren() {
+    return matrixChildren;
+  }
+
+  public int getFailedTests() {
+    return failedTests;
+  }
+
+  /**
+   * @return the number of requests answered as the given kind, e.g. {@link #TEST_REPORT}
+   */
+  public int getRequestCount(String kind) {
+    final AtomicInteger count = requests.get(kind);
+    return count == null ? 0 : count.get();
+  }
+
+  public int getRequestCount() {
+    int total = 0;
+    for (AtomicInteger count : requests.values()) {
+      total += count.get();
+    }
+    return total;
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  /**
+   * @return the most requests that were being answered at the same time
+   */
+  public int getMaxConcurrentRequests() {
+    return maxInFlight.get();
+  }
+
+  public void resetCounters() {
+    requests.clear();
+    bytesSent.set(0);
+    maxInFlight.set(0);
+  }
+
+  public boolean isMatrix(int job) {
+    return job < matrixJobs;
+  }
+
+  public boolean isFailing(int job) {
+    return job % 2 == 0 && failedTests > 0;
+  }
+
+  /**
+   * @param jobPath <code>job-1</code> or <code>job-1/axis=0</code>
+   */
+  public boolean hasBuild(String jobPath) {
+    return !isMissing("build:" + jobPath);
+  }
+
+  public boolean hasTestReport(String jobPath) {
+    return !isMissing("report:" + jobPath);
+  }
+
+  private boolean isMissing(String key) {
+    return (key.hashCode() & 0x7fffffff) % 100 < notFoundPercentage;
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    if (latencyMillis > 0) {
+      try {
+        Thread.sleep(latencyMillis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // the reporter appends "/api/xml" to URLs that already end with a slash
+    final String path = exchange.getRequestURI().getPath().replaceAll("/+", "/");
+    final String query = exchange.getRequestURI().getQuery() == null ? "" : exchange.getRequestURI().getQuery();
+    final String name = path.matches("/view/[^/]+/api/xml") ? path.substring("/view/".length(), path.length() - "/api/xml".length()) : null;
+    final int[] range = viewName.equals(name) ? new int[] { 0, jobs } : views.get(String.valueOf(name));
+
+    if (range != null && query.equals("tree=name,url")) {
+      respond(exchange, VIEW, "<listView><name>" + name + "</name><url>" + getUrl() + "view/" + name + "/</url></listView>");
+    }
+    else if (range != null && query.contains("lastCompletedBuild") && treeQueryStatus != 200) {
+      count(ERROR);
+      sendResponseHeaders(exchange, treeQueryStatus, -1);
+    }
+    else if (range != null && query.contains("lastCompletedBuild")) {
+      respond(exchange, VIEW, viewTree(name, range, query.contains("lastCompletedBuild[number]")));
+    }
+    else if (range != null) {
+      respond(exchange, JOBS, jobListing(range));
+    }
+    else if (path.startsWith("/job/")) {
+      serveJob(exchange, path.substring("/job/".length()), parameter(query, "exclude"));
+    }
+    else {
+      notFound(exchange);
+    }
+  }
+
+  /**
+   * @param exclude the XPath of the cases to leave out of test reports, <code>null</code> for all
+   */
+  private void serveJob(HttpExchange exchange, String path, String exclude) throws IOException {
+    final String[] parts = path.split("/");
+    final int job = jobIndex(parts[0]);
+    if (job < 0) {
+      notFound(exchange);
+      return;
+    }
+
+    // job-1/api/xml, job-1/lastCompletedBuild/api/xml, job-1/42/testReport/api/xml and the same
+    // below a configuration, job-1/axis=0/...
+    int next = 1;
+    String jobPath = parts[0];
+    boolean configuration = false;
+    if (isMatrix(job) && parts.length > next && parts[next].startsWith("axis=")) {
+      final int child = Integer.parseInt(parts[next].substring("axis=".length()));
+      if (child >= matrixChildren) {
+        notFound(exchange);
+        return;
+      }
+      jobPath += "/" + parts[next];
+      configuration = true;
+      next++;
+    }
+
+    final String rest = join(parts, next);
+    if (badGatewaysPerPath > 0 && countRequest(path) <= badGatewaysPerPath) {
+      count(BAD_GATEWAY);
+      sendResponseHeaders(exchange, 502, -1);
+    }
+    else if (brokenJobs.contains(jobPath) && !rest.equals("api/xml")) {
+      count(ERROR);
+      sendResponseHeaders(exchange, 500, -1);
+    }
+    else if (garbledJobs.contains(jobPath) && (rest.equals("api/xml") || rest.equals("lastCompletedBuild/api/xml"))) {
+      respond(exchange, GARBLED, "<build><number>" + getBuildNumber(jobPath) + "</numbr></build>");
+    }
+    else if (rest.equals(brokenEarlierBuild + "/testReport/api/xml")) {
+      error(exchange, 500, "java.lang.NullPointerException");
+    }
+    else if (brokenTestReports.contains(jobPath) && rest.endsWith("/testReport/api/xml")) {
+      error(exchange, brokenTestReportStatus, brokenTestReportStatus == 500 ? "java.lang.NullPointerException" : "");
+    }
+    else if (exclude != null && refuseExcludes) {
+      error(exchange, 400, "");
+    }
+    else if (exclude != null && !EXCLUDE_CASES.matcher(exclude).matches()) {
+      error(exchange, 500, "Invalid XPath expression: " + exclude);
+    }
+    else if (rest.equals("api/xml") && !configuration) {
+      respond(exchange, CONFIGURATIONS, configurations(job));
+    }
+    else if (rest.equals("lastCompletedBuild/api/xml") && hasBuild(jobPath)) {
+      respond(exchange, BUILD, build(jobPath, job));
+    }
+    else if (rest.equals(getBuildNumber(jobPath) + "/testReport/api/xml") && hasBuild(jobPath) && hasTestReport(jobPath)) {
+      final Set<String> kept = keptStatuses(exclude);
+      respond(exchange, exclude == null ? TEST_REPORT : FILTERED_TEST_REPORT,
+          isMatrix(job) && !configuration ? matrixTestReport(job, kept) : testReport(jobPath, job, getBuildNumber(jobPath), kept));
+    }
+    else if (rest.matches("\\d+/testReport/api/xml") && (configuration || !isMatrix(job)) && earlierBuild(jobPath, rest) > 0) {
+      respond(exchange, EARLIER_TEST_REPORT, testReport(jobPath, job, earlierBuild(jobPath, rest), keptStatuses(exclude)));
+    }
+    else {
+      notFound(exchange);
+    }
+  }
+
+  private int jobIndex(String name) {
+    if (!name.startsWith("job-")) {
+      return -1;
+    }
+    try {
+      final int job = Integer.parseInt(name.substring("job-".length()));
+      return job < jobs ? job : -1;
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private String jobListing(int[] range) {
+    final StringBuilder xml = new StringBuilder("<jobs>");
+    for (int job = range[0]; job < Math.min(range[1], jobs); job++) {
+      xml.append("<job><name>job-").append(job).append("</name><url>").append(jobUrl("job-" + job)).append("</url><color>").append(color(job)).append("</color></job>");
+    }
+    return xml.append("</jobs>").toString();
+  }
+
+  private String configurations(int job) {
+    if (!isMatrix(job)) {
+      return "<activeConfigurations/>";
+    }
+
+    final StringBuilder xml = new StringBuilder("<activeConfigurations>");
+    for (int child = 0; child < matrixChildren; child++) {
+      xml.append("<activeConfiguration><name>axis=").append(child).append("</name><url>").append(jobUrl("job-" + job + "/axis=" + child))
+          .append("</url><color>").append(color(job)).append("</color></activeConfiguration>");
+    }
+    return xml.append("</activeConfigurations>").toString();
+  }
+
+  /**
+   * @param numbersOnly whether only the numbers of the last completed builds were asked for
+   */
+  private String viewTree(String name, int[] range, boolean numbersOnly) {
+    final StringBuilder xml = new StringBuilder("<listView><name>").append(name).append("</name><url>").append(getUrl()).append("view/").append(name)
+        .append("/</url>");
+    for (int job = range[0]; job < Math.min(range[1], jobs); job++) {
+      final String jobPath = "job-" + job;
+      xml.append("<job><name>").append(jobPath).append("</name><url>").append(jobUrl(jobPath)).append("</url><color>").append(color(job)).append("</color>");
+      if (hasBuild(jobPath)) {
+        xml.append("<lastCompletedBuild>").append(numbersOnly ? buildNumber(jobPath) : buildFields(jobPath, job)).append("</lastCompletedBuild>");
+      }
+      if (isMatrix(job)) {
+        for (int child = 0; child < matrixChildren; child++) {
+          final String childPath = jobPath + "/axis=" + child;
+          xml.append("<activeConfiguration><name>axis=").append(child).append("</name><url>").append(jobUrl(childPath)).append("</url><color>")
+              .append(color(job)).append("</color>");
+          if (hasBuild(childPath)) {
+            xml.append("<lastCompletedBuild>").append(numbersOnly ? buildNumber(childPath) : buildFields(childPath, job)).append("</lastCompletedBuild>");
+          }
+          xml.append("</activeConfiguration>");
+        }
+      }
+      xml.append("</job>");
+    }
+    return xml.append("</listView>").toString();
+  }
+
+  private String build(String jobPath, int job) {
+    return "<build>" + buildFields(jobPath, job) + "</build>";
+  }
+
+  private String buildFields(String jobPath, int job) {
+    return "<builtOn>slave-" + (job % 4) + "</builtOn><duration>" + (60000 + job * 1000) + "</duration>" + buildNumber(jobPath) + "<result>"
+        + (isFailing(job) ? "UNSTABLE" : "SUCCESS") + "</result><timestamp>" + (1380000000000L - job * 60000L) + "</timestamp><url>" + jobUrl(jobPath)
+        + getBuildNumber(jobPath) + "/</url>";
+  }
+
+  private String buildNumber(String jobPath) {
+    return "<number>" + getBuildNumber(jobPath) + "</number>";
+  }
+
+  /**
+   * @return the number of an earlier build of the job that the path below it asks for, 0 if it has
+   *         no such build
+   */
+  private int earlierBuild(String jobPath, String rest) {
+    final int number = Integer.parseInt(rest.substring(0, rest.indexOf('/')));
+    return number >= 1 && number < getBuildNumber(jobPath) ? number : 0;
+  }
+
+  /**
+   * @return the statuses of the cases that the exclude query leaves in, <code>null</code> for all
+   */
+  private static Set<String> keptStatuses(String exclude) {
+    if (exclude == null) {
+      return null;
+    }
+
+    final Set<String> kept = new HashSet<String>();
+    final Matcher matcher = EXCLUDED_STATUS.matcher(exclude);
+    while (matcher.find()) {
+      kept.add(matcher.group(1));
+    }
+    return kept;
+  }
+
+  /**
+   * @param kept the statuses of the cases to list, <code>null</code> for all
+   */
+  private String testReport(String jobPath, int job, int buildNumber, Set<String> kept) {
+    final int failed = isFailing(job) ? failedTests : 0;
+    final StringBuilder xml = new StringBuilder("<testResult><duration>12.0</duration><empty>false</empty><failCount>").append(failed)
+        .append("</failCount><passCount>").append(passedTests).append("</passCount><skipCount>0</skipCount>");
+    suite(xml, jobPath, failed, buildNumber, kept);
+    return xml.append("</testResult>").toString();
+  }
+
+  private String matrixTestReport(int job, Set<String> kept) {
+    final int failed = isFailing(job) ? failedTests : 0;
+    final StringBuilder children = new StringBuilder();
+    int childReports = 0;
+    for (int child = 0; child < matrixChildren; child++) {
+      final String childPath = "job-" + job + "/axis=" + child;
+      if (!hasBuild(childPath) || !hasTestReport(childPath)) {
+        continue;
+      }
+      childReports++;
+      children.append("<childReport><child>").append(buildNumber(childPath)).append("<url>").append(jobUrl(childPath)).append(getBuildNumber(childPath))
+          .append("/</url></child><result><duration>12.0</duration><empty>false</empty><failCount>").append(failed).append("</failCount><passCount>")
+          .append(passedTests).append("</passCount><skipCount>0</skipCount>");
+      suite(children, childPath, failed, getBuildNumber(childPath), kept);
+      children.append("</result></childReport>");
+    }
+
+    return "<matrixTestResult><failCount>" + (failed * childReports) + "</failCount><skipCount>0</skipCount><totalCount>"
+        + ((failed + passedTests) * childReports) + "</totalCount><urlName>testReport</urlName>" + children + "</matrixTestResult>";
+  }
+
+  private void suite(StringBuilder xml, String jobPath, int failed, int buildNumber, Set<String> kept) {
+    final String className = "org.example." + jobPath.replaceAll("[^a-z0-9]", "") + ".SyntheticTest";
+    xml.append("<suite>");
+    for (int i = 0; i < failed + passedTests; i++) {
+      final boolean fails = i < failed && (i != 1 || buildNumber == getBuildNumber(jobPath) || buildNumber % 2 == 0);
+      final String status = fails ? (i % 5 == 0 ? "REGRESSION" : "FAILED") : "PASSED";
+      if (kept != null && !kept.contains(status)) {
+        continue;
+      }
+      xml.append("<case><age>").append(fails ? 1 + i % 5 : 0).append("</age><className>").append(className).append("</className><duration>0.1</duration>");
+      if (fails) {
+        xml.append("<errorDetails>expected:&lt;").append(i).append("&gt; but was:&lt;").append(i + 1).append("&gt;</errorDetails><errorStackTrace>java.lang.AssertionError\n");
+        for (int line = 0; line < stackTraceLines; line++) {
+          xml.append("\tat org.example.Frame").append(line).append(".call(Frame").append(line).append(".java:").append(line + 1).append(")\n");
+        }
+        xml.append("</errorStackTrace>");
+      }
+      xml.append("<failedSince>0</failedSince><name>test").append(i).append("</name><skipped>false</skipped><status>")
+          .append(status).append("</status></case>");
+    }
+    xml.append("<duration>12.0</duration><id/><name>").append(className).append("</name><stderr/><stdout/></suite>");
+  }
+
+  private String color(int job) {
+    return isFailing(job) ? "yellow" : "blue";
+  }
+
+  private String jobUrl(String jobPath) {
+    return getUrl() + "job/" + jobPath + "/";
+  }
+
+  private void respond(HttpExchange exchange, String kind, String body) throws IOException {
+    count(kind);
+    final byte[] bytes = body.getBytes(Charsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/xml;charset=UTF-8");
+    // counted before the client can see the response, so that it is counted once the client is done
+    bytesSent.addAndGet(bytes.length);
+    sendResponseHeaders(exchange, 200, bytes.length);
+    final OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private void error(HttpExchange exchange, int status, String body) throws IOException {
+    count(ERROR);
+    final byte[] bytes = body.getBytes(Charsets.UTF_8);
+    bytesSent.addAndGet(bytes.length);
+    sendResponseHeaders(exchange, status, bytes.length == 0 ? -1 : bytes.length);
+    final OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private void sendResponseHeaders(HttpExchange exchange, int status, long length) throws IOException {
+    answered();
+    exchange.sendResponseHeaders(status, length);
+  }
+
+  /**
+   * Ends the request in flight, before the client gets the response and may send the next one.
+   */
+  private void answered() {
+    if (inFlightRequest.get().compareAndSet(true, false)) {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  private void notFound(HttpExchange exchange) throws IOException {
+    count(NOT_FOUND);
+    sendResponseHeaders(exchange, 404, -1);
+  }
+
+  private void count(String kind) {
+    AtomicInteger count = requests.get(kind);
+    if (count == null) {
+      synchronized (requests) {
+        count = requests.get(kind);
+        if (count == null) {
+          count = new AtomicInteger();
+          requests.put(kind, count);
+        }
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  private int countRequest(String path) {
+    AtomicInteger count = requestsPerPath.get(path);
+    if (count == null) {
+      synchronized (requestsPerPath) {
+        count = requestsPerPath.get(path);
+        if (count == null) {
+          count = new AtomicInteger();
+          requestsPerPath.put(path, count);
+        }
+      }
+    }
+    return count.incrementAndGet();
+  }
+
+  private static String join(String[] parts, int from) {
+    final StringBuilder joined = new StringBuilder();
+    for (int i = from; i < parts.length; i++) {
+      if (joined.length() > 0) {
+        joined.append('/');
+      }
+      joined.append(parts[i]);
+    }
+    return joined.toString();
+  }
+
+  /**
+   * @param query the decoded query of a request
+   * @return the value of the parameter, <code>null</code> if it is not given
+   */
+  private static String parameter(String query, String name) {
+    for (String parameter : query.split("&")) {
+      if (parameter.startsWith(name + "=")) {
+        return parameter.substring(name.length() + 1);
+      }
+    }
+    return null;
+  }
+}
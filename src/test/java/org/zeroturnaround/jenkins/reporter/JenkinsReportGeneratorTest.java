@@ -0,0 +1,209 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.StackTrace;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+import org.zeroturnaround.jenkins.reporter.util.CollectingMetrics;
+
+public class JenkinsReportGeneratorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final JenkinsReportGenerator generator = new JenkinsReportGeneratorBuilder().buildDefaultGenerator();
+
+  @Test
+  public void testFileMatchesWriter() throws Exception {
+    JenkinsView view = createView();
+    Date startTime = new Date();
+
+    File file = folder.newFile("report.html");
+    long bytes = generator.generateReport(view, file, startTime);
+
+    StringWriter expected = new StringWriter();
+    generator.generateReport(view, new PrintWriter(expected), startTime);
+
+    assertEquals(file.length(), bytes);
+    String html = FileUtils.readFileToString(file, Charset.defaultCharset().name());
+    assertEquals(expected.toString(), html);
+    assertTrue(html.contains("there are 1 failed jobs (of 1 total jobs)"));
+    assertTrue(html.contains("expected:&lt;1&gt; but was:&lt;2&gt;"));
+    assertFalse(html.contains("UNAVAILABLE"));
+    // a single failure is no cluster
+    assertFalse(html.contains("TOP FAILURE CLUSTERS"));
+  }
+
+  @Test
+  public void testUnavailableJob() throws Exception {
+    JenkinsView view = createView();
+    Job job = new Job();
+    job.setName("bar");
+    job.setUrl(URI.create("http://jenkins.example.com/job/bar/"));
+    job.setColor("red");
+    job.setUnavailableReason("Read timed out <after 60 s>");
+    view.setJobs(Arrays.asList(view.getJobs().iterator().next(), job));
+
+    StringWriter out = new StringWriter();
+    generator.generateReport(view, new PrintWriter(out), new Date());
+
+    String html = out.toString();
+    assertTrue(html.contains("there are 1 failed jobs"));
+    assertTrue(html.contains("<h2>UNAVAILABLE</h2>"));
+    assertTrue(html.contains("Read timed out &lt;after 60 s&gt;"));
+  }
+
+  @Test
+  public void testSharedStackTrace() throws Exception {
+    JenkinsView view = createView();
+    TestReport report = view.getJobs().iterator().next().getLastCompletedBuild().getTestReport();
+    StackTrace trace = StackTrace.of("java.net.ConnectException: Connection refused\n\tat com.example.Db.connect(Db.java:10)");
+    for (String name : new String[] { "testOne", "testTwo", "testThree" }) {
+      TestCase testCase = new TestCase();
+      testCase.setStatus("FAILED");
+      testCase.setClassName("com.example.DbTest");
+      testCase.setMethodName(name);
+      testCase.setStackTrace(trace);
+      report.getTestCases().add(testCase);
+    }
+
+    StringWriter out = new StringWriter();
+    generator.generateReport(view, new PrintWriter(out), new Date());
+
+    String html = out.toString();
+    assertEquals(1, StringUtils.countMatches(html, "Db.connect(Db.java:10)"));
+    assertTrue(html.contains("3 tests share this trace."));
+    assertEquals(2, StringUtils.countMatches(html, "3 tests share this trace, it is shown with the"));
+    assertTrue(html.contains("<h2>TOP FAILURE CLUSTERS</h2>"));
+    assertTrue(html.contains("<b>3 tests</b> in 1 jobs: <code>java.net.ConnectException: Connection refused at com.example.Db.connect</code>"));
+  }
+
+  @Test
+  public void testProgressive() throws Exception {
+    JenkinsView view = createView();
+    Date startTime = new Date();
+    StringWriter out = new StringWriter();
+    CollectingMetrics metrics = new CollectingMetrics();
+    ProgressiveReportGenerator progressive = new JenkinsReportGeneratorBuilder().metrics(metrics).buildProgressiveGenerator(Arrays.asList(out), startTime);
+
+    progressive.viewsListed(Arrays.asList(view));
+    assertTrue(out.toString().contains("failed jobs are added below as they are found"));
+    assertFalse(out.toString().contains("My condolences"));
+
+    progressive.jobCrawled(view.getJobs().iterator().next());
+    assertTrue(out.toString().contains("expected:&lt;1&gt; but was:&lt;2&gt;"));
+    assertFalse(out.toString().contains("My condolences"));
+    assertEquals(1, metrics.getHistogram("report.firstFailure.millis").getCount());
+
+    progressive.finish();
+    String html = out.toString();
+    assertTrue(html.contains("there are 1 failed jobs (of 1 total jobs)"));
+    assertTrue(html.indexOf("expected:&lt;1&gt;") < html.indexOf("My condolences"));
+    assertTrue(html.contains("<h2>SUCCESS</h2>"));
+    assertTrue(html.trim().endsWith("</html>"));
+  }
+
+  @Test
+  public void testHistory() throws Exception {
+    BuildHistory history = new BuildHistory(folder.newFolder("history"), 10, 90);
+    JenkinsReportGenerator generator = new JenkinsReportGeneratorBuilder().history(history).buildDefaultGenerator();
+    JenkinsView view = createView();
+    generator.generateReport(view, new PrintWriter(new StringWriter()), new Date());
+    assertFalse(renderReport(generator, view).contains("failed in"));
+
+    Job job = view.getJobs().iterator().next();
+    job.getLastCompletedBuild().setId(13);
+    String html = renderReport(generator, view);
+    assertTrue(html.contains("<b>Failed in:</b> 2 of the last 2 builds)"));
+    assertTrue(html.contains(", <span class=\"history\">failed in 2 of the last 2 builds</span>)"));
+  }
+
+  @Test
+  public void testFlakyTest() throws Exception {
+    JenkinsView view = createView();
+    TestCase testCase = view.getJobs().iterator().next().getLastCompletedBuild().getTestReport().getTestCases().iterator().next();
+    assertFalse(renderReport(generator, view).contains("class=\"flaky\""));
+
+    testCase.setFlipRate(0.5f);
+    testCase.setFlaky(true);
+    assertTrue(renderReport(generator, view).contains("in 50% of the last builds\">flaky</span>)"));
+  }
+
+  @Test
+  public void testMatrixConfiguration() throws Exception {
+    JenkinsView view = createView();
+    Job job = view.getJobs().iterator().next();
+    Job child = new Job();
+    child.setName("jdk=7");
+    child.setUrl(URI.create("http://jenkins.example.com/job/foo/jdk=7/"));
+    child.setColor("red");
+    child.setLastCompletedBuild(job.getLastCompletedBuild());
+    child.getLastCompletedBuild().setResult("FAILURE");
+    job.setChildren(Arrays.asList(child));
+
+    // the configuration has the totals of its own report
+    String html = renderReport(generator, view);
+    assertTrue(html.contains("<a href=\"http://jenkins.example.com/job/foo/jdk=7/12/console\" target=\"_blank\">1</a>"));
+    assertTrue(html.contains("tests of 10."));
+    assertTrue(html.contains("Failure ratio 10.0%."));
+  }
+
+  private static String renderReport(JenkinsReportGenerator generator, JenkinsView view) {
+    StringWriter out = new StringWriter();
+    generator.generateReport(view, new PrintWriter(out), new Date());
+    return out.toString();
+  }
+
+  private static JenkinsView createView() {
+    TestCase testCase = new TestCase();
+    testCase.setStatus("FAILED");
+    testCase.setAge(2);
+    testCase.setClassName("com.example.FooTest");
+    testCase.setMethodName("testFails");
+    testCase.setErrorDetails("expected:<1> but was:<2>");
+
+    TestReport report = new TestReport();
+    report.setFailCount(1);
+    report.setPassCount(9);
+    report.setTotalCount(10);
+    report.getTestCases().add(testCase);
+
+    Build build = new Build();
+    build.setId(12);
+    build.setResult("UNSTABLE");
+    build.setUrl(URI.create("http://jenkins.example.com/job/foo/12/"));
+    build.setTimestamp(new Date(1380000000000L));
+    build.setDuration("0:01:05");
+    build.setBuiltOn("master");
+    build.setTestReport(report);
+
+    Job job = new Job();
+    job.setName("foo");
+    job.setUrl(URI.create("http://jenkins.example.com/job/foo/"));
+    job.setColor("yellow");
+    job.setLastCompletedBuild(build);
+
+    JenkinsView view = new JenkinsView();
+    view.setName("Core");
+    view.setUrl(URI.create("http://jenkins.example.com/view/Core/"));
+    view.setJobs(Arrays.asList(job));
+    view.setJobsTotal(1);
+    return view;
+  }
+}
@@ -0,0 +1,596 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+import org.zeroturnaround.jenkins.reporter.model.ViewStatistics;
+import org.zeroturnaround.jenkins.reporter.util.CollectingMetrics;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Crawls a {@link FakeJenkins} view with the different fetch strategies.
+ */
+public class JenkinsViewAnalyserTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakeJenkins jenkins;
+
+  @After
+  public void stopJenkins() {
+    if (jenkins != null) {
+      jenkins.stop();
+    }
+  }
+
+  @Test
+  public void testPerJob() throws Exception {
+    jenkins = new FakeJenkins().jobs(9).matrixJobs(3, 4).testReports(10, 3, 5).start();
+
+    JenkinsView view = analyse(FetchStrategy.PER_JOB, 1);
+
+    assertEquals("Synthetic", view.getName());
+    assertEquals(new URI(jenkins.getUrl() + "view/Synthetic/"), view.getUrl());
+    assertEquals(9, view.getJobsTotal());
+    assertView(view);
+
+    // the view, its job listing twice, the configurations of every job, then a build and a test
+    // report for every job and configuration
+    assertEquals(1, jenkins.getRequestCount(FakeJenkins.VIEW));
+    assertEquals(2, jenkins.getRequestCount(FakeJenkins.JOBS));
+    assertEquals(9, jenkins.getRequestCount(FakeJenkins.CONFIGURATIONS));
+    assertEquals(9 + 3 * 4, jenkins.getRequestCount(FakeJenkins.BUILD));
+    assertEquals(9 + 3 * 4, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+  }
+
+  @Test
+  public void testBulk() throws Exception {
+    jenkins = new FakeJenkins().jobs(9).matrixJobs(3, 4).testReports(10, 3, 5).start();
+
+    JenkinsView view = analyse(FetchStrategy.BULK, 4);
+
+    assertEquals("Synthetic", view.getName());
+    assertEquals(9, view.getJobsTotal());
+    assertView(view);
+
+    // only the test reports are fetched separately
+    assertEquals(1, jenkins.getRequestCount(FakeJenkins.VIEW));
+    assertEquals(9 + 3 * 4, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertEquals(1 + 9 + 3 * 4, jenkins.getRequestCount());
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    jenkins = new FakeJenkins().jobs(30).matrixJobs(6, 4).testReports(5, 2, 5).latency(20).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+
+    JenkinsView view = new JenkinsHelperBuilder().fetchThreads(6).fetchEngine(FetchEngine.VIRTUAL_THREADS).createDefault(viewUrl, null, null, false)
+        .getViewData(viewUrl);
+
+    assertView(view);
+    // a thread per job, but no more requests in flight than fetch threads
+    assertTrue(jenkins.getMaxConcurrentRequests() > 1);
+    assertTrue(jenkins.getMaxConcurrentRequests() <= 6);
+  }
+
+  @Test
+  public void testMissingBuildsAndTestReports() throws Exception {
+    jenkins = new FakeJenkins().jobs(40).matrixJobs(8, 3).testReports(5, 2, 5).notFoundPercentage(30).start();
+
+    assertView(analyse(FetchStrategy.PER_JOB, 4));
+    assertView(analyse(FetchStrategy.BULK, 4));
+  }
+
+  @Test
+  public void testRejectedTreeQuery() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).treeQueryStatus(400).start();
+
+    // the jobs are listed one by one instead
+    assertView(analyse(FetchStrategy.BULK, 4));
+    assertEquals(1, jenkins.getRequestCount(FakeJenkins.ERROR));
+    assertEquals(10, jenkins.getRequestCount(FakeJenkins.CONFIGURATIONS));
+
+    // a Jenkins that fails to answer is not taken for one that does not know the query
+    jenkins.resetCounters();
+    jenkins.treeQueryStatus(500);
+    try {
+      analyse(FetchStrategy.BULK, 4);
+      fail("The view cannot be read");
+    }
+    catch (ProcessingException e) {
+      assertEquals(0, jenkins.getRequestCount(FakeJenkins.CONFIGURATIONS));
+    }
+  }
+
+  @Test
+  public void testFilteredTestReports() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).start();
+    JenkinsView full = analyse(FetchStrategy.PER_JOB, 4);
+    jenkins.resetCounters();
+
+    JenkinsView view = analyseFiltered(4);
+
+    // the same counters, but only the failed and regressed cases were sent
+    assertView(view);
+    assertEquals(describe(full), describe(view));
+    assertEquals(0, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertEquals(10 + 2 * 3, jenkins.getRequestCount(FakeJenkins.FILTERED_TEST_REPORT));
+    for (int job = 2; job < 10; job++) {
+      TestReport report = findJob(view, "job-" + job).getLastCompletedBuild().getTestReport();
+      assertEquals(jenkins.isFailing(job) ? 2 : 0, report.getTestCases().size());
+      for (TestCase testCase : report.getTestCases()) {
+        assertTrue(testCase.getStatus().equals("FAILED") || testCase.getStatus().equals("REGRESSION"));
+      }
+    }
+  }
+
+  @Test
+  public void testRefusedFilteredTestReports() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).refuseExcludes().start();
+    JenkinsView full = analyse(FetchStrategy.PER_JOB, 4);
+    jenkins.resetCounters();
+
+    JenkinsView view = analyseFiltered(4);
+
+    // the full reports are read instead
+    assertView(view);
+    assertEquals(describe(full), describe(view));
+    assertEquals(0, jenkins.getRequestCount(FakeJenkins.FILTERED_TEST_REPORT));
+    assertEquals(10 + 2 * 3, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertTrue(jenkins.getRequestCount(FakeJenkins.ERROR) > 0);
+  }
+
+  @Test
+  public void testFilteredTestReportErrors() throws Exception {
+    jenkins = new FakeJenkins().jobs(6).testReports(5, 2, 5).badGateways(1).brokenTestReports(500, "job-0").start();
+
+    JenkinsView view = analyseFiltered(1);
+
+    // neither a retried 502 nor a broken report is taken for a refused query
+    assertTrue(jenkins.getRequestCount(FakeJenkins.BAD_GATEWAY) > 0);
+    assertTrue(findJob(view, "job-0").isUnavailable());
+    assertEquals(0, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertEquals(5, jenkins.getRequestCount(FakeJenkins.FILTERED_TEST_REPORT));
+  }
+
+  @Test
+  public void testForbiddenFilteredTestReport() throws Exception {
+    jenkins = new FakeJenkins().jobs(6).testReports(5, 2, 5).brokenTestReports(403, "job-0").start();
+
+    JenkinsView view = analyseFiltered(1);
+
+    // the first report is a protected job's, not Jenkins refusing the query
+    assertTrue(findJob(view, "job-0").isUnavailable());
+    assertEquals(0, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertEquals(5, jenkins.getRequestCount(FakeJenkins.FILTERED_TEST_REPORT));
+  }
+
+  @Test
+  public void testMultipleViews() throws Exception {
+    jenkins = new FakeJenkins().jobs(12).matrixJobs(2, 3).testReports(5, 2, 5).view("Front", 0, 8).view("Back", 4, 12).start();
+
+    for (FetchStrategy strategy : FetchStrategy.values()) {
+      jenkins.resetCounters();
+      List<JenkinsView> views = analyse(strategy, 4, "Synthetic", "Front", "Back");
+
+      assertView(views.get(0));
+      assertEquals("Front", views.get(1).getName());
+      assertEquals(8, views.get(1).getJobs().size());
+      assertEquals("Back", views.get(2).getName());
+      assertEquals(8, views.get(2).getJobs().size());
+      assertSame(findJob(views.get(0), "job-5"), findJob(views.get(1), "job-5"));
+      assertSame(findJob(views.get(1), "job-5"), findJob(views.get(2), "job-5"));
+
+      // every job and configuration is crawled once
+      assertEquals(12 + 2 * 3, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+      if (strategy == FetchStrategy.PER_JOB) {
+        assertEquals(3, jenkins.getRequestCount(FakeJenkins.VIEW));
+        assertEquals(12, jenkins.getRequestCount(FakeJenkins.CONFIGURATIONS));
+        assertEquals(12 + 2 * 3, jenkins.getRequestCount(FakeJenkins.BUILD));
+      }
+      else {
+        assertEquals(3 + 12 + 2 * 3, jenkins.getRequestCount());
+      }
+    }
+  }
+
+  @Test
+  public void testCrawlListener() throws Exception {
+    jenkins = new FakeJenkins().jobs(20).matrixJobs(4, 3).testReports(5, 2, 5).notFoundPercentage(20).view("Front", 0, 12).view("Back", 8, 20).start();
+    List<URI> viewUrls = Arrays.asList(new URI(jenkins.getUrl() + "view/Front"), new URI(jenkins.getUrl() + "view/Back"));
+
+    for (FetchStrategy strategy : FetchStrategy.values()) {
+      final List<JenkinsView> listed = new ArrayList<JenkinsView>();
+      final List<Job> crawled = new ArrayList<Job>();
+      final List<Integer> childCounts = new ArrayList<Integer>();
+      CrawlListener listener = new CrawlListener() {
+        @Override
+        public void viewsListed(List<JenkinsView> views) {
+          assertTrue(crawled.isEmpty());
+          listed.addAll(views);
+        }
+
+        @Override
+        public void jobCrawled(Job job) {
+          assertNotNull(job.getLastCompletedBuild());
+          crawled.add(job);
+          childCounts.add(job.getChildren().size());
+        }
+      };
+
+      List<JenkinsView> views = new JenkinsHelperBuilder().fetchThreads(4).fetchStrategy(strategy).createDefault(viewUrls.get(0), null, null, false)
+          .getViewData(viewUrls, listener);
+
+      assertEquals(views, listed);
+      // every job with a build once, the shared ones too, already with its configurations
+      Set<Job> expected = Sets.newIdentityHashSet();
+      for (JenkinsView view : views) {
+        expected.addAll(view.getJobs());
+      }
+      assertEquals(expected.size(), crawled.size());
+      for (int i = 0; i < crawled.size(); i++) {
+        assertTrue(expected.contains(crawled.get(i)));
+        assertEquals(crawled.get(i).getChildren().size(), (int) childCounts.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    // job-0 to job-2 have no build
+    jenkins = new FakeJenkins().jobs(12).matrixJobs(8, 3).testReports(10, 3, 5).notFoundPercentage(3).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    CollectingMetrics metrics = new CollectingMetrics();
+
+    new JenkinsHelperBuilder().fetchThreads(4).metrics(metrics).createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+
+    assertEquals(jenkins.getRequestCount(FakeJenkins.VIEW) + jenkins.getRequestCount(FakeJenkins.JOBS), metrics.getCount("http.requests.view"));
+    assertEquals(jenkins.getRequestCount(FakeJenkins.CONFIGURATIONS), metrics.getCount("http.requests.job"));
+    assertEquals(jenkins.getRequestCount(), metrics.getHistogram("http.latency.view").getCount() + metrics.getHistogram("http.latency.job").getCount()
+        + metrics.getHistogram("http.latency.build").getCount() + metrics.getHistogram("http.latency.testReport").getCount());
+    assertEquals(jenkins.getRequestCount(FakeJenkins.NOT_FOUND), metrics.getCount("http.notFound.build") + metrics.getCount("http.notFound.testReport"));
+    assertEquals(jenkins.getBytesSent(), metrics.getCount("http.bytes.view") + metrics.getCount("http.bytes.job") + metrics.getCount("http.bytes.build")
+        + metrics.getCount("http.bytes.testReport"));
+
+    // a matrix report has the cases of its configurations
+    assertTrue(metrics.getCount("testReport.cases.read") > metrics.getCount("testReport.cases.kept"));
+    assertTrue(metrics.getCount("testReport.cases.kept") > 0);
+    assertEquals(jenkins.getRequestCount(FakeJenkins.BUILD) + metrics.getCount("http.notFound.build"), metrics.getHistogram("crawl.job.millis").getCount());
+    assertEquals(1, metrics.getHistogram("crawl.millis").getCount());
+  }
+
+  @Test
+  public void testOverloaded() throws Exception {
+    jenkins = new FakeJenkins().jobs(30).matrixJobs(6, 4).testReports(5, 2, 5).latency(20).overloadedAbove(3, "0").start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    CollectingMetrics metrics = new CollectingMetrics();
+
+    JenkinsView view = new JenkinsHelperBuilder().fetchThreads(8).metrics(metrics).createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+
+    // the rejected requests were repeated and the limit stayed below the fetch threads
+    assertView(view);
+    assertTrue(jenkins.getRequestCount(FakeJenkins.OVERLOADED) > 0);
+    assertEquals(jenkins.getRequestCount(FakeJenkins.OVERLOADED), metrics.getCount("http.overloaded.view") + metrics.getCount("http.overloaded.job")
+        + metrics.getCount("http.overloaded.build") + metrics.getCount("http.overloaded.testReport"));
+    assertTrue(metrics.getHistogram("http.concurrency.limit").getMax() < 8);
+  }
+
+  @Test
+  public void testRetries() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).badGateways(2).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    CollectingMetrics metrics = new CollectingMetrics();
+
+    JenkinsView view = new JenkinsHelperBuilder().fetchThreads(4).retries(2, 1).metrics(metrics).createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+
+    assertView(view);
+    assertTrue(jenkins.getRequestCount(FakeJenkins.BAD_GATEWAY) > 0);
+    assertEquals(jenkins.getRequestCount(FakeJenkins.BAD_GATEWAY), metrics.getCount("http.retries.job") + metrics.getCount("http.retries.build")
+        + metrics.getCount("http.retries.testReport"));
+  }
+
+  @Test
+  public void testUnavailableJobs() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).brokenJobs("job-3", "job-0/axis=1").start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+
+    for (FetchStrategy strategy : FetchStrategy.values()) {
+      CollectingMetrics metrics = new CollectingMetrics();
+      JenkinsView view = new JenkinsHelperBuilder().fetchThreads(4).fetchStrategy(strategy).metrics(metrics).createDefault(viewUrl, null, null, false)
+          .getViewData(viewUrl);
+
+      // the broken job and configuration are part of the report, the rest is complete
+      assertEquals(10, view.getJobs().size());
+      assertTrue(findJob(view, "job-3").isUnavailable());
+      assertEquals(3, findJob(view, "job-0").getChildren().size());
+      for (Job child : findJob(view, "job-0").getChildren()) {
+        assertEquals(child.getName().equals("axis=1"), child.isUnavailable());
+      }
+      assertFalse(findJob(view, "job-0").isUnavailable());
+      assertEquals(2, metrics.getCount("crawl.jobs.unavailable"));
+
+      ViewStatistics statistics = new ViewStatistics(view);
+      assertEquals(Collections.singletonList(findJob(view, "job-3")), statistics.getUnavailableJobs());
+      assertFalse(statistics.getFailedJobs().contains(findJob(view, "job-3")));
+      assertFalse(statistics.getPassedJobs().contains(findJob(view, "job-3")));
+    }
+
+    try {
+      new JenkinsHelperBuilder().fetchThreads(4).errorBudget(1).createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+      fail("The error budget is exceeded");
+    }
+    catch (ProcessingException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testGarbledResponses() throws Exception {
+    jenkins = new FakeJenkins().jobs(6).matrixJobs(2, 3).testReports(5, 2, 5).garbledJobs("job-1", "job-4").start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    CollectingMetrics metrics = new CollectingMetrics();
+
+    JenkinsView view = new JenkinsHelperBuilder().fetchThreads(4).retries(3, 1).metrics(metrics).createDefault(viewUrl, null, null, false)
+        .getViewData(viewUrl);
+
+    // the configurations of a matrix job and the build of a plain job are asked for once, not retried
+    assertTrue(findJob(view, "job-1").isUnavailable());
+    assertTrue(findJob(view, "job-4").isUnavailable());
+    assertEquals(2, jenkins.getRequestCount(FakeJenkins.GARBLED));
+    assertEquals(0, metrics.getCount("http.retries.job") + metrics.getCount("http.retries.build"));
+  }
+
+  @Test
+  public void testTimeouts() throws Exception {
+    jenkins = new FakeJenkins().jobs(3).latency(300).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+
+    // no response in time, then a response that is not read in time, which is not retried because
+    // the total timeout covers all attempts
+    long[][] timeouts = { { 1000, 50, 0, 2, 1 }, { 1000, 1000, 10, 1, 0 } };
+    for (long[] timeout : timeouts) {
+      CollectingMetrics metrics = new CollectingMetrics();
+      long start = System.nanoTime();
+      try {
+        new JenkinsHelperBuilder().timeouts((int) timeout[0], (int) timeout[1], timeout[2]).retries(1, 1).metrics(metrics).createDefault(viewUrl, null, null, false)
+            .getViewData(viewUrl);
+        fail("The view cannot be read in time");
+      }
+      catch (ProcessingException e) {
+        assertEquals(timeout[3], metrics.getCount("http.timeouts.view"));
+        assertEquals(timeout[4], metrics.getCount("http.retries.view"));
+      }
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    jenkins = new FakeJenkins().jobs(10).matrixJobs(2, 3).testReports(5, 2, 5).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    JenkinsViewAnalyser analyser = new JenkinsHelperBuilder().fetchThreads(4).createDefault(viewUrl, null, null, false);
+
+    JenkinsView first = analyser.refreshViewData(viewUrl, null);
+    assertView(first);
+    Build unchanged = findJob(first, "job-5").getLastCompletedBuild();
+
+    // a matrix job with its configurations and a plain job have built, a job was added
+    jenkins.resetCounters();
+    jenkins.rebuild(0);
+    jenkins.rebuild(3);
+    jenkins.jobs(11);
+    JenkinsView second = analyser.refreshViewData(viewUrl, first);
+    assertView(second);
+    assertSame(unchanged, findJob(second, "job-5").getLastCompletedBuild());
+    assertEquals(1, jenkins.getRequestCount(FakeJenkins.VIEW));
+    assertEquals(1 + 3 + 1 + 1, jenkins.getRequestCount(FakeJenkins.BUILD));
+    assertEquals(1 + 3 + 1 + 1, jenkins.getRequestCount(FakeJenkins.TEST_REPORT));
+    assertEquals(1 + 2 * 6, jenkins.getRequestCount());
+
+    // jobs were removed
+    jenkins.resetCounters();
+    jenkins.jobs(8);
+    JenkinsView third = analyser.refreshViewData(viewUrl, second);
+    assertView(third);
+    assertEquals(1, jenkins.getRequestCount());
+  }
+
+  @Test
+  public void testFlakyTests() throws Exception {
+    jenkins = new FakeJenkins().jobs(4).matrixJobs(1, 2).testReports(5, 3, 5).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    JenkinsHelperBuilder builder = new JenkinsHelperBuilder().fetchThreads(4).flakyBuilds(6).cacheDirectory(folder.getRoot());
+
+    JenkinsView view = builder.createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+
+    // five earlier builds of two configurations and a plain job
+    assertEquals(3 * 5, jenkins.getRequestCount(FakeJenkins.EARLIER_TEST_REPORT));
+    for (Job job : Arrays.asList(findJob(view, "job-0").getChildren().iterator().next(), findJob(view, "job-2"))) {
+      Iterator<TestCase> cases = job.getLastCompletedBuild().getTestReport().getTestCases().iterator();
+      TestCase broken = cases.next();
+      assertFalse(broken.isFlaky());
+      assertEquals(0f, broken.getFlipRate(), 0f);
+      // failed in every other build
+      TestCase flaky = cases.next();
+      assertTrue(flaky.isFlaky());
+      assertEquals(1f, flaky.getFlipRate(), 0f);
+    }
+
+    // the earlier builds are cached
+    jenkins.resetCounters();
+    view = builder.createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+    assertEquals(0, jenkins.getRequestCount(FakeJenkins.EARLIER_TEST_REPORT));
+    assertTrue(new ArrayList<TestCase>(findJob(view, "job-2").getLastCompletedBuild().getTestReport().getTestCases()).get(1).isFlaky());
+
+    // a new build reads only the build that joins the window and the oldest one is dropped
+    int cachedFiles = folder.getRoot().list().length;
+    jenkins.rebuild(2);
+    jenkins.resetCounters();
+    builder.createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+    assertEquals(1, jenkins.getRequestCount(FakeJenkins.EARLIER_TEST_REPORT));
+    assertEquals(cachedFiles, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testUnreadableEarlierBuild() throws Exception {
+    jenkins = new FakeJenkins().jobs(4).matrixJobs(1, 2).testReports(5, 3, 5).brokenEarlierBuild(FakeJenkins.BUILD_NUMBER - 2).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    CollectingMetrics metrics = new CollectingMetrics();
+
+    JenkinsView view = new JenkinsHelperBuilder().fetchThreads(4).flakyBuilds(6).metrics(metrics).createDefault(viewUrl, null, null, false)
+        .getViewData(viewUrl);
+
+    // the build is missing in two configurations and a plain job, the flips are told from the others
+    assertEquals(3, metrics.getCount("crawl.earlierBuilds.failed"));
+    assertEquals(3 * 4, jenkins.getRequestCount(FakeJenkins.EARLIER_TEST_REPORT));
+    assertTrue(new ArrayList<TestCase>(findJob(view, "job-2").getLastCompletedBuild().getTestReport().getTestCases()).get(1).isFlaky());
+  }
+
+  @Test
+  public void testParallelFetching() throws Exception {
+    jenkins = new FakeJenkins().jobs(40).matrixJobs(8, 3).testReports(5, 2, 5).notFoundPercentage(30).start();
+
+    JenkinsView sequential = analyse(FetchStrategy.PER_JOB, 1);
+    JenkinsView parallel = analyse(FetchStrategy.PER_JOB, 8);
+
+    assertView(parallel);
+    assertEquals(describe(sequential), describe(parallel));
+    ViewStatistics expected = new ViewStatistics(sequential);
+    ViewStatistics actual = new ViewStatistics(parallel);
+    assertEquals(expected.getFailCount(), actual.getFailCount());
+    assertEquals(expected.getTestsTotal(), actual.getTestsTotal());
+    assertEquals(expected.getFailureRate(), actual.getFailureRate(), 0);
+    assertEquals(names(expected.getFailedJobs()), names(actual.getFailedJobs()));
+    assertEquals(names(expected.getPassedJobs()), names(actual.getPassedJobs()));
+  }
+
+  private JenkinsView analyse(FetchStrategy strategy, int threads) throws Exception {
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    return new JenkinsHelperBuilder().fetchThreads(threads).fetchStrategy(strategy).createDefault(viewUrl, null, null, false).getViewData(viewUrl);
+  }
+
+  private JenkinsView analyseFiltered(int threads) throws Exception {
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+    return new JenkinsHelperBuilder().fetchThreads(threads).filterTestReports(true).retries(2, 1).createDefault(viewUrl, null, null, false)
+        .getViewData(viewUrl);
+  }
+
+  private List<JenkinsView> analyse(FetchStrategy strategy, int threads, String... viewNames) throws Exception {
+    List<URI> viewUrls = new ArrayList<URI>();
+    for (String viewName : viewNames) {
+      viewUrls.add(new URI(jenkins.getUrl() + "view/" + viewName));
+    }
+    return new JenkinsHelperBuilder().fetchThreads(threads).fetchStrategy(strategy).createDefault(viewUrls.get(0), null, null, false).getViewData(viewUrls);
+  }
+
+  private static Job findJob(JenkinsView view, String name) {
+    for (Job job : view.getJobs()) {
+      if (job.getName().equals(name)) {
+        return job;
+      }
+    }
+    throw new AssertionError("No job " + name);
+  }
+
+  /**
+   * Compares the crawled view with what the fake Jenkins serves.
+   */
+  private void assertView(JenkinsView view) {
+    List<String> expectedJobs = new ArrayList<String>();
+    int expectedFailCount = 0;
+    for (int job = 0; job < jenkins.getJobs(); job++) {
+      String jobPath = "job-" + job;
+      if (!jenkins.hasBuild(jobPath)) {
+        continue;
+      }
+      expectedJobs.add(jobPath);
+      if (!jenkins.isMatrix(job)) {
+        expectedFailCount += failCount(jobPath, job);
+      }
+    }
+
+    List<String> actualJobs = new ArrayList<String>();
+    for (Job job : view.getJobs()) {
+      actualJobs.add(job.getName());
+    }
+    assertEquals(expectedJobs, actualJobs);
+
+    for (Job job : view.getJobs()) {
+      int index = Integer.parseInt(job.getName().substring("job-".length()));
+      assertEquals(jenkins.getBuildNumber(job.getName()), job.getLastCompletedBuild().getId());
+      assertEquals(jenkins.hasTestReport(job.getName()), job.getLastCompletedBuild().getTestReport() != null);
+
+      if (!jenkins.isMatrix(index)) {
+        continue;
+      }
+
+      List<String> expectedChildren = new ArrayList<String>();
+      for (int child = 0; child < jenkins.getMatrixChildren(); child++) {
+        String childPath = job.getName() + "/axis=" + child;
+        if (jenkins.hasBuild(childPath)) {
+          expectedChildren.add("axis=" + child);
+          expectedFailCount += failCount(childPath, index);
+        }
+      }
+
+      Collection<Job> children = job.getChildren();
+      assertEquals(expectedChildren.size(), children.size());
+      Iterator<Job> iter = children.iterator();
+      for (String name : expectedChildren) {
+        assertEquals(name, iter.next().getName());
+      }
+    }
+
+    assertEquals(expectedFailCount, view.getFailCount());
+  }
+
+  private int failCount(String jobPath, int job) {
+    return jenkins.hasTestReport(jobPath) && jenkins.isFailing(job) ? jenkins.getFailedTests() : 0;
+  }
+
+  /**
+   * @return the jobs and configurations of the view with their builds, in the order they were read
+   */
+  private static List<String> describe(JenkinsView view) {
+    List<String> jobs = new ArrayList<String>();
+    for (Job job : view.getJobs()) {
+      jobs.add(describe(job));
+      for (Job child : job.getChildren()) {
+        jobs.add(job.getName() + "/" + describe(child));
+      }
+    }
+    return jobs;
+  }
+
+  private static String describe(Job job) {
+    return job.getName() + " " + job.getColor() + " #" + job.getLastCompletedBuild().getId() + " " + job.getLastCompletedBuild().getResult() + " "
+        + job.getFailCount() + "/" + job.getTotalCount();
+  }
+
+  private static List<String> names(Collection<Job> jobs) {
+    List<String> names = new ArrayList<String>();
+    for (Job job : jobs) {
+      names.add(job.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,91 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Runs the command line against a {@link FakeJenkins}. Main reads its configuration from system
+ * properties when the class is loaded, so it runs in a separate JVM.
+ */
+public class MainTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FakeJenkins jenkins;
+  private String output;
+
+  @Before
+  public void startJenkins() throws IOException {
+    jenkins = new FakeJenkins().jobs(6).matrixJobs(2, 2).testReports(10, 2, 5).start();
+  }
+
+  @After
+  public void stopJenkins() {
+    jenkins.stop();
+  }
+
+  @Test
+  public void testGenerateReport() throws Exception {
+    File report = new File(folder.getRoot(), "reports/report.html");
+
+    int exitCode = runMain("-Dreporter.jenkins.url=" + jenkins.getUrl(), "-Dreporter.output.file=" + report, "-Dreporter.jenkins.fetch.threads=4",
+        jenkins.getViewName());
+    assertEquals(output, 0, exitCode);
+
+    String html = FileUtils.readFileToString(report, "UTF-8");
+    assertTrue(html.contains("there are 3 failed jobs (of 6 total jobs)"));
+    assertTrue(html.contains(jenkins.getUrl() + "job/job-0/"));
+    assertTrue(html.contains("org.example.job2.SyntheticTest.test1"));
+  }
+
+  @Test
+  public void testMissingJenkinsUrl() throws Exception {
+    assertEquals(1, runMain(jenkins.getViewName()));
+    assertTrue(output.contains("Please provide your jenkins URL"));
+  }
+
+  private int runMain(String... arguments) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("-Djava.awt.headless=true");
+    for (String argument : arguments) {
+      if (argument.startsWith("-D")) {
+        command.add(argument);
+      }
+    }
+    command.add(Main.class.getName());
+    for (String argument : arguments) {
+      if (!argument.startsWith("-D")) {
+        command.add(argument);
+      }
+    }
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    InputStream is = process.getInputStream();
+    try {
+      // the output has to be read for the process not to block on a full pipe
+      output = IOUtils.toString(is, Charsets.UTF_8.name());
+      return process.waitFor();
+    }
+    finally {
+      IOUtils.closeQuietly(is);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.zeroturnaround.jenkins.reporter.model.TestCase;
+import org.zeroturnaround.jenkins.reporter.model.TestReport;
+
+public class ReadTestReportHandlerTest {
+
+  @Test
+  public void testPlainReport() throws Exception {
+    TestReport report = parse("test-report.xml");
+
+    assertEquals(2, report.getFailCount());
+    assertEquals(3, report.getPassCount());
+    assertEquals(1, report.getSkipCount());
+    // not in the report of a plain job, calculated from the other counters
+    assertEquals(6, report.getTotalCount());
+
+    List<TestCase> cases = new ArrayList<TestCase>(report.getTestCases());
+    assertEquals(2, cases.size());
+
+    TestCase failed = cases.get(0);
+    assertEquals("FAILED", failed.getStatus());
+    assertEquals(Integer.valueOf(3), failed.getAge());
+    assertEquals("com.example.FooTest", failed.getClassName());
+    assertEquals("testFails", failed.getMethodName());
+    assertEquals("expected:<1> but was:<2>", failed.getErrorDetails());
+    assertTrue(failed.getErrorStackTrace().startsWith("java.lang.AssertionError: expected:<1> but was:<2>\n\tat org.junit.Assert.fail"));
+
+    TestCase regression = cases.get(1);
+    assertEquals("REGRESSION", regression.getStatus());
+    assertEquals(Integer.valueOf(1), regression.getAge());
+    assertEquals("com.example.BarTest", regression.getClassName());
+    assertEquals("testRegressed", regression.getMethodName());
+    assertNull(regression.getErrorDetails());
+    assertTrue(regression.getErrorStackTrace().startsWith("java.lang.NullPointerException"));
+  }
+
+  @Test
+  public void testMatrixReport() throws Exception {
+    TestReport report = parse("matrix-test-report.xml");
+
+    // the counters of the child reports are not added up
+    assertEquals(1, report.getFailCount());
+    assertEquals(0, report.getPassCount());
+    assertEquals(0, report.getSkipCount());
+    assertEquals(4, report.getTotalCount());
+
+    assertEquals(1, report.getTestCases().size());
+    TestCase failed = report.getTestCases().iterator().next();
+    assertEquals("testSlow", failed.getMethodName());
+    assertEquals("timeout", failed.getErrorDetails());
+    assertNull(failed.getErrorStackTrace());
+  }
+
+  @Test
+  public void testTextSplitAcrossCallbacks() throws SAXException {
+    TestReport report = new TestReport();
+    ReadTestReportHandler handler = new ReadTestReportHandler(report);
+
+    handler.startElement("", "", "testResult", new AttributesImpl());
+    element(handler, "failCount", " 1", "2 ");
+    element(handler, "passCount", "1", "00");
+    handler.startElement("", "", "suite", new AttributesImpl());
+    handler.startElement("", "", "case", new AttributesImpl());
+    element(handler, "className", "com.exa", "mple.Split", "Test");
+    element(handler, "name", "test", "Split");
+    element(handler, "status", "FAI", "LED");
+    handler.endElement("", "", "case");
+    handler.endElement("", "", "suite");
+    handler.endElement("", "", "testResult");
+
+    assertEquals(12, report.getFailCount());
+    assertEquals(100, report.getPassCount());
+    assertEquals(112, report.getTotalCount());
+
+    TestCase failed = report.getTestCases().iterator().next();
+    assertEquals("com.example.SplitTest", failed.getClassName());
+    assertEquals("testSplit", failed.getMethodName());
+    assertEquals("FAILED", failed.getStatus());
+    assertNull(failed.getAge());
+  }
+
+  @Test
+  public void testSharedStackTraces() throws SAXException {
+    TestReport report = new TestReport();
+    ReadTestReportHandler handler = new ReadTestReportHandler(report);
+
+    handler.startElement("", "", "testResult", new AttributesImpl());
+    handler.startElement("", "", "suite", new AttributesImpl());
+    for (String name : new String[] { "testOne", "testTwo" }) {
+      handler.startElement("", "", "case", new AttributesImpl());
+      element(handler, "className", "com.example.DbTest");
+      element(handler, "name", name);
+      element(handler, "errorStackTrace", "java.net.ConnectException: Connection refused\n", "\tat com.example.Db.connect(Db.java:10)");
+      element(handler, "status", "REGRESSION");
+      handler.endElement("", "", "case");
+    }
+    handler.endElement("", "", "suite");
+    handler.endElement("", "", "testResult");
+
+    List<TestCase> cases = new ArrayList<TestCase>(report.getTestCases());
+    assertSame(cases.get(0).getStackTrace(), cases.get(1).getStackTrace());
+    assertEquals("java.net.ConnectException: Connection refused\n\tat com.example.Db.connect(Db.java:10)", cases.get(1).getErrorStackTrace());
+  }
+
+  private static void element(ReadTestReportHandler handler, String name, String... chunks) throws SAXException {
+    handler.startElement("", "", name, new AttributesImpl());
+    for (String chunk : chunks) {
+      // surround the chunk with other characters to check that offsets are honoured
+      char[] ch = ("##" + chunk + "##").toCharArray();
+      handler.characters(ch, 2, chunk.length());
+    }
+    handler.endElement("", "", name);
+  }
+
+  private static TestReport parse(String fixture) throws Exception {
+    InputStream is = ReadTestReportHandlerTest.class.getResourceAsStream("/fixtures/" + fixture);
+    assertNotNull("Missing fixture " + fixture, is);
+    try {
+      TestReport report = new TestReport();
+      SAXParserFactory.newInstance().newSAXParser().parse(is, new ReadTestReportHandler(report));
+      return report;
+    }
+    finally {
+      is.close();
+    }
+  }
+}
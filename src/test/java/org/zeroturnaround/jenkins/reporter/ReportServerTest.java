@@ -0,0 +1,80 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Serves the reports of a {@link FakeJenkins} view.
+ */
+public class ReportServerTest {
+  private FakeJenkins jenkins;
+  private ReportServer server;
+
+  @After
+  public void stop() {
+    if (server != null) {
+      server.stop();
+    }
+    if (jenkins != null) {
+      jenkins.stop();
+    }
+  }
+
+  @Test
+  public void testServesHtmlAndJson() throws Exception {
+    jenkins = new FakeJenkins().jobs(6).matrixJobs(1, 3).testReports(10, 2, 3).start();
+    URI viewUrl = new URI(jenkins.getUrl() + "view/" + jenkins.getViewName());
+
+    server = new ReportServer(0, 60 * 60 * 1000L);
+    server.addView("Synthetic", viewUrl, new JenkinsHelperBuilder().createDefault(viewUrl, null, null, false),
+        new JenkinsReportGeneratorBuilder().buildDefaultGenerator());
+    server.start();
+
+    String base = "http://localhost:" + server.getPort() + "/";
+    String html = waitForReport(base + "Synthetic");
+    assertTrue(html.contains("there are 3 failed jobs (of 6 total jobs)"));
+
+    String json = get(base + "Synthetic.json");
+    assertTrue(json.startsWith("{\"name\":\"Synthetic\","));
+    assertTrue(json.contains("\"jobsTotal\":6"));
+    assertTrue(json.contains("\"className\":\"org.example.job2.SyntheticTest\""));
+
+    assertTrue(get(base).contains("<a href=\"Synthetic\">"));
+
+    try {
+      get(base + "Unknown");
+      fail();
+    }
+    catch (FileNotFoundException e) {
+      // 404
+    }
+  }
+
+  private static String waitForReport(String url) throws Exception {
+    final long deadline = System.currentTimeMillis() + 30000;
+    while (true) {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      if (connection.getResponseCode() == 200) {
+        return IOUtils.toString(connection.getInputStream(), "UTF-8");
+      }
+      assertEquals(503, connection.getResponseCode());
+      assertEquals("60", connection.getHeaderField("Retry-After"));
+      connection.disconnect();
+      assertTrue("No report in time", System.currentTimeMillis() < deadline);
+      Thread.sleep(50);
+    }
+  }
+
+  private static String get(String url) throws IOException {
+    return IOUtils.toString(new URL(url).openStream(), "UTF-8");
+  }
+}
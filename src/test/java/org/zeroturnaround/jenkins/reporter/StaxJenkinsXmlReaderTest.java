@@ -0,0 +1,122 @@
+package org.zeroturnaround.jenkins.reporter;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.zeroturnaround.jenkins.reporter.model.Build;
+import org.zeroturnaround.jenkins.reporter.model.JenkinsView;
+import org.zeroturnaround.jenkins.reporter.model.Job;
+
+/**
+ * The streaming reader must build the same model as the DOM reader from recorded Jenkins responses.
+ */
+public class StaxJenkinsXmlReaderTest {
+  private final JenkinsXmlReader dom = new DomJenkinsXmlReader(DocumentBuilderFactory.newInstance());
+  private final JenkinsXmlReader stax = new StaxJenkinsXmlReader(XMLInputFactory.newInstance());
+
+  @Test
+  public void testReadJobs() throws IOException {
+    Collection<Job> expected = dom.readJobs(fixture("view-jobs.xml"), "job", true);
+    Collection<Job> actual = stax.readJobs(fixture("view-jobs.xml"), "job", true);
+
+    // the folder without a color is not a job
+    assertEquals(4, actual.size());
+    assertJobsEqual(expected, actual);
+  }
+
+  @Test
+  public void testReadMatrixConfigurations() throws IOException {
+    Collection<Job> expected = dom.readJobs(fixture("matrix-configurations.xml"), "activeConfiguration", false);
+    Collection<Job> actual = stax.readJobs(fixture("matrix-configurations.xml"), "activeConfiguration", false);
+
+    assertEquals(3, actual.size());
+    assertJobsEqual(expected, actual);
+  }
+
+  @Test
+  public void testReadBuild() throws IOException {
+    Build expected = dom.readBuild(fixture("last-completed-build.xml"));
+    Build actual = stax.readBuild(fixture("last-completed-build.xml"));
+
+    assertEquals("master", actual.getBuiltOn());
+    assertEquals("1:02:03", actual.getDuration());
+    assertBuildsEqual(expected, actual);
+  }
+
+  @Test
+  public void testReadBuildSkipsActions() throws IOException {
+    Build expected = dom.readBuild(fixture("matrix-run-build.xml"));
+    Build actual = stax.readBuild(fixture("matrix-run-build.xml"));
+
+    assertEquals("linux-slave-04", actual.getBuiltOn());
+    assertBuildsEqual(expected, actual);
+  }
+
+  @Test
+  public void testReadView() throws IOException {
+    JenkinsView expected = dom.readView(fixture("view-tree.xml"));
+    JenkinsView actual = stax.readView(fixture("view-tree.xml"));
+
+    assertEquals("Core", actual.getName());
+    assertEquals(expected.getUrl(), actual.getUrl());
+    assertEquals(4, actual.getJobsTotal());
+    assertEquals(expected.getJobsTotal(), actual.getJobsTotal());
+
+    // jobs and configurations without a completed build are dropped
+    assertEquals(2, actual.getJobs().size());
+    assertJobsEqual(expected.getJobs(), actual.getJobs());
+  }
+
+  private static void assertJobsEqual(Collection<Job> expected, Collection<Job> actual) {
+    assertEquals(expected.size(), actual.size());
+
+    Iterator<Job> actualIter = actual.iterator();
+    for (Job expectedJob : expected) {
+      Job actualJob = actualIter.next();
+      assertEquals(expectedJob.getName(), actualJob.getName());
+      assertEquals(expectedJob.getUrl(), actualJob.getUrl());
+      assertEquals(expectedJob.getColor(), actualJob.getColor());
+
+      if (expectedJob.getLastCompletedBuild() == null) {
+        assertNull(actualJob.getLastCompletedBuild());
+      }
+      else {
+        assertBuildsEqual(expectedJob.getLastCompletedBuild(), actualJob.getLastCompletedBuild());
+      }
+
+      if (expectedJob.getChildren() == null) {
+        assertNull(actualJob.getChildren());
+      }
+      else {
+        assertJobsEqual(expectedJob.getChildren(), actualJob.getChildren());
+      }
+    }
+  }
+
+  private static void assertBuildsEqual(Build expected, Build actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getResult(), actual.getResult());
+    assertEquals(expected.getUrl(), actual.getUrl());
+    assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    assertEquals(expected.getDayOfYear(), actual.getDayOfYear());
+    assertEquals(expected.getDuration(), actual.getDuration());
+    assertEquals(expected.getBuiltOn(), actual.getBuiltOn());
+  }
+
+  private static InputStream fixture(String name) throws IOException {
+    InputStream is = StaxJenkinsXmlReaderTest.class.getResourceAsStream("/fixtures/" + name);
+    assertNotNull("Missing fixture " + name, is);
+    return is;
+  }
+}
@@ -0,0 +1,107 @@
+package org.zeroturnaround.jenkins.reporter.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.zeroturnaround.jenkins.reporter.model.FailureClusters.Cluster;
+
+public class FailureClustersTest {
+  private static final String REFUSED = "java.net.ConnectException: Connection refused to db-%d:5432\n"
+      + "\tat java.net.PlainSocketImpl.socketConnect(Native Method)\n\tat com.example.%s(%s.java:%d)\n";
+
+  @Test
+  public void testSameError() {
+    Job plain = job("plain", failed("com.example.FooTest", "testOne", String.format(REFUSED, 1, "FooTest.testOne", "FooTest", 10)),
+        failed("com.example.FooTest", "testTwo", String.format(REFUSED, 2, "FooTest.testTwo", "FooTest", 20)),
+        failed("com.example.FooTest", "testThree", "java.lang.AssertionError: expected:<1> but was:<2>\n\tat org.junit.Assert.fail(Assert.java:88)\n"));
+    Job matrix = job("matrix");
+    matrix.setChildren(Arrays.asList(job("jdk=6", failed("com.example.BarTest", "testBar", String.format(REFUSED, 3, "BarTest.testBar", "BarTest", 30))),
+        job("jdk=7", failed("com.example.BarTest", "testBar", String.format(REFUSED, 3, "BarTest.testBar", "BarTest", 30)))));
+
+    FailureClusters clusters = new FailureClusters(Arrays.asList(plain, matrix));
+
+    assertEquals(5, clusters.getFailedTests());
+    assertEquals(2, clusters.getErrorCount());
+    List<Cluster> errors = clusters.getTopErrors();
+    // the assertion failed only once
+    assertEquals(1, errors.size());
+    Cluster refused = errors.get(0);
+    assertEquals(4, refused.getTestCount());
+    assertEquals(2, refused.getJobCount());
+    assertEquals(Arrays.asList(plain, matrix), refused.getJobs());
+    assertEquals("java.net.ConnectException: Connection refused to db-#:# at java.net.PlainSocketImpl.socketConnect", refused.getSignature());
+  }
+
+  @Test
+  public void testSameTest() {
+    Job first = job("first", failed("com.example.FooTest", "testFoo", null), failed("com.example.FooTest", "testOther", null));
+    Job second = job("second", failed("com.example.FooTest", "testFoo", null));
+
+    List<Cluster> tests = new FailureClusters(Arrays.asList(first, second)).getTopTests();
+
+    assertEquals(1, tests.size());
+    assertEquals("com.example.FooTest.testFoo", tests.get(0).getSignature());
+    assertEquals(2, tests.get(0).getTestCount());
+    assertEquals(2, tests.get(0).getJobCount());
+  }
+
+  @Test
+  public void testTopClustersBySize() {
+    Job job = job("job");
+    TestReport report = job.getLastCompletedBuild().getTestReport();
+    for (int error = 0; error < FailureClusters.TOP + 5; error++) {
+      for (int test = 0; test <= error; test++) {
+        report.getTestCases().add(failed("com.example.Test" + error, "test" + test, "java.lang.IllegalStateException: error\n\tat com.example.Error" + error
+            + ".fail(Error.java:1)\n"));
+      }
+    }
+
+    List<Cluster> errors = new FailureClusters(Arrays.asList(job)).getTopErrors();
+
+    assertEquals(FailureClusters.TOP, errors.size());
+    assertEquals(FailureClusters.TOP + 5, errors.get(0).getTestCount());
+    // only some of the tests are kept
+    assertEquals(5, errors.get(0).getTestCases().size());
+    assertEquals(6, errors.get(FailureClusters.TOP - 1).getTestCount());
+  }
+
+  @Test
+  public void testErrorDetailsWithoutTrace() {
+    TestCase first = failed("com.example.FooTest", "testOne", null);
+    first.setErrorDetails("timeout after 100 ms");
+    TestCase second = failed("com.example.FooTest", "testTwo", null);
+    second.setErrorDetails("timeout after 250 ms");
+
+    List<Cluster> errors = new FailureClusters(Arrays.asList(job("job", first, second))).getTopErrors();
+
+    assertEquals(1, errors.size());
+    assertEquals("timeout after # ms", errors.get(0).getSignature());
+  }
+
+  private static TestCase failed(String className, String methodName, String trace) {
+    TestCase testCase = new TestCase();
+    testCase.setStatus("FAILED");
+    testCase.setClassName(className);
+    testCase.setMethodName(methodName);
+    testCase.setErrorStackTrace(trace);
+    return testCase;
+  }
+
+  private static Job job(String name, TestCase... testCases) {
+    TestReport report = new TestReport();
+    report.getTestCases().addAll(Arrays.asList(testCases));
+    report.setFailCount(testCases.length);
+
+    Build build = new Build();
+    build.setTestReport(report);
+
+    Job job = new Job();
+    job.setName(name);
+    job.setColor("yellow");
+    job.setLastCompletedBuild(build);
+    return job;
+  }
+}
@@ -0,0 +1,75 @@
+package org.zeroturnaround.jenkins.reporter.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.zeroturnaround.jenkins.reporter.util.CollectingMetrics;
+import org.zeroturnaround.jenkins.reporter.util.MetricsRegistry;
+
+public class StackTraceStoreTest {
+  private static final String TRACE = "java.lang.IllegalStateException: No connection to com.example.Pool@1b6d3586\n"
+      + "\tat com.example.Pool.get(Pool.java:42)\n\tat com.example.FooTest.testFoo(FooTest.java:17)\n";
+
+  @Test
+  public void testSameTraceIsKeptOnce() {
+    CollectingMetrics metrics = new CollectingMetrics();
+    StackTraceStore store = new StackTraceStore(false, metrics);
+
+    StackTrace first = intern(store, TRACE);
+    // another line separator, blanks at the ends of lines and another instance of the pool
+    StackTrace second = intern(store, TRACE.replace("1b6d3586", "4554617c").replace("\n", "  \r\n"));
+
+    assertSame(first, second);
+    assertEquals(TRACE, second.getText());
+    assertEquals(1, metrics.getCount("testReport.traces.new"));
+    assertEquals(1, metrics.getCount("testReport.traces.shared"));
+  }
+
+  @Test
+  public void testDifferentTraces() {
+    StackTraceStore store = new StackTraceStore(false, MetricsRegistry.NONE);
+
+    StackTrace trace = intern(store, TRACE);
+    assertNotSame(trace, intern(store, TRACE.replace("42", "43")));
+    assertNotSame(trace, intern(store, TRACE.replace("Pool.get", "Pool.put")));
+    // not an identity hash code
+    assertNotSame(intern(store, "mail to dev@cafebabe.com failed"), intern(store, "mail to dev@deadbeef.com failed"));
+  }
+
+  @Test
+  public void testCompression() {
+    StringBuilder text = new StringBuilder("java.lang.AssertionError: \u00fcber\n");
+    for (int i = 0; i < 100; i++) {
+      text.append("\tat com.example.Deep.call").append(i).append("(Deep.java:").append(i).append(")\n");
+    }
+    StackTraceStore store = new StackTraceStore(true, MetricsRegistry.NONE);
+
+    StackTrace trace = intern(store, text.toString());
+    assertTrue(trace.isCompressed());
+    assertEquals(text.toString(), trace.getText());
+    assertEquals(text.length(), trace.getLength());
+    assertFalse(intern(store, TRACE).isCompressed());
+  }
+
+  @Test
+  public void testInternReport() {
+    StackTraceStore store = new StackTraceStore(false, MetricsRegistry.NONE);
+    StackTrace stored = intern(store, TRACE);
+
+    TestCase testCase = new TestCase();
+    testCase.setErrorStackTrace(TRACE);
+    assertNotSame(stored, testCase.getStackTrace());
+    assertEquals(stored.getId(), testCase.getStackTrace().getId());
+
+    TestReport report = new TestReport();
+    report.getTestCases().add(testCase);
+    store.intern(report);
+    assertSame(stored, testCase.getStackTrace());
+  }
+
+  private static StackTrace intern(StackTraceStore store, String text) {
+    // surrounded by other characters to check that the offsets are honoured
+    char[] chars = ("<errorStackTrace>" + text + "</errorStackTrace>").toCharArray();
+    return store.intern(chars, "<errorStackTrace>".length(), "<errorStackTrace>".length() + text.length());
+  }
+}
@@ -0,0 +1,85 @@
+package org.zeroturnaround.jenkins.reporter.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestFlipsTest {
+  private final TestCase broken = failed("testBroken");
+  private final TestCase flaky = failed("testFlaky");
+  private final TestCase newlyBroken = failed("testNewlyBroken");
+
+  @Test
+  public void testFlipsInAnyOrder() {
+    TestFlips flips = new TestFlips();
+    // the builds are read concurrently, so they come in any order
+    flips.addBuild(3, Arrays.asList(broken, flaky));
+    flips.addBuild(0, Arrays.asList(broken, flaky, newlyBroken));
+    flips.addBuild(2, Arrays.asList(broken));
+    flips.addBuild(1, Arrays.asList(broken, flaky));
+    flips.addBuild(4, Arrays.asList(broken));
+
+    assertEquals(5, flips.getBuildCount());
+    assertEquals(0, flips.getFlips(broken));
+    assertEquals(3, flips.getFlips(flaky));
+    assertEquals(1, flips.getFlips(newlyBroken));
+    assertEquals(0, flips.getFlips(failed("testPassing")));
+  }
+
+  @Test
+  public void testMark() {
+    TestFlips flips = new TestFlips();
+    List<TestCase> last = Arrays.asList(broken, flaky, newlyBroken);
+    flips.addBuild(0, last);
+    flips.addBuild(1, Arrays.asList(broken));
+    flips.addBuild(2, Arrays.asList(broken, flaky));
+    flips.addBuild(3, Arrays.asList(broken));
+
+    flips.mark(last);
+
+    assertFalse(broken.isFlaky());
+    assertEquals(0f, broken.getFlipRate(), 0f);
+    assertTrue(flaky.isFlaky());
+    assertEquals(1f, flaky.getFlipRate(), 0f);
+    // a test that broke in the last build flipped only once
+    assertFalse(newlyBroken.isFlaky());
+    assertEquals(1f / 3, newlyBroken.getFlipRate(), 0.001f);
+  }
+
+  @Test
+  public void testBuildsWithoutTestReportDoNotCount() {
+    TestFlips flips = new TestFlips();
+    flips.addBuild(0, Arrays.asList(flaky));
+    flips.addBuild(2, Collections.<TestCase> emptyList());
+    flips.addBuild(4, Arrays.asList(flaky));
+
+    flips.mark(Arrays.asList(flaky));
+
+    assertEquals(3, flips.getBuildCount());
+    assertEquals(2, flips.getFlips(flaky));
+    assertTrue(flaky.isFlaky());
+  }
+
+  @Test
+  public void testLastBuildOnly() {
+    TestFlips flips = new TestFlips();
+    flips.addBuild(0, Arrays.asList(flaky));
+
+    flips.mark(Arrays.asList(flaky));
+
+    assertNull(flaky.getFlipRate());
+    assertFalse(flaky.isFlaky());
+  }
+
+  private static TestCase failed(String methodName) {
+    TestCase testCase = new TestCase();
+    testCase.setStatus("FAILED");
+    testCase.setClassName("com.example.FooTest");
+    testCase.setMethodName(methodName);
+    return testCase;
+  }
+}
@@ -0,0 +1,107 @@
+package org.zeroturnaround.jenkins.reporter.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestIndexTest {
+  @Test
+  public void testLookup() {
+    TestCase first = testCase("com.example.FooTest", "testFoo", "FAILED", 3);
+    TestCase second = testCase("com.example.FooTest", "testFoo", "REGRESSION", 1);
+    TestCase passed = testCase("com.example.FooTest", "testFoo", "PASSED", 0);
+    Job matrix = job("matrix");
+    matrix.setChildren(Arrays.asList(job("jdk=6", first), job("jdk=7", second, testCase("com.example.FooTest", "testBar", "FAILED", 1)), job("jdk=8",
+        passed)));
+
+    TestIndex index = new TestIndex(Arrays.asList(matrix, job("other", testCase("com.example.BarTest", "testFoo", "SKIPPED", null))));
+
+    assertEquals(5, index.getCaseCount());
+    assertEquals(3, index.getTestCount());
+    assertEquals(Arrays.asList(first, second, passed), index.getTestCases("com.example.FooTest", "testFoo"));
+    assertEquals(Arrays.asList(first, second), index.getFailedTestCases("com.example.FooTest", "testFoo"));
+    assertEquals(2, index.getFailureCount("com.example.FooTest", "testFoo"));
+    assertEquals(3, index.getAge("com.example.FooTest", "testFoo"));
+    assertEquals(0, index.getFailureCount("com.example.BarTest", "testFoo"));
+    assertEquals(TestIndex.NO_AGE, index.getAge("com.example.BarTest", "testFoo"));
+    // a known class and a known method are not a test yet
+    assertEquals(Collections.emptyList(), index.getTestCases("com.example.BarTest", "testBar"));
+    assertEquals(0, index.getFailureCount("com.example.Unknown", "testFoo"));
+  }
+
+  @Test
+  public void testTestNumbers() {
+    TestIndex index = new TestIndex();
+
+    assertEquals(0, index.add(testCase("com.example.FooTest", "testFoo", "FAILED", 1)));
+    assertEquals(1, index.add(testCase("com.example.FooTest", "testBar", "FAILED", 1)));
+    assertEquals(0, index.add(testCase("com.example.FooTest", "testFoo", "REGRESSION", 1)));
+    assertEquals(2, index.add(testCase("com.example.BarTest", "testFoo", "FAILED", 1)));
+    assertEquals(2, index.getFailureCount("com.example.FooTest", "testFoo"));
+  }
+
+  @Test
+  public void testPackageFailures() {
+    Job job = job("job", testCase("com.example.FooTest", "testOne", "FAILED", 1), testCase("com.example.BarTest", "testOne", "FAILED", 1),
+        testCase("com.example.db.DbTest", "testOne", "FAILED", 1), testCase("com.example.db.DbTest", "testTwo", "PASSED", 0),
+        testCase("DefaultTest", "testOne", "FAILED", 1));
+
+    TestIndex index = new TestIndex(Arrays.asList(job));
+
+    assertEquals(Arrays.asList("com.example", "com.example.db", ""), index.getPackages());
+    // not counting the subpackages
+    assertEquals(2, index.getFailureCount("com.example"));
+    assertEquals(1, index.getFailureCount("com.example.db"));
+    assertEquals(1, index.getFailureCount(""));
+    assertEquals(0, index.getFailureCount("org.example"));
+  }
+
+  @Test
+  public void testManyTests() {
+    TestReport report = new TestReport();
+    for (int i = 0; i < 10000; i++) {
+      report.getTestCases().add(testCase("com.example.p" + i % 100 + ".Test" + i % 1000, "test" + i / 1000, i % 3 == 0 ? "FAILED" : "PASSED", i % 7));
+    }
+
+    TestIndex index = report.getIndex();
+
+    assertSame(index, report.getIndex());
+    assertEquals(10000, index.getTestCount());
+    assertEquals(100, index.getPackages().size());
+    // i % 100 == 42 for 100 tests, every third of them failed
+    assertEquals(34, index.getFailureCount("com.example.p42"));
+    for (int i = 0; i < 10000; i += 37) {
+      assertEquals(i % 3 == 0 ? 1 : 0, index.getFailureCount("com.example.p" + i % 100 + ".Test" + i % 1000, "test" + i / 1000));
+      assertEquals(i % 7, index.getAge("com.example.p" + i % 100 + ".Test" + i % 1000, "test" + i / 1000));
+    }
+
+    report.setTestCases(Collections.singletonList(testCase("com.example.FooTest", "testFoo", "FAILED", 1)));
+    assertEquals(1, report.getIndex().getTestCount());
+  }
+
+  private static TestCase testCase(String className, String methodName, String status, Integer age) {
+    TestCase testCase = new TestCase();
+    testCase.setStatus(status);
+    testCase.setClassName(className);
+    testCase.setMethodName(methodName);
+    testCase.setAge(age);
+    return testCase;
+  }
+
+  private static Job job(String name, TestCase... testCases) {
+    TestReport report = new TestReport();
+    report.getTestCases().addAll(Arrays.asList(testCases));
+
+    Build build = new Build();
+    build.setTestReport(report);
+
+    Job job = new Job();
+    job.setName(name);
+    job.setColor("yellow");
+    job.setLastCompletedBuild(build);
+    return job;
+  }
+}
@@ -0,0 +1,97 @@
+package org.zeroturnaround.jenkins.reporter.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ViewStatisticsTest {
+
+  @Test
+  public void testTotals() {
+    Job plain = job("plain", "yellow", report(2, 8, 10));
+    Job child1 = job("axis=1", "red", report(3, 7, 10));
+    Job child2 = job("axis=2", "blue", report(0, 5, 5));
+    Job matrix = job("matrix", "red", report(3, 12, 15));
+    matrix.setChildren(Arrays.asList(child1, child2));
+    Job green = job("green", "blue", report(0, 4, 4));
+    Job noReport = job("noReport", "disabled", null);
+
+    JenkinsView view = new JenkinsView();
+    view.setJobs(Arrays.asList(plain, matrix, green, noReport));
+    ViewStatistics statistics = new ViewStatistics(view);
+
+    assertEquals(5, statistics.getFailCount());
+    assertEquals(29, statistics.getTestsTotal());
+    assertEquals(view.getFailCount(), statistics.getFailCount());
+    assertEquals(view.getTestsTotal(), statistics.getTestsTotal());
+    assertEquals(view.getFailureRate(), statistics.getFailureRate(), 0.0001);
+
+    JobStatistics matrixStatistics = statistics.of(matrix);
+    assertTrue(matrixStatistics.isMatrix());
+    assertEquals(3, matrixStatistics.getFailCount());
+    assertEquals(12, matrixStatistics.getPassCount());
+    assertEquals(15, matrixStatistics.getTotalCount());
+    assertEquals(0.2, matrixStatistics.getFailureRate(), 0.0001);
+    assertEquals(3, statistics.of(child1).getFailCount());
+    assertEquals(0, statistics.of(noReport).getTotalCount());
+
+    assertEquals(Arrays.asList(plain, matrix), statistics.getFailedJobs());
+    assertEquals(Arrays.asList(green, noReport), statistics.getPassedJobs());
+  }
+
+  @Test
+  public void testEmptyView() {
+    ViewStatistics statistics = new ViewStatistics(new JenkinsView());
+
+    assertEquals(0, statistics.getTestsTotal());
+    assertEquals(0, statistics.getFailureRate(), 0);
+    assertTrue(statistics.getFailedJobs().isEmpty());
+  }
+
+  @Test
+  public void testTestsWithStackTrace() {
+    StackTrace shared = StackTrace.of("java.net.ConnectException: Connection refused");
+    TestReport first = report(2, 0, 2);
+    first.getTestCases().add(failed(shared));
+    first.getTestCases().add(failed(StackTrace.of("java.lang.AssertionError")));
+    TestReport second = report(1, 0, 1);
+    // an equal trace that was not interned counts as well
+    second.getTestCases().add(failed(StackTrace.of("java.net.ConnectException: Connection refused")));
+
+    JenkinsView view = new JenkinsView();
+    view.setJobs(Arrays.asList(job("first", "yellow", first), job("second", "yellow", second)));
+    ViewStatistics statistics = new ViewStatistics(view);
+
+    assertEquals(2, statistics.testsWith(shared));
+    assertEquals(1, statistics.testsWith(StackTrace.of("java.lang.AssertionError")));
+    assertEquals(0, statistics.testsWith(StackTrace.of("java.lang.OutOfMemoryError")));
+  }
+
+  private static TestCase failed(StackTrace trace) {
+    TestCase testCase = new TestCase();
+    testCase.setStatus("FAILED");
+    testCase.setStackTrace(trace);
+    return testCase;
+  }
+
+  private static Job job(String name, String color, TestReport report) {
+    Build build = new Build();
+    build.setTestReport(report);
+
+    Job job = new Job();
+    job.setName(name);
+    job.setColor(color);
+    job.setLastCompletedBuild(build);
+    return job;
+  }
+
+  private static TestReport report(int failCount, int passCount, int totalCount) {
+    TestReport report = new TestReport();
+    report.setFailCount(failCount);
+    report.setPassCount(passCount);
+    report.setTotalCount(totalCount);
+    return report;
+  }
+}
@@ -0,0 +1,56 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class CollectingMetricsTest {
+
+  @Test
+  public void testHistogram() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(50.5, histogram.getMean(), 0.001);
+    assertEquals(100, histogram.getMax());
+    // 50 falls in the bucket from 32 to 63, 90 and 99 in the one from 64 to 127 capped by the maximum
+    assertEquals(63, histogram.getPercentile(0.5));
+    assertEquals(100, histogram.getPercentile(0.9));
+    assertEquals(0, new Histogram().getPercentile(0.5));
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    final StringBuilder forwarded = new StringBuilder();
+    CollectingMetrics metrics = new CollectingMetrics(new MetricsRegistry() {
+      @Override
+      public void count(String name, long delta) {
+        forwarded.append(name).append('+').append(delta).append(' ');
+      }
+
+      @Override
+      public void record(String name, long value) {
+        forwarded.append(name).append('=').append(value).append(' ');
+      }
+    });
+    metrics.count("http.requests.view", 1);
+    metrics.count("http.requests.view", 2);
+    metrics.count("http.bytes.view", 10);
+    metrics.record("http.latency.view", 0);
+
+    assertEquals("http.requests.view+1 http.requests.view+2 http.bytes.view+10 http.latency.view=0 ", forwarded.toString());
+    assertEquals(3, metrics.getCount("http.requests.view"));
+    assertEquals(0, metrics.getCount("http.requests.build"));
+
+    StringWriter json = new StringWriter();
+    metrics.writeJson(json);
+    assertEquals("{\"counters\":{\"http.bytes.view\":10,\"http.requests.view\":3},"
+        + "\"histograms\":{\"http.latency.view\":{\"count\":1,\"sum\":0,\"mean\":0.0,\"p50\":0,\"p90\":0,\"p99\":0,\"max\":0}}}", json.toString());
+  }
+}
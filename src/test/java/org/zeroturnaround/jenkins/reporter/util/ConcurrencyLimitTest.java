@@ -0,0 +1,122 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimitTest {
+
+  @Test
+  public void testGrowsWhileLimitIsReached() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.adaptive(10);
+    assertEquals(4, limit.getLimit());
+
+    // fewer requests in flight than allowed say nothing about Jenkins
+    limit.acquire();
+    limit.responded(5);
+    limit.release();
+    assertEquals(4, limit.getLimit());
+
+    // slow start grows by one per response until the maximum
+    for (int i = 0; i < 10; i++) {
+      int permits = fill(limit);
+      limit.responded(5);
+      drain(limit, permits);
+    }
+    assertEquals(10, limit.getLimit());
+  }
+
+  @Test
+  public void testShrinks() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.adaptive(10);
+    limit.overloaded(0);
+    assertEquals(2, limit.getLimit());
+
+    // responses slower than the baseline shrink it by a tenth, but only once per round trip
+    limit.responded(5);
+    Thread.sleep(10);
+    limit.responded(100);
+    limit.responded(100);
+    assertEquals(1, limit.getLimit());
+
+    // after congestion it grows by the inverse of the limit per response, one per round trip
+    int permits = fill(limit);
+    limit.responded(5);
+    drain(limit, permits);
+    assertEquals(2, limit.getLimit());
+  }
+
+  @Test
+  public void testFixed() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.fixed(3);
+    fill(limit);
+    limit.responded(1000);
+    limit.overloaded(0);
+    assertEquals(3, limit.getLimit());
+  }
+
+  @Test
+  public void testRetryAfterPausesRequests() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.fixed(3);
+    limit.overloaded(200);
+
+    long start = System.nanoTime();
+    limit.acquire();
+    assertTrue(System.nanoTime() - start >= 150 * 1000000L);
+  }
+
+  @Test
+  public void testReleaseWakesWaitingRequest() throws Exception {
+    final ConcurrencyLimit limit = ConcurrencyLimit.fixed(1);
+    limit.acquire();
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiting = new Thread() {
+      @Override
+      public void run() {
+        try {
+          limit.acquire();
+          acquired.countDown();
+        }
+        catch (InterruptedException e) {
+          // the test fails
+        }
+      }
+    };
+    waiting.start();
+
+    assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+    limit.release();
+    assertTrue(acquired.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTryAcquireGivesUp() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.fixed(1);
+    assertTrue(limit.tryAcquire(0));
+
+    // neither a full limit nor a pause is waited for longer than asked
+    assertFalse(limit.tryAcquire(50));
+    limit.release();
+    limit.overloaded(1000);
+    long start = System.nanoTime();
+    assertFalse(limit.tryAcquire(50));
+    assertTrue(System.nanoTime() - start < 500 * 1000000L);
+  }
+
+  private static int fill(ConcurrencyLimit limit) throws InterruptedException {
+    final int permits = limit.getLimit();
+    for (int i = 0; i < permits; i++) {
+      limit.acquire();
+    }
+    return permits;
+  }
+
+  private static void drain(ConcurrencyLimit limit, int permits) {
+    for (int i = 0; i < permits; i++) {
+      limit.release();
+    }
+  }
+}
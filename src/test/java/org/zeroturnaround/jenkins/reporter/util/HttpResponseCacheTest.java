@@ -0,0 +1,99 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.jenkins.reporter.JenkinsHttpClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpResponseCacheTest {
+  private static final String BODY = "<freeStyleBuild><number>12</number></freeStyleBuild>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpServer server;
+  private final AtomicInteger fullResponses = new AtomicInteger();
+  private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          notModifiedResponses.incrementAndGet();
+          exchange.sendResponseHeaders(304, -1);
+        }
+        else {
+          fullResponses.incrementAndGet();
+          byte[] body = BODY.getBytes("UTF-8");
+          exchange.getResponseHeaders().add("ETag", "\"v1\"");
+          exchange.sendResponseHeaders(200, body.length);
+          exchange.getResponseBody().write(body);
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testNotModifiedIsAnsweredFromMemory() throws IOException {
+    JenkinsHttpClient client = new JenkinsHttpClient(null, null);
+    client.setResponseCache(new HttpResponseCache(1024 * 1024, null));
+
+    assertEquals(BODY, read(client, url()));
+    assertEquals(BODY, read(client, url()));
+    assertEquals("12", client.fetchAsXMLDocument(url()).getElementsByTagName("number").item(0).getTextContent());
+
+    assertEquals(1, fullResponses.get());
+    assertEquals(2, notModifiedResponses.get());
+  }
+
+  @Test
+  public void testDiskEntriesSurviveNewCache() throws IOException {
+    JenkinsHttpClient client = new JenkinsHttpClient(null, null);
+    client.setResponseCache(new HttpResponseCache(1024 * 1024, folder.getRoot()));
+    assertEquals(BODY, read(client, url()));
+
+    JenkinsHttpClient nextRun = new JenkinsHttpClient(null, null);
+    nextRun.setResponseCache(new HttpResponseCache(1024 * 1024, folder.getRoot()));
+    assertEquals(BODY, read(nextRun, url()));
+
+    assertEquals(1, fullResponses.get());
+    assertEquals(1, notModifiedResponses.get());
+  }
+
+  private String url() {
+    return "http://localhost:" + server.getAddress().getPort() + "/job/core-build/lastCompletedBuild/api/xml";
+  }
+
+  private static String read(JenkinsHttpClient client, String url) {
+    return client.fetch(url, new StreamResponseHandler<String>() {
+      @Override
+      protected String handleStream(InputStream stream) throws IOException {
+        return IOUtils.toString(stream, "UTF-8");
+      }
+    });
+  }
+}
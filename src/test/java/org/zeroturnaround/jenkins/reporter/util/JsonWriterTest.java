@@ -0,0 +1,32 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class JsonWriterTest {
+
+  @Test
+  public void testNesting() throws Exception {
+    StringWriter out = new StringWriter();
+    JsonWriter json = new JsonWriter(out);
+    json.beginObject();
+    json.name("a").value(1);
+    json.name("b").beginArray().value(true).nullValue().beginObject().endObject().beginArray().endArray().endArray();
+    json.name("c").value(0.5);
+    json.name("d").value(Double.NaN);
+    json.endObject();
+
+    assertEquals("{\"a\":1,\"b\":[true,null,{},[]],\"c\":0.5,\"d\":null}", out.toString());
+  }
+
+  @Test
+  public void testEscaping() throws Exception {
+    StringWriter out = new StringWriter();
+    new JsonWriter(out).value("\"quoted\" \\ \n\r\t \u0001 \u2028 <tag> \u00e4");
+
+    assertEquals("\"\\\"quoted\\\" \\\\ \\n\\r\\t \\u0001 \\u2028 <tag> \u00e4\"", out.toString());
+  }
+}
@@ -0,0 +1,73 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.jenkins.reporter.JenkinsHttpClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TransferStatisticsTest {
+  private static final String BODY = "<testResult>" + StringUtils.repeat("<case><className>com.example.LoginTest</className><status>PASSED</status></case>", 500) + "</testResult>";
+
+  private HttpServer server;
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = BODY.getBytes("UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+          ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+          GZIPOutputStream out = new GZIPOutputStream(gzipped);
+          out.write(body);
+          out.close();
+          body = gzipped.toByteArray();
+          exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testGzipResponseIsDecodedAndCounted() throws IOException {
+    JenkinsHttpClient client = new JenkinsHttpClient(null, null);
+
+    String body = client.fetch("http://localhost:" + server.getAddress().getPort() + "/job/core-build/1/testReport/api/xml", new StreamResponseHandler<String>() {
+      @Override
+      protected String handleStream(InputStream stream) throws IOException {
+        return IOUtils.toString(stream, "UTF-8");
+      }
+    });
+    assertEquals(BODY, body);
+
+    TransferStatistics statistics = client.getTransferStatistics();
+    assertEquals(1, statistics.getResponses());
+    assertEquals(BODY.length(), statistics.getDecodedBytes());
+    assertTrue(statistics.getWireBytes() < statistics.getDecodedBytes() / 10);
+  }
+}
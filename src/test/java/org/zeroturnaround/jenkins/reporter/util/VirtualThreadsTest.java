@@ -0,0 +1,47 @@
+package org.zeroturnaround.jenkins.reporter.util;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+  // set by the java21 profile, so that a JVM without virtual threads fails there instead of skipping
+  private static final boolean REQUIRED = Boolean.getBoolean("reporter.test.virtualThreads");
+
+  @Test
+  public void testRunsOnVirtualThreads() throws Exception {
+    assumeTrue(REQUIRED || VirtualThreads.isAvailable());
+    assertTrue("Java " + System.getProperty("java.version") + " has no virtual threads", VirtualThreads.isAvailable());
+
+    ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+    try {
+      Future<Object> virtual = executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        }
+      });
+      assertEquals(Boolean.TRUE, virtual.get());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testUnavailable() {
+    assumeFalse(VirtualThreads.isAvailable());
+    try {
+      VirtualThreads.newThreadPerTaskExecutor();
+      fail("There are no virtual threads");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}